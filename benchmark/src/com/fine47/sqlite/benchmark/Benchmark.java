@@ -0,0 +1,190 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * A minimal benchmark harness: runs a body for a number of warm-up iterations,
+ * then measures the time of each measured iteration.
+ *
+ * @since 1.4
+ */
+public class Benchmark {
+
+  private final String name;
+  private final int warmupIterations;
+  private final int iterations;
+  private final int operationsPerIteration;
+
+  /**
+   * Constructs a new benchmark.
+   *
+   * @param name of the benchmark
+   * @param warmupIterations number of iterations which aren't measured
+   * @param iterations number of measured iterations
+   * @param operationsPerIteration number of operations in each iteration
+   */
+  public Benchmark(
+    String name,
+    int warmupIterations,
+    int iterations,
+    int operationsPerIteration
+  ) {
+    this.name = name;
+    this.warmupIterations = warmupIterations;
+    this.iterations = iterations;
+    this.operationsPerIteration = operationsPerIteration;
+  }
+
+  /**
+   * Runs the specified body and returns its measurements.
+   *
+   * @param body to run
+   * @return measurements
+   * @throws Exception thrown by the body
+   */
+  public Result run(Body body) throws Exception {
+    for(int iteration = 0; iteration < warmupIterations; iteration++) {
+      body.setUp();
+      body.run();
+      body.tearDown();
+    }
+
+    final long[] samples = new long[iterations];
+    for(int iteration = 0; iteration < iterations; iteration++) {
+      body.setUp();
+      final long start = System.nanoTime();
+      body.run();
+      samples[iteration] =
+        (System.nanoTime() - start) / operationsPerIteration;
+      body.tearDown();
+    }
+
+    return new Result(name, samples);
+  }
+
+  /**
+   * The code being measured. {@link #setUp()} and {@link #tearDown()} run
+   * around every iteration, and aren't measured.
+   */
+  public static abstract class Body {
+
+    /**
+     * Prepares a single iteration. Does nothing by default.
+     *
+     * @throws Exception on failure
+     */
+    public void setUp() throws Exception {
+      // Nothing by default.
+    }
+
+    /**
+     * Runs a single iteration.
+     *
+     * @throws Exception on failure
+     */
+    abstract public void run() throws Exception;
+
+    /**
+     * Cleans up after a single iteration. Does nothing by default.
+     *
+     * @throws Exception on failure
+     */
+    public void tearDown() throws Exception {
+      // Nothing by default.
+    }
+  }
+
+  /**
+   * Measurements of a benchmark, in nanoseconds per operation.
+   */
+  public static class Result {
+
+    private final String name;
+    private final long[] samples;
+
+    /**
+     * Constructs a new result.
+     *
+     * @param name of the benchmark
+     * @param samples nanoseconds per operation of each measured iteration
+     */
+    public Result(String name, long[] samples) {
+      this.name = name;
+      this.samples = samples.clone();
+      Arrays.sort(this.samples);
+    }
+
+    /**
+     * Returns the name of the benchmark.
+     *
+     * @return benchmark name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the number of measured iterations.
+     *
+     * @return number of samples
+     */
+    public int getCount() {
+      return samples.length;
+    }
+
+    /**
+     * Returns the average time of an operation.
+     *
+     * @return mean nanoseconds per operation
+     */
+    public double getMean() {
+      double total = 0;
+      for(long sample : samples) {
+        total += sample;
+      }
+      return 0 == samples.length ? 0 : total / samples.length;
+    }
+
+    /**
+     * Returns the specified percentile of the time of an operation.
+     *
+     * @param percentile between 0 and 100
+     * @return nanoseconds per operation
+     */
+    public long getPercentile(int percentile) {
+      if(0 == samples.length) {
+        return 0;
+      }
+      final int index =
+        (int)Math.ceil(percentile / 100.0 * samples.length) - 1;
+      return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+  }
+}
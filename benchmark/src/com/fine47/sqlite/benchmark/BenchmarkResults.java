@@ -0,0 +1,132 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Collects {@link Benchmark.Result} instances and writes them as JSON, so
+ * results of different versions can be diffed by machines.
+ *
+ * The format is a single object with a "benchmarks" array; each entry has the
+ * benchmark's name, number of samples, and mean/p50/p90/p99/max nanoseconds
+ * per operation.
+ *
+ * @since 1.4
+ */
+public class BenchmarkResults {
+
+  private final ArrayList<Benchmark.Result> results = new ArrayList();
+
+  /**
+   * Adds a result.
+   *
+   * @param result to add
+   */
+  public void add(Benchmark.Result result) {
+    results.add(result);
+  }
+
+  /**
+   * Writes all results as JSON to the specified file, creating its parent
+   * directories if necessary.
+   *
+   * @param file to write to
+   * @throws IOException on failure
+   */
+  public void writeTo(File file) throws IOException {
+    final File parentFile = file.getAbsoluteFile().getParentFile();
+    if(!parentFile.mkdirs() && !parentFile.isDirectory()) {
+      throw new IOException("Unable to create directory: " + parentFile);
+    }
+
+    final Writer writer = new OutputStreamWriter(
+      new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(toJson());
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Returns all results as JSON.
+   *
+   * @return JSON document
+   */
+  public String toJson() {
+    final StringBuilder json = new StringBuilder("{\n  \"benchmarks\": [");
+    for(int index = 0; index < results.size(); index++) {
+      final Benchmark.Result result = results.get(index);
+      json.append(0 == index ? "\n" : ",\n").append(String.format(
+        Locale.US,
+        "    {\"name\": \"%s\", \"samples\": %d, \"unit\": \"ns/op\", " +
+          "\"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d}",
+        result.getName().replace("\\", "\\\\").replace("\"", "\\\""),
+        result.getCount(),
+        result.getMean(),
+        result.getPercentile(50),
+        result.getPercentile(90),
+        result.getPercentile(99),
+        result.getPercentile(100)
+      ));
+    }
+    return json.append("\n  ]\n}\n").toString();
+  }
+
+  /**
+   * Returns all results as a human-readable table, one result per line.
+   *
+   * @return printable results
+   */
+  @Override
+  public String toString() {
+    final StringBuilder text = new StringBuilder();
+    for(Benchmark.Result result : results) {
+      text.append(format(result)).append('\n');
+    }
+    return text.toString();
+  }
+
+  private static String format(Benchmark.Result result) {
+    return String.format(
+      Locale.US,
+      "%-48s %12.1f ns/op (p50 %d, p99 %d)",
+      result.getName(),
+      result.getMean(),
+      result.getPercentile(50),
+      result.getPercentile(99)
+    );
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.SQLiteManager;
+import com.fine47.sqlite.SQLitePlanRegistry;
+import com.fine47.sqlite.SQLitePlanRunner;
+import com.fine47.sqlite.SQLiteUpgradePlan;
+import java.io.File;
+
+/**
+ * Measures {@link SQLitePlanRunner#run()} across 10, 100 and 1000 plans, both
+ * in a single transaction and in resumable mode, as well as the cost of
+ * finding a migration path and instantiating plans.
+ *
+ * @since 1.4
+ */
+public class MigrationBenchmark {
+
+  /**
+   * Numbers of plans to migrate across.
+   */
+  public final static int[] STEP_COUNTS = {10, 100, 1000};
+
+  private final static int LOOKUPS = 100;
+  private final static int INSTANTIATIONS = 10000;
+
+  private MigrationBenchmark() {
+    // Static methods only.
+  }
+
+  /**
+   * Runs all migration benchmarks.
+   *
+   * @param manager to benchmark
+   * @param fileName of the benchmark database
+   * @param results to add results to
+   * @throws Exception on failure
+   */
+  public static void run(
+    SQLiteManager manager,
+    String fileName,
+    BenchmarkResults results
+  ) throws Exception {
+    for(int steps : STEP_COUNTS) {
+      final SQLitePlanRegistry registry = newRegistry(steps);
+      final int iterations = 1000 > steps ? 20 : 5;
+
+      results.add(new Benchmark("migrate.atomic[steps=" + steps + "]", 2,
+        iterations, 1).run(
+          new MigrationBody(manager, fileName, registry, steps + 1, false)));
+      results.add(new Benchmark("migrate.resumable[steps=" + steps + "]", 2,
+        iterations, 1).run(
+          new MigrationBody(manager, fileName, registry, steps + 1, true)));
+      results.add(new Benchmark("findPath[steps=" + steps + "]", 5, 50,
+        LOOKUPS).run(
+          new LookupBody(registry, steps + 1)));
+    }
+
+    results.add(new Benchmark("plan.newInstance", 5, 50, INSTANTIATIONS).run(
+      new Benchmark.Body() {
+        @Override
+        public void run() throws Exception {
+          for(int count = 0; count < INSTANTIATIONS; count++) {
+            InsertPlan.class.newInstance();
+          }
+        }
+      }
+    ));
+  }
+
+  private static SQLitePlanRegistry newRegistry(int steps) {
+    final SQLitePlanRegistry registry = new SQLitePlanRegistry();
+    for(int version = 1; version <= steps; version++) {
+      registry.addPlan(version, InsertPlan.class);
+    }
+    return registry;
+  }
+
+  /**
+   * Migrates a brand new database from V1 to the target version.
+   */
+  private static class MigrationBody extends Benchmark.Body {
+
+    private final SQLiteManager manager;
+    private final String fileName;
+    private final SQLitePlanRegistry registry;
+    private final int targetVersion;
+    private final boolean resumable;
+
+    private SQLiteDatabase db;
+
+    MigrationBody(
+      SQLiteManager manager,
+      String fileName,
+      SQLitePlanRegistry registry,
+      int targetVersion,
+      boolean resumable
+    ) {
+      this.manager = manager;
+      this.fileName = fileName;
+      this.registry = registry;
+      this.targetVersion = targetVersion;
+      this.resumable = resumable;
+    }
+
+    @Override
+    public void setUp() {
+      db = manager.openDatabase(fileName, 1);
+    }
+
+    @Override
+    public void run() {
+      SQLitePlanRunner
+        .For(db, targetVersion)
+        .setRegistry(registry)
+        .setResumable(resumable)
+        .setHandler(new QuietHandler())
+        .run();
+    }
+
+    @Override
+    public void tearDown() {
+      final String path = db.getPath();
+      manager.closeDatabase(fileName);
+      new File(path).delete();
+      new File(path + "-journal").delete();
+    }
+  }
+
+  /**
+   * Finds the migration path from V1 to the target version.
+   */
+  private static class LookupBody extends Benchmark.Body {
+
+    private final SQLitePlanRegistry registry;
+    private final int targetVersion;
+
+    LookupBody(SQLitePlanRegistry registry, int targetVersion) {
+      this.registry = registry;
+      this.targetVersion = targetVersion;
+    }
+
+    @Override
+    public void run() {
+      for(int count = 0; count < LOOKUPS; count++) {
+        registry.findPath(1, targetVersion);
+      }
+    }
+  }
+
+  /**
+   * A small plan which inserts a single row.
+   */
+  public static class InsertPlan extends SQLiteUpgradePlan {
+
+    @Override
+    public void applyUpgrade(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE IF NOT EXISTS bench (version INTEGER)");
+      db.execSQL("INSERT INTO bench (version) VALUES (1)");
+    }
+  }
+
+  /**
+   * A handler which doesn't log, so logging isn't measured.
+   */
+  private static class QuietHandler implements SQLitePlanRunner.Handler {
+
+    @Override
+    public void onChange(SQLiteDatabase db, int oldVersion, int newVersion) {
+      // Nothing.
+    }
+
+    @Override
+    public void onChangeComplete(SQLiteDatabase db, int version) {
+      // Nothing.
+    }
+
+    @Override
+    public void onError(SQLiteDatabase db, Throwable error) {
+      // Nothing.
+    }
+  }
+}
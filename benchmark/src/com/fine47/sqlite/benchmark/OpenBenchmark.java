@@ -0,0 +1,88 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import com.fine47.sqlite.SQLiteManager;
+
+/**
+ * Measures {@link SQLiteManager#openDatabase(String)} when the database isn't
+ * cached yet (cold) and when it is (cached).
+ *
+ * @since 1.4
+ */
+public class OpenBenchmark {
+
+  private final static int CACHED_OPENS = 10000;
+
+  private OpenBenchmark() {
+    // Static methods only.
+  }
+
+  /**
+   * Runs all open benchmarks.
+   *
+   * @param manager to benchmark
+   * @param fileName of the benchmark database
+   * @param results to add results to
+   * @throws Exception on failure
+   */
+  public static void run(
+    final SQLiteManager manager,
+    final String fileName,
+    BenchmarkResults results
+  ) throws Exception {
+    manager.openDatabase(fileName);
+
+    results.add(new Benchmark("openDatabase.cold", 5, 50, 1).run(
+      new Benchmark.Body() {
+        @Override
+        public void setUp() {
+          manager.closeDatabase(fileName);
+        }
+
+        @Override
+        public void run() {
+          manager.openDatabase(fileName);
+        }
+      }
+    ));
+
+    results.add(new Benchmark("openDatabase.cached", 5, 50, CACHED_OPENS).run(
+      new Benchmark.Body() {
+        @Override
+        public void run() {
+          for(int count = 0; count < CACHED_OPENS; count++) {
+            manager.openDatabase(fileName);
+          }
+        }
+      }
+    ));
+
+    manager.closeDatabase(fileName);
+  }
+}
@@ -0,0 +1,221 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import com.fine47.sqlite.SQLiteManager;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the latency of {@link SQLiteManager#openDatabase(String)} when many
+ * threads open the same database file at the same time. Each round starts all
+ * threads behind a gate, lets them race for the cold open of a fresh database
+ * file and then hammers the cached open path.
+ *
+ * The benchmark needs an {@link android.app.Application} attached to the
+ * manager. It's part of the benchmark module and is run on the JVM by its
+ * BenchmarkSuite, but it may also be started from an instrumented app.
+ *
+ * @since 1.4
+ */
+public class OpenContentionBenchmark {
+
+  private final static String LOG_TAG = "OpenContentionBenchmark";
+
+  /**
+   * Thread counts used by {@link #run(SQLiteManager, String)}.
+   */
+  public final static int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+  private final static int CACHED_OPENS_PER_THREAD = 10000;
+
+  private OpenContentionBenchmark() {
+    // Static methods only.
+  }
+
+  /**
+   * Runs the benchmark for all {@link #THREAD_COUNTS} and returns a printable
+   * table of the results. Database files are named after the specified prefix
+   * and deleted afterwards.
+   *
+   * @param manager to benchmark
+   * @param namePrefix file name prefix for the benchmark databases
+   * @return printable results
+   * @throws InterruptedException if interrupted while waiting for threads
+   */
+  public static String run(SQLiteManager manager, String namePrefix)
+    throws InterruptedException
+  {
+    return run(manager, namePrefix, null);
+  }
+
+  /**
+   * Runs the benchmark for all {@link #THREAD_COUNTS}, adds the results to the
+   * specified {@link BenchmarkResults} and returns a printable table of the
+   * results. Database files are named after the specified prefix and deleted
+   * afterwards.
+   *
+   * @param manager to benchmark
+   * @param namePrefix file name prefix for the benchmark databases
+   * @param benchmarkResults to add results to, may be NULL
+   * @return printable results
+   * @throws InterruptedException if interrupted while waiting for threads
+   */
+  public static String run(
+    SQLiteManager manager,
+    String namePrefix,
+    BenchmarkResults benchmarkResults
+  ) throws InterruptedException {
+    final StringBuilder results = new StringBuilder(
+      "threads  handles  cold p50(us)  cold max(us)  cached p50(ns)  cached p99(ns)\n"
+    );
+
+    for(int threads : THREAD_COUNTS) {
+      final Result result = runRound(
+        manager,
+        namePrefix + "-" + threads + ".db",
+        threads
+      );
+      final String line = String.format(
+        Locale.US,
+        "%7d  %7d  %12d  %12d  %14d  %14d",
+        threads,
+        result.distinctHandles,
+        percentile(result.coldNanos, 50) / 1000,
+        percentile(result.coldNanos, 100) / 1000,
+        percentile(result.cachedNanos, 50),
+        percentile(result.cachedNanos, 99)
+      );
+      Log.i(LOG_TAG, line);
+      results.append(line).append('\n');
+
+      if(null != benchmarkResults) {
+        benchmarkResults.add(new Benchmark.Result(
+          "openDatabase.contended.cold[threads=" + threads + "]",
+          result.coldNanos
+        ));
+        benchmarkResults.add(new Benchmark.Result(
+          "openDatabase.contended.cached[threads=" + threads + "]",
+          result.cachedNanos
+        ));
+      }
+    }
+
+    return results.toString();
+  }
+
+  private static Result runRound(
+    final SQLiteManager manager,
+    final String fileName,
+    int threads
+  ) throws InterruptedException {
+    final Result result = new Result(threads);
+    final CountDownLatch gate = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final SQLiteDatabase[] handles = new SQLiteDatabase[threads];
+
+    for(int index = 0; index < threads; index++) {
+      final int threadIndex = index;
+      new Thread(LOG_TAG + "-" + index) {
+        @Override
+        public void run() {
+          try {
+            gate.await();
+
+            // Race for the cold open.
+            long start = System.nanoTime();
+            handles[threadIndex] = manager.openDatabase(fileName);
+            result.coldNanos[threadIndex] = System.nanoTime() - start;
+
+            // Cached opens, averaged in small groups to smooth timer overhead.
+            final int offset = threadIndex * CACHED_OPENS_PER_THREAD / 10;
+            for(int group = 0; group < CACHED_OPENS_PER_THREAD / 10; group++) {
+              start = System.nanoTime();
+              for(int count = 0; count < 10; count++) {
+                manager.openDatabase(fileName);
+              }
+              result.cachedNanos[offset + group] =
+                (System.nanoTime() - start) / 10;
+            }
+          } catch(InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+
+    gate.countDown();
+    done.await();
+
+    // Every thread must have received the very same handle.
+    for(int index = 0; index < threads; index++) {
+      boolean seen = false;
+      for(int other = 0; other < index && !seen; other++) {
+        seen = handles[other] == handles[index];
+      }
+      if(!seen) {
+        result.distinctHandles++;
+      }
+    }
+
+    // Clean up through the manager, so it doesn't keep the closed handle.
+    if(null != handles[0]) {
+      final String path = handles[0].getPath();
+      manager.closeDatabase(fileName);
+      new File(path).delete();
+      new File(path + "-journal").delete();
+    }
+
+    return result;
+  }
+
+  private static long percentile(long[] values, int percentile) {
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    final int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  private static class Result {
+
+    final long[] coldNanos;
+    final long[] cachedNanos;
+    int distinctHandles;
+
+    Result(int threads) {
+      coldNanos = new long[threads];
+      cachedNanos = new long[threads * CACHED_OPENS_PER_THREAD / 10];
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.benchmark;
+
+import com.fine47.sqlite.SQLiteManager;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs all benchmarks on the JVM, with SQLite provided by Robolectric, and
+ * writes the results as JSON to the file named by the "benchmark.results"
+ * system property. Run with "./gradlew :benchmark:benchmark".
+ *
+ * @since 1.4
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class BenchmarkSuite {
+
+  @Test
+  public void run() throws Exception {
+    final SQLiteManager manager = SQLiteManager.getInstance();
+    manager.setApplication(RuntimeEnvironment.application);
+
+    final BenchmarkResults results = new BenchmarkResults();
+    OpenBenchmark.run(manager, "open-benchmark.db", results);
+    MigrationBenchmark.run(manager, "migration-benchmark.db", results);
+    OpenContentionBenchmark.run(manager, "contention-benchmark", results);
+    System.out.print(results);
+
+    final String output = System.getProperty("benchmark.results");
+    if(null != output) {
+      results.writeTo(new File(output));
+      System.out.println("Benchmark results written to: " + output);
+    }
+  }
+}
@@ -46,6 +46,43 @@ public class SQLiteApplication extends Application {
 
     // Set application instance.
     SQLiteManager.getInstance().setApplication(SQLiteApplication.this);
+
+    // Give the app a chance to open its databases in the background.
+    onOpenDatabases(SQLiteManager.getInstance());
+  }
+
+  /**
+   * Called at the end of {@link #onCreate()}, once the {@link SQLiteManager} is
+   * ready. Override to start opening and migrating databases in the
+   * background using
+   * {@link SQLiteManager#openDatabaseAsync(String, int, SQLitePlanRunner.Preparer)},
+   * so app startup doesn't block on migrations. Does nothing by default.
+   *
+   * @param manager the initialized manager
+   */
+  protected void onOpenDatabases(SQLiteManager manager) {
+    // Nothing by default.
+  }
+
+  /**
+   * Releases memory held by the managed databases according to the trim
+   * level, in the background.
+   *
+   * @param level trim level
+   * @see SQLiteManager#trimMemory(int)
+   */
+  @Override
+  public void onTrimMemory(final int level) {
+    super.onTrimMemory(level);
+
+    // Trimming may wait for databases in use, keep it off the main thread.
+    final SQLiteManager manager = SQLiteManager.getInstance();
+    manager.getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        manager.trimMemory(level);
+      }
+    });
   }
 
   @Override
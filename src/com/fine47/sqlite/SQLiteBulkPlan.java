@@ -0,0 +1,55 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+/**
+ * A plan which bulk-loads or rewrites tables. While it runs, the indexes and
+ * triggers of its tables are dropped and foreign key checks are deferred, so
+ * rows aren't indexed one at a time; afterwards, the indexes and triggers are
+ * created again and foreign keys of the tables are checked. All of this
+ * happens in the plan's transaction, so a failure rolls everything back.
+ *
+ * Triggers don't fire for the rows changed by the plan, and the plan must not
+ * drop or rename its tables.
+ *
+ * A {@link SQLiteChunkedPlan} may be a bulk plan only when the runner isn't
+ * resumable, so all its chunks run in the plan's transaction; a resumable
+ * runner rejects it with an IllegalArgumentException, since its chunks would
+ * commit, and let other threads write, while indexes and triggers are missing.
+ *
+ * @since 1.4
+ */
+public interface SQLiteBulkPlan extends SQLitePlan {
+
+  /**
+   * Returns the names of the tables which the plan bulk-loads or rewrites.
+   *
+   * @return table names
+   */
+  public String[] getBulkTables();
+}
@@ -0,0 +1,122 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+/**
+ * A single change recorded by change capture: a row of a table which was
+ * inserted, updated or deleted.
+ *
+ * @see SQLiteChangeLog
+ * @since 1.4
+ */
+public class SQLiteChange {
+
+  /**
+   * Operation of a row which was inserted.
+   */
+  public final static int OP_INSERT = 1;
+
+  /**
+   * Operation of a row which was updated.
+   */
+  public final static int OP_UPDATE = 2;
+
+  /**
+   * Operation of a row which was deleted.
+   */
+  public final static int OP_DELETE = 3;
+
+  private final long sequence;
+  private final String table;
+  private final long rowId;
+  private final int operation;
+
+  SQLiteChange(long sequence, String table, long rowId, int operation) {
+    this.sequence = sequence;
+    this.table = table;
+    this.rowId = rowId;
+    this.operation = operation;
+  }
+
+  /**
+   * Returns the sequence number of this change, which grows with each change
+   * and is never reused.
+   *
+   * @return sequence number
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Returns the name of the changed table.
+   *
+   * @return table name
+   */
+  public String getTable() {
+    return table;
+  }
+
+  /**
+   * Returns the rowid of the changed row.
+   *
+   * @return rowid
+   */
+  public long getRowId() {
+    return rowId;
+  }
+
+  /**
+   * Returns the operation which changed the row: {@link #OP_INSERT},
+   * {@link #OP_UPDATE} or {@link #OP_DELETE}.
+   *
+   * @return operation
+   */
+  public int getOperation() {
+    return operation;
+  }
+
+  @Override
+  public String toString() {
+    final String name;
+    switch(operation) {
+      case OP_INSERT:
+        name = "insert";
+        break;
+      case OP_UPDATE:
+        name = "update";
+        break;
+      case OP_DELETE:
+        name = "delete";
+        break;
+      default:
+        name = String.valueOf(operation);
+    }
+    return "#" + sequence + " " + name + " " + table + "/" + rowId;
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.Locale;
+
+/**
+ * A built-in plan which captures the changes made to some tables in the log
+ * read by {@link SQLiteChangeLog}. Triggers on each table append the rowid,
+ * operation and a sequence number of every changed row to the log.
+ *
+ * Like any other plan, it's registered for a version of the database:
+ *
+ * <pre>
+ * public class V9CaptureChanges extends SQLiteChangeCapturePlan {
+ *
+ *   public String[] getTables() {
+ *     return new String[] {"items", "lists"};
+ *   }
+ * }
+ *
+ * runner.addPlan(9, V9CaptureChanges.class);
+ * </pre>
+ *
+ * Tracking more tables later on is done by another plan, for a newer version,
+ * listing them. Downgrading the database removes the triggers of the plan's
+ * tables, but keeps the log.
+ *
+ * @since 1.4
+ */
+abstract public class SQLiteChangeCapturePlan extends SQLiteConnectionPlan {
+
+  private final static String TRIGGER_PREFIX = "_sqlite_manager_capture_";
+
+  /**
+   * Returns the names of the tables whose changes are captured.
+   *
+   * @return table names
+   */
+  abstract public String[] getTables();
+
+  @Override
+  public void applyUpgrade(final SQLiteConnection connection) {
+    connection.execSQL(
+      "CREATE TABLE IF NOT EXISTS " + SQLiteChangeLog.TABLES_TABLE + " (" +
+        "id INTEGER PRIMARY KEY, " +
+        "name TEXT NOT NULL UNIQUE COLLATE NOCASE" +
+      ")"
+    );
+    connection.execSQL(
+      "CREATE TABLE IF NOT EXISTS " + SQLiteChangeLog.CHANGES_TABLE + " (" +
+        "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+        "tbl INTEGER NOT NULL, " +
+        "row_id INTEGER NOT NULL, " +
+        "op INTEGER NOT NULL" +
+      ")"
+    );
+    connection.execSQL(
+      "CREATE TABLE IF NOT EXISTS " + SQLiteChangeLog.CONSUMERS_TABLE + " (" +
+        "name TEXT PRIMARY KEY, " +
+        "acked_seq INTEGER NOT NULL" +
+      ")"
+    );
+
+    for(String table : getTables()) {
+      if(!SQLiteSchema.hasTable(connection, table)) {
+        throw connection.newException("No such table: " + table);
+      }
+
+      // Tables are identified by a number in the log, to keep it compact.
+      connection.execSQL(
+        "INSERT OR IGNORE INTO " + SQLiteChangeLog.TABLES_TABLE +
+          " (name) VALUES (?)",
+        new Object[] {table}
+      );
+      final long id;
+      final SQLiteBackendCursor cursor = connection.query(
+        "SELECT id FROM " + SQLiteChangeLog.TABLES_TABLE + " WHERE name = ?",
+        table
+      );
+      try {
+        cursor.moveToNext();
+        id = cursor.getLong(0);
+      } finally {
+        cursor.close();
+      }
+
+      dropTriggers(connection, table);
+      final String log = "INSERT INTO " + SQLiteChangeLog.CHANGES_TABLE +
+        " (tbl, row_id, op) ";
+      connection.execSQL(
+        "CREATE TRIGGER " + getTriggerName(table, "insert") +
+        " AFTER INSERT ON " + SQLiteSchema.quote(table) + " BEGIN " +
+          log + "VALUES (" + id + ", new.rowid, " +
+            SQLiteChange.OP_INSERT + "); " +
+        "END"
+      );
+      // A row whose rowid changed is reported as deleted, then updated.
+      connection.execSQL(
+        "CREATE TRIGGER " + getTriggerName(table, "update") +
+        " AFTER UPDATE ON " + SQLiteSchema.quote(table) + " BEGIN " +
+          log + "SELECT " + id + ", old.rowid, " + SQLiteChange.OP_DELETE +
+            " WHERE old.rowid != new.rowid; " +
+          log + "VALUES (" + id + ", new.rowid, " +
+            SQLiteChange.OP_UPDATE + "); " +
+        "END"
+      );
+      connection.execSQL(
+        "CREATE TRIGGER " + getTriggerName(table, "delete") +
+        " AFTER DELETE ON " + SQLiteSchema.quote(table) + " BEGIN " +
+          log + "VALUES (" + id + ", old.rowid, " +
+            SQLiteChange.OP_DELETE + "); " +
+        "END"
+      );
+    }
+  }
+
+  @Override
+  public void applyDowngrade(final SQLiteConnection connection) {
+    for(String table : getTables()) {
+      dropTriggers(connection, table);
+    }
+  }
+
+  private static void dropTriggers(SQLiteConnection connection, String table) {
+    for(String operation : new String[] {"insert", "update", "delete"}) {
+      connection.execSQL(
+        "DROP TRIGGER IF EXISTS " + getTriggerName(table, operation));
+    }
+  }
+
+  private static String getTriggerName(String table, String operation) {
+    return SQLiteSchema.quote(
+      TRIGGER_PREFIX + table.toLowerCase(Locale.US) + "_" + operation);
+  }
+}
@@ -0,0 +1,268 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteBackendStatement;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the changes captured by {@link SQLiteChangeCapturePlan}, so caches and
+ * sync jobs can catch up incrementally instead of scanning whole tables.
+ *
+ * Each reader registers as a named consumer, reads changes in batches after
+ * the last sequence number it has processed, and acknowledges them. Changes
+ * are pruned from the log once all registered consumers have acknowledged
+ * them; consumers which are no longer needed must be unregistered, otherwise
+ * the log keeps growing.
+ *
+ * <pre>
+ * SQLiteChangeLog log = SQLiteManager.getInstance().getChangeLog(DB_NAME);
+ * log.registerConsumer("sync");
+ *
+ * List&lt;SQLiteChange&gt; changes;
+ * while(!(changes = log.read("sync", 500)).isEmpty()) {
+ *   upload(changes);
+ *   log.acknowledge("sync", changes.get(changes.size() - 1).getSequence());
+ * }
+ * </pre>
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#getChangeLog(String)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteChangeLog {
+
+  /**
+   * Name of the table holding the captured changes.
+   */
+  public final static String CHANGES_TABLE = "_sqlite_manager_changes";
+
+  /**
+   * Name of the table mapping captured tables to their numbers in the log.
+   */
+  public final static String TABLES_TABLE = "_sqlite_manager_change_tables";
+
+  /**
+   * Name of the table holding the consumers and their acknowledged sequence
+   * numbers.
+   */
+  public final static String CONSUMERS_TABLE =
+    "_sqlite_manager_change_consumers";
+
+  private final SQLiteConnection connection;
+
+  SQLiteChangeLog(SQLiteConnection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Checks whether change capture has been installed in the database.
+   *
+   * @return TRUE if installed, FALSE otherwise
+   */
+  public boolean isInstalled() {
+    return SQLiteSchema.hasTable(connection, CHANGES_TABLE);
+  }
+
+  /**
+   * Returns the sequence number of the latest captured change.
+   *
+   * @return sequence number, 0 if no changes were ever captured
+   */
+  public long getLastSequence() {
+    return longForQuery(
+      "SELECT coalesce(max(seq), 0) FROM (" +
+        "SELECT max(seq) AS seq FROM " + CHANGES_TABLE + " UNION ALL " +
+        "SELECT seq FROM sqlite_sequence WHERE name = '" + CHANGES_TABLE + "'" +
+      ")"
+    );
+  }
+
+  /**
+   * Registers a consumer, which only gets changes captured from now on. Has no
+   * effect if the consumer is already registered.
+   *
+   * @param consumer unique name of the consumer
+   * @return last sequence number acknowledged by the consumer
+   */
+  public long registerConsumer(String consumer) {
+    ensureInstalled();
+    connection.execSQL(
+      "INSERT OR IGNORE INTO " + CONSUMERS_TABLE +
+        " (name, acked_seq) VALUES (?, ?)",
+      new Object[] {consumer, getLastSequence()}
+    );
+    return getAcknowledged(consumer);
+  }
+
+  /**
+   * Unregisters a consumer, and prunes the changes no other consumer needs.
+   *
+   * @param consumer name of the consumer
+   */
+  public void unregisterConsumer(String consumer) {
+    ensureInstalled();
+    connection.execSQL(
+      "DELETE FROM " + CONSUMERS_TABLE + " WHERE name = ?",
+      new Object[] {consumer}
+    );
+    prune();
+  }
+
+  /**
+   * Returns the last sequence number acknowledged by a consumer.
+   *
+   * @param consumer name of the consumer
+   * @return acknowledged sequence number
+   * @throws IllegalStateException if the consumer isn't registered
+   */
+  public long getAcknowledged(String consumer) {
+    ensureInstalled();
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT acked_seq FROM " + CONSUMERS_TABLE + " WHERE name = ?",
+      consumer
+    );
+    try {
+      if(!cursor.moveToNext()) {
+        throw new IllegalStateException(
+          "Consumer hasn't been registered: " + consumer);
+      }
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Reads the next changes a consumer hasn't acknowledged yet.
+   *
+   * @param consumer name of the consumer
+   * @param limit maximum number of changes to read
+   * @return changes in sequence order, empty if none
+   */
+  public List<SQLiteChange> read(String consumer, int limit) {
+    return read(getAcknowledged(consumer), limit);
+  }
+
+  /**
+   * Reads the changes captured after the specified sequence number. Changes
+   * which have been pruned can't be read anymore.
+   *
+   * @param sequence number after which to read
+   * @param limit maximum number of changes to read
+   * @return changes in sequence order, empty if none
+   */
+  public List<SQLiteChange> read(long sequence, int limit) {
+    if(1 > limit) {
+      throw new IllegalArgumentException(
+        "Limit must be equal or greater than 1.");
+    }
+    ensureInstalled();
+
+    final ArrayList<SQLiteChange> changes = new ArrayList();
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT c.seq, t.name, c.row_id, c.op FROM " + CHANGES_TABLE + " c " +
+        "JOIN " + TABLES_TABLE + " t ON t.id = c.tbl " +
+        "WHERE c.seq > ? ORDER BY c.seq LIMIT ?",
+      sequence,
+      limit
+    );
+    try {
+      while(cursor.moveToNext()) {
+        changes.add(new SQLiteChange(
+          cursor.getLong(0),
+          cursor.getString(1),
+          cursor.getLong(2),
+          cursor.getInt(3)
+        ));
+      }
+    } finally {
+      cursor.close();
+    }
+    return changes;
+  }
+
+  /**
+   * Acknowledges that a consumer has processed all changes up to the
+   * specified sequence number, and prunes the changes which all consumers
+   * have processed.
+   *
+   * @param consumer name of the consumer
+   * @param sequence number of the last processed change
+   */
+  public void acknowledge(String consumer, long sequence) {
+    ensureInstalled();
+    connection.execSQL(
+      "UPDATE " + CONSUMERS_TABLE + " SET acked_seq = max(acked_seq, ?) " +
+        "WHERE name = ?",
+      new Object[] {sequence, consumer}
+    );
+    prune();
+  }
+
+  /**
+   * Deletes the changes which all registered consumers have acknowledged. If
+   * no consumers are registered, all changes are deleted.
+   *
+   * @return number of deleted changes
+   */
+  public long prune() {
+    ensureInstalled();
+    final SQLiteBackendStatement statement = connection.compileStatement(
+      "DELETE FROM " + CHANGES_TABLE + " WHERE seq <= coalesce(" +
+        "(SELECT min(acked_seq) FROM " + CONSUMERS_TABLE + "), " +
+        "(SELECT max(seq) FROM " + CHANGES_TABLE + "))"
+    );
+    try {
+      return statement.executeUpdateDelete();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private void ensureInstalled() {
+    if(!isInstalled()) {
+      throw new IllegalStateException(
+        "Change capture hasn't been installed by SQLiteChangeCapturePlan: " +
+        connection.getFilePath());
+    }
+  }
+
+  private long longForQuery(String sql) {
+    final SQLiteBackendCursor cursor = connection.query(sql);
+    try {
+      return cursor.moveToNext() ? cursor.getLong(0) : 0;
+    } finally {
+      cursor.close();
+    }
+  }
+}
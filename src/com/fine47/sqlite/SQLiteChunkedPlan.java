@@ -0,0 +1,253 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.aux.Util;
+
+/**
+ * An upgrade plan which rewrites the rows of a (potentially huge) table in
+ * bounded chunks. Rows are walked in key order using a keyset cursor: each
+ * chunk selects the next {@link #getChunkSize()} rows whose key is greater
+ * than the last key of the previous chunk, and hands them to
+ * {@link #applyChunk(SQLiteDatabase, Cursor)}.
+ *
+ * When executed by a resumable {@link SQLitePlanRunner}, every chunk is
+ * committed in its own transaction, so the write lock is released between
+ * chunks and other threads keep going; the last committed key is recorded so
+ * an interrupted run continues where it stopped. Progress is reported to
+ * {@link SQLitePlanRunner.ProgressHandler} implementations.
+ *
+ * Otherwise, when the runner isn't resumable, all chunks run inside the
+ * runner's single transaction: chunking then only bounds the number of rows
+ * held in memory at once. The write lock is held until the whole run commits,
+ * and {@link #getThrottleDelay()} is ignored.
+ *
+ * @see SQLitePlanRunner#setResumable(boolean)
+ * @since 1.4
+ */
+abstract public class SQLiteChunkedPlan extends SQLiteUpgradePlan {
+
+  /**
+   * Default number of rows in a chunk.
+   */
+  public final static int DEFAULT_CHUNK_SIZE = 1000;
+
+  private Object lastKey;
+
+  /**
+   * Returns the name of the table whose rows are migrated.
+   *
+   * @return table name
+   */
+  abstract public String getTable();
+
+  /**
+   * Returns the name of a unique, indexed column used to walk the table in
+   * order; "rowid" by default.
+   *
+   * @return key column name
+   */
+  public String getKeyColumn() {
+    return "rowid";
+  }
+
+  /**
+   * Returns the comma-separated list of columns to select for each row, in
+   * addition to the key column which is always selected first; "*" by default.
+   *
+   * @return columns to select
+   */
+  public String getColumns() {
+    return "*";
+  }
+
+  /**
+   * Returns an optional filter, without the WHERE keyword, which restricts the
+   * rows to migrate.
+   *
+   * @return filter, or NULL to migrate all rows
+   */
+  public String getSelection() {
+    return null;
+  }
+
+  /**
+   * Returns the maximum number of rows in a chunk.
+   *
+   * @return chunk size
+   */
+  public int getChunkSize() {
+    return DEFAULT_CHUNK_SIZE;
+  }
+
+  /**
+   * Returns the time, in milliseconds, to pause between two chunks so other
+   * threads get a fair share of the database. Only honored by a resumable
+   * {@link SQLitePlanRunner}, which commits chunks separately; pausing inside
+   * a single transaction would only hold the write lock longer.
+   *
+   * @return pause between chunks
+   */
+  public long getThrottleDelay() {
+    return 0;
+  }
+
+  /**
+   * Prepares the schema before the first chunk, for example by adding the
+   * columns being populated. Does nothing by default.
+   *
+   * @param db to apply the upgrade to
+   */
+  public void beforeChunks(final SQLiteDatabase db) {
+    // Nothing by default.
+  }
+
+  /**
+   * Migrates a single chunk of rows. The cursor is positioned before its first
+   * row; the key column is at index 0, followed by {@link #getColumns()}.
+   *
+   * @param db to apply the upgrade to
+   * @param rows chunk of rows to migrate
+   */
+  abstract public void applyChunk(final SQLiteDatabase db, final Cursor rows);
+
+  /**
+   * Finalizes the schema after the last chunk, for example by creating indices
+   * on the populated columns. Does nothing by default.
+   *
+   * @param db to apply the upgrade to
+   */
+  public void afterChunks(final SQLiteDatabase db) {
+    // Nothing by default.
+  }
+
+  /**
+   * Applies all chunks of this plan in one go. {@link SQLitePlanRunner} drives
+   * the chunks itself, this is used when the plan is applied directly.
+   *
+   * @param db to apply the upgrade to
+   */
+  @Override
+  public void applyUpgrade(final SQLiteDatabase db) {
+    beforeChunks(db);
+    while(0 < applyNextChunk(db)) {
+      // Keep going until all rows are migrated.
+    }
+    afterChunks(db);
+  }
+
+  /**
+   * Continues the migration after the specified key, which was the last key
+   * of a previously committed chunk.
+   *
+   * @param key last migrated key, or NULL to start from the beginning
+   */
+  void resumeAfter(Object key) {
+    lastKey = key;
+  }
+
+  /**
+   * Returns the last key of the most recently migrated chunk.
+   *
+   * @return last migrated key, or NULL if no chunk was migrated yet
+   */
+  Object getLastKey() {
+    return lastKey;
+  }
+
+  /**
+   * Counts the rows which still need to be migrated.
+   *
+   * @param db to count rows of
+   * @return number of remaining rows
+   */
+  long countRemaining(SQLiteDatabase db) {
+    final Cursor cursor = Util.rawQuery(
+      db,
+      "SELECT COUNT(*) FROM " + getTable() + getWhereClause(),
+      getWhereArgs()
+    );
+    try {
+      return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Migrates the next chunk of rows.
+   *
+   * @param db to apply the upgrade to
+   * @return number of migrated rows, or 0 when all rows have been migrated
+   */
+  int applyNextChunk(SQLiteDatabase db) {
+    final Cursor rows = Util.rawQuery(
+      db,
+      "SELECT " + getKeyColumn() + ", " + getColumns() +
+        " FROM " + getTable() + getWhereClause() +
+        " ORDER BY " + getKeyColumn() + " LIMIT " + getChunkSize(),
+      getWhereArgs()
+    );
+    try {
+      final int count = rows.getCount();
+      if(0 < count) {
+        rows.moveToLast();
+        final Object key = Util.getValue(rows, 0);
+        rows.moveToPosition(-1);
+        applyChunk(db, rows);
+        lastKey = key;
+      }
+      return count;
+    } finally {
+      rows.close();
+    }
+  }
+
+  private String getWhereClause() {
+    final String selection = getSelection();
+    final StringBuilder where = new StringBuilder();
+    if(null != lastKey) {
+      where.append(getKeyColumn()).append(" > ?");
+    }
+    if(null != selection) {
+      if(0 < where.length()) {
+        where.append(" AND ");
+      }
+      where.append('(').append(selection).append(')');
+    }
+    return 0 == where.length() ? "" : " WHERE " + where;
+  }
+
+  private Object[] getWhereArgs() {
+    // The key keeps its storage class, so text and blob keys compare the same
+    // way they're ordered.
+    return null == lastKey ? null : new Object[] {lastKey};
+  }
+}
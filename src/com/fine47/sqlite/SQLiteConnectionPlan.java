@@ -0,0 +1,78 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
+import com.fine47.sqlite.backend.SQLiteConnection;
+
+/**
+ * A plan which applies its changes through a {@link SQLiteConnection} instead
+ * of an {@link SQLiteDatabase}, so it runs on any
+ * {@link com.fine47.sqlite.backend.SQLiteBackend}: on Android, as well as on a
+ * plain JVM using {@link com.fine47.sqlite.backend.SQLiteJdbcBackend}. The
+ * implementation will throw an exception if an attempt is made to downgrade
+ * the database, unless {@link #applyDowngrade(SQLiteConnection)} is
+ * overridden.
+ *
+ * @see SQLitePlanRunner#For(SQLiteConnection, int)
+ * @since 1.4
+ */
+abstract public class SQLiteConnectionPlan implements SQLitePlan {
+
+  /**
+   * Applies an upgrade to the specified connection from a previous version to
+   * the version of this plan. The changes will be executed within a
+   * transaction; any and all errors will cause changes to be rolled back.
+   *
+   * @param connection to apply the upgrade to
+   */
+  abstract public void applyUpgrade(final SQLiteConnection connection);
+
+  /**
+   * Applies a downgrade to the specified connection from a newer version to
+   * the version of this plan. The changes will be executed within a
+   * transaction; any and all errors will cause changes to be rolled back.
+   *
+   * @param connection to apply the downgrade to
+   */
+  public void applyDowngrade(final SQLiteConnection connection) {
+    throw new IllegalStateException(
+      "Default upgrade plan forbids downgrades.");
+  }
+
+  @Override
+  public final void applyUpgrade(final SQLiteDatabase db) {
+    applyUpgrade(SQLiteAndroidBackend.wrap(db));
+  }
+
+  @Override
+  public final void applyDowngrade(final SQLiteDatabase db) {
+    applyDowngrade(SQLiteAndroidBackend.wrap(db));
+  }
+}
@@ -0,0 +1,332 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * A federated view of several managed databases, attached to one connection
+ * under stable schema aliases, so joins across them run natively in SQLite:
+ *
+ * <pre>
+ * SELECT i.title FROM catalog.items i JOIN user.favorites f ON f.item_id = i.id
+ * </pre>
+ *
+ * The view has its own in-memory main database, so attaching files doesn't
+ * affect the connections the manager keeps for them, such as turning off
+ * write-ahead logging. Member databases must be opened through the manager.
+ *
+ * Attachments follow the manager: when a member database is closed or
+ * evicted, it's detached from the view, which releases its file; it's
+ * attached again by the next query, which reopens evicted databases as usual.
+ * Like cursors of a closed database, cursors which are still being read when
+ * a member is closed fail.
+ *
+ * Instances are obtained by calling {@link SQLiteManager#openFederation()},
+ * and must be closed when no longer needed.
+ *
+ * @since 1.4
+ */
+public class SQLiteFederation {
+
+  private final static String LOG_TAG = "SQLiteFederation";
+
+  /**
+   * Maximum number of databases attached to a view; SQLite's default limit,
+   * which is kept by Android builds.
+   */
+  public final static int MAX_ATTACHED = 10;
+
+  private final SQLiteManager manager;
+  private final SQLiteDatabase db;
+  private final LinkedHashMap<String, Member> members;
+
+  private long queries;
+  private long attachments;
+  private boolean closed;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  SQLiteFederation(SQLiteManager manager, SQLiteDatabase db) {
+    this.manager = manager;
+    this.db = db;
+    this.members = new LinkedHashMap();
+  }
+
+  /**
+   * Adds the managed database at the specified file path to this view under
+   * the specified schema alias. The database is attached by the next query.
+   *
+   * @param alias schema name to qualify the database's tables with
+   * @param filePath file name/path of an open database
+   * @return this instance
+   */
+  public SQLiteFederation attach(String alias, String filePath) {
+    if(null == alias || 0 == alias.length()) {
+      throw new IllegalArgumentException("Alias must not be empty.");
+    }
+
+    final String key = alias.toLowerCase(Locale.US);
+    if("main".equals(key) || "temp".equals(key)) {
+      throw new IllegalArgumentException("Alias is reserved: " + alias);
+    }
+
+    // Make sure the database is managed, and known under its normalized path.
+    final String normalizedPath = manager.normalizeFilePath(filePath);
+    manager.getOpenDatabase(normalizedPath);
+
+    synchronized(this) {
+      ensureOpen();
+      if(members.containsKey(key)) {
+        throw new IllegalArgumentException(
+          "Alias is already in use: " + alias);
+      }
+      if(MAX_ATTACHED <= members.size()) {
+        throw new IllegalStateException(
+          "Unable to attach more than " + MAX_ATTACHED + " databases.");
+      }
+      members.put(key, new Member(alias, normalizedPath));
+    }
+    return this;
+  }
+
+  /**
+   * Removes the database with the specified alias from this view.
+   *
+   * @param alias schema name of the database
+   */
+  public synchronized void detach(String alias) {
+    ensureOpen();
+    final Member member = members.remove(alias.toLowerCase(Locale.US));
+    if(null == member) {
+      throw new IllegalArgumentException("No such alias: " + alias);
+    }
+    if(member.attached) {
+      db.execSQL("DETACH DATABASE " + SQLiteSchema.quote(member.alias));
+    }
+  }
+
+  /**
+   * Returns the aliases of the databases in this view, in the order they were
+   * added.
+   *
+   * @return schema aliases
+   */
+  public synchronized String[] getAliases() {
+    final String[] aliases = new String[members.size()];
+    int index = 0;
+    for(Member member : members.values()) {
+      aliases[index++] = member.alias;
+    }
+    return aliases;
+  }
+
+  /**
+   * Returns the number of queries run on this view.
+   *
+   * @return number of queries
+   */
+  public synchronized long getQueryCount() {
+    return queries;
+  }
+
+  /**
+   * Returns the number of times member databases were attached, including
+   * again after they were closed by the manager.
+   *
+   * @return number of attachments
+   */
+  public synchronized long getAttachCount() {
+    return attachments;
+  }
+
+  /**
+   * Checks whether this view is still usable.
+   *
+   * @return TRUE if view is open, FALSE otherwise
+   */
+  public synchronized boolean isOpen() {
+    return !closed;
+  }
+
+  /**
+   * Runs the specified query, whose tables are qualified by the aliases of
+   * their databases, after attaching any member which isn't attached.
+   *
+   * @param sql of the query
+   * @param args to bind to the query
+   * @return cursor over the results
+   */
+  public Cursor query(String sql, String... args) {
+    // Reopen evicted members outside of the lock, as opening a database may
+    // evict others, which are then detached from this view.
+    for(String filePath : getDetachedPaths()) {
+      manager.getOpenDatabase(filePath);
+    }
+
+    synchronized(this) {
+      ensureOpen();
+      lastUsed = SystemClock.elapsedRealtime();
+      queries++;
+
+      for(Member member : members.values()) {
+        if(member.released) {
+          // The database was closed while the view was busy.
+          db.execSQL("DETACH DATABASE " + SQLiteSchema.quote(member.alias));
+          member.attached = false;
+          member.released = false;
+        }
+        if(!member.attached) {
+          db.execSQL(
+            "ATTACH DATABASE ? AS " + SQLiteSchema.quote(member.alias),
+            new Object[] {member.filePath}
+          );
+          member.attached = true;
+          attachments++;
+        }
+      }
+
+      return db.rawQuery(sql, args);
+    }
+  }
+
+  /**
+   * Detaches all databases and closes this view; it can't be used afterwards.
+   */
+  public void close() {
+    synchronized(this) {
+      if(closed) {
+        return;
+      }
+      closed = true;
+      members.clear();
+    }
+
+    SQLiteManager.removeFederation(this);
+    db.close();
+    Log.i(
+      LOG_TAG,
+      "Closed view: " + getQueryCount() + " query(ies), " + getAttachCount() +
+        " attachment(s)"
+    );
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SQLiteFederation" + new ArrayList(members.keySet());
+  }
+
+  /**
+   * Checks whether the database at the specified normalized file path is a
+   * member of this view.
+   *
+   * @param filePath normalized file path of database file
+   * @return TRUE if the database is a member, FALSE otherwise
+   */
+  synchronized boolean contains(String filePath) {
+    for(Member member : members.values()) {
+      if(member.filePath.equals(filePath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Detaches the database at the specified normalized file path, which is
+   * being closed by the manager; it's attached again by the next query.
+   *
+   * @param filePath normalized file path of database file
+   */
+  synchronized void release(String filePath) {
+    if(closed) {
+      return;
+    }
+    for(Member member : members.values()) {
+      if(member.attached && member.filePath.equals(filePath)) {
+        try {
+          db.execSQL("DETACH DATABASE " + SQLiteSchema.quote(member.alias));
+          member.attached = false;
+        } catch(SQLiteException error) {
+          // Still in use by a statement, detach it before the next query.
+          Log.w(LOG_TAG, "Unable to detach " + member.alias + ": " + filePath,
+            error);
+          member.released = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the time this view was last queried, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  private synchronized ArrayList<String> getDetachedPaths() {
+    final ArrayList<String> filePaths = new ArrayList();
+    for(Member member : members.values()) {
+      if(!member.attached || member.released) {
+        filePaths.add(member.filePath);
+      }
+    }
+    return filePaths;
+  }
+
+  private void ensureOpen() {
+    if(closed) {
+      throw new IllegalStateException("Federated view has been closed.");
+    }
+  }
+
+  /**
+   * A database of the view, and whether it's currently attached.
+   */
+  private static class Member {
+
+    final String alias;
+    final String filePath;
+    boolean attached;
+    boolean released;
+
+    Member(String alias, String filePath) {
+      this.alias = alias;
+      this.filePath = filePath;
+    }
+  }
+}
@@ -0,0 +1,745 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+import com.fine47.sqlite.aux.LongHashMap;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An on-heap mirror of a table which is read far more often than it's
+ * written, such as a lookup table. Rows are loaded into a hash map keyed by
+ * an integer column, the rowid by default, so point lookups don't go through
+ * SQLite and its cursors at all.
+ *
+ * Mirrors are registered per table by calling
+ * {@link SQLiteManager#mirrorTable(String, SQLiteHotTable)}. They're loaded in
+ * the background whenever their database is opened, and reloaded after
+ * migrations and table rebuilds. Closing the database drops the mirrored rows
+ * but keeps the registration.
+ *
+ * The mirror is kept up to date by writing through it, using
+ * {@link #insert(ContentValues)}, {@link #update(long, ContentValues)} and
+ * {@link #delete(long)}, and by writes applied by the database's
+ * {@link SQLiteWriteQueue} which reload it after they're committed. Other
+ * writes to the table must be followed by a call to {@link #refresh(long)}
+ * or {@link #invalidate()}.
+ *
+ * A table which doesn't fit in the memory budget isn't mirrored; lookups are
+ * then served by the database, so callers don't need to care either way.
+ *
+ * @since 1.4
+ */
+public class SQLiteHotTable {
+
+  private final static String LOG_TAG = "SQLiteHotTable";
+
+  /**
+   * Name of the default key column.
+   */
+  public final static String ROWID = "rowid";
+
+  /**
+   * Default memory budget of a mirror, in bytes.
+   */
+  public final static long DEFAULT_BUDGET = 4 * 1024 * 1024;
+
+  // Rough sizes, in bytes, used to estimate the memory held by rows.
+  private final static int OBJECT_OVERHEAD = 16;
+  private final static int REFERENCE_SIZE = 4;
+  private final static int SLOT_SIZE = 2 * (8 + REFERENCE_SIZE);
+
+  private final String table;
+  private String keyColumn = ROWID;
+  private long budget = DEFAULT_BUDGET;
+  private volatile String filePath;
+
+  // Statements checked for writes to this table since it was loaded.
+  private final ConcurrentHashMap<String, Boolean> writers =
+    new ConcurrentHashMap();
+
+  private volatile SQLiteConnection connection;
+  private volatile long rootPage;
+  private volatile boolean stale = true;
+  private String[] columns;
+  private LongHashMap<Object[]> rows;
+  private long bytes;
+  private long loads;
+  private long lookups;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  private SQLiteHotTable(String table) {
+    this.table = table;
+  }
+
+  /**
+   * Prepares a new mirror of the specified table.
+   *
+   * @param table name of the table to mirror
+   * @return new instance
+   */
+  public static SQLiteHotTable For(String table) {
+    if(null == table || 0 == table.length()) {
+      throw new IllegalArgumentException("Table name must not be empty.");
+    }
+    return new SQLiteHotTable(table);
+  }
+
+  /**
+   * Sets the integer column to key rows by, which must be unique. Defaults
+   * to the rowid.
+   *
+   * @param keyColumn name of the key column
+   * @return this instance
+   */
+  public SQLiteHotTable setKeyColumn(String keyColumn) {
+    ensureDetached();
+    this.keyColumn = keyColumn;
+    return this;
+  }
+
+  /**
+   * Sets the maximum memory held by the mirrored rows; larger tables are
+   * served by the database instead. Defaults to {@link #DEFAULT_BUDGET}.
+   *
+   * @param budget in bytes
+   * @return this instance
+   */
+  public SQLiteHotTable setBudget(long budget) {
+    if(1 > budget) {
+      throw new IllegalArgumentException(
+        "Budget must be equal or greater than 1.");
+    }
+    ensureDetached();
+    this.budget = budget;
+    return this;
+  }
+
+  /**
+   * Returns the name of the mirrored table.
+   *
+   * @return table name
+   */
+  public String getTable() {
+    return table;
+  }
+
+  /**
+   * Returns the column rows are keyed by.
+   *
+   * @return key column name
+   */
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /**
+   * Returns the maximum memory held by the mirrored rows.
+   *
+   * @return budget, in bytes
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Checks whether the table's rows are currently held in memory. Tables
+   * which weren't loaded yet, or which exceed the budget, aren't.
+   *
+   * @return TRUE if rows are mirrored, FALSE otherwise
+   */
+  public synchronized boolean isMirrored() {
+    return null != rows && !stale;
+  }
+
+  /**
+   * Returns the number of rows held in memory.
+   *
+   * @return number of mirrored rows
+   */
+  public synchronized int getRowCount() {
+    return null == rows ? 0 : rows.size();
+  }
+
+  /**
+   * Returns the estimated memory held by the mirrored rows.
+   *
+   * @return memory used, in bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of times the table was loaded.
+   *
+   * @return number of loads
+   */
+  public synchronized long getLoadCount() {
+    return loads;
+  }
+
+  /**
+   * Returns the number of point lookups served so far.
+   *
+   * @return number of lookups
+   */
+  public synchronized long getLookupCount() {
+    return lookups;
+  }
+
+  /**
+   * Returns the names of the table's columns, in the order used by the
+   * column indexes of the lookup methods.
+   *
+   * @return column names
+   */
+  public synchronized String[] getColumnNames() {
+    ensureLoaded();
+    return columns.clone();
+  }
+
+  /**
+   * Returns the index of the specified column, to pass on to the lookup
+   * methods. Indexes should be looked up once and kept around.
+   *
+   * @param column name of the column
+   * @return column index, or -1 if the table has no such column
+   */
+  public synchronized int getColumnIndex(String column) {
+    ensureLoaded();
+    for(int index = 0; index < columns.length; index++) {
+      if(columns[index].equalsIgnoreCase(column)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether a row with the specified key exists.
+   *
+   * @param key of the row
+   * @return TRUE if the row exists, FALSE otherwise
+   */
+  public synchronized boolean contains(long key) {
+    return null != lookup(key);
+  }
+
+  /**
+   * Returns a copy of the values of the row with the specified key.
+   *
+   * @param key of the row
+   * @return column values, or NULL if there's no such row
+   */
+  public synchronized Object[] getRow(long key) {
+    final Object[] row = lookup(key);
+    return null == row ? null : row.clone();
+  }
+
+  /**
+   * Returns the value of the specified column of the row with the specified
+   * key; values are Long, Double, String or byte[] instances, or NULL.
+   *
+   * @param key of the row
+   * @param column index of the column
+   * @return column value, or NULL if there's no such row
+   */
+  public synchronized Object get(long key, int column) {
+    final Object[] row = lookup(key);
+    return null == row ? null : row[column];
+  }
+
+  /**
+   * Returns the value of the specified column of the row with the specified
+   * key as a string.
+   *
+   * @param key of the row
+   * @param column index of the column
+   * @return column value, or NULL if there's no such row
+   */
+  public String getString(long key, int column) {
+    final Object value = get(key, column);
+    return null == value ? null : value.toString();
+  }
+
+  /**
+   * Returns the value of the specified column of the row with the specified
+   * key as a long.
+   *
+   * @param key of the row
+   * @param column index of the column
+   * @return column value, or 0 if NULL or there's no such row
+   */
+  public long getLong(long key, int column) {
+    final Object value = get(key, column);
+    if(value instanceof Number) {
+      return ((Number)value).longValue();
+    }
+    return null == value ? 0 : Long.parseLong(value.toString());
+  }
+
+  /**
+   * Returns the value of the specified column of the row with the specified
+   * key as a double.
+   *
+   * @param key of the row
+   * @param column index of the column
+   * @return column value, or 0 if NULL or there's no such row
+   */
+  public double getDouble(long key, int column) {
+    final Object value = get(key, column);
+    if(value instanceof Number) {
+      return ((Number)value).doubleValue();
+    }
+    return null == value ? 0 : Double.parseDouble(value.toString());
+  }
+
+  /**
+   * Returns the value of the specified column of the row with the specified
+   * key as a blob. The returned array is shared and must not be modified.
+   *
+   * @param key of the row
+   * @param column index of the column
+   * @return column value, or NULL if there's no such row
+   */
+  public byte[] getBlob(long key, int column) {
+    return (byte[])get(key, column);
+  }
+
+  /**
+   * Inserts a row into the table and the mirror. Write-through methods must
+   * not be called inside a transaction, which might be rolled back.
+   *
+   * @param values of the new row
+   * @return rowid of the new row
+   */
+  public long insert(ContentValues values) {
+    final SQLiteDatabase db = getWritableDatabase();
+    final long rowId = db.insertOrThrow(table, null, values);
+    refresh(SQLiteSchema.quote(ROWID) + " = ?", rowId, null);
+    return rowId;
+  }
+
+  /**
+   * Updates the row with the specified key in the table and the mirror.
+   *
+   * @param key of the row
+   * @param values to update
+   * @return number of rows updated
+   */
+  public int update(long key, ContentValues values) {
+    final SQLiteDatabase db = getWritableDatabase();
+    final int count = db.update(
+      table,
+      values,
+      SQLiteSchema.quote(keyColumn) + " = ?",
+      new String[] {String.valueOf(key)}
+    );
+    final Long newKey = values.containsKey(keyColumn)
+      ? values.getAsLong(keyColumn)
+      : null;
+    if(null != newKey && key != newKey) {
+      remove(key);
+      refresh(newKey);
+    } else {
+      refresh(key);
+    }
+    return count;
+  }
+
+  /**
+   * Deletes the row with the specified key from the table and the mirror.
+   *
+   * @param key of the row
+   * @return number of rows deleted
+   */
+  public int delete(long key) {
+    final SQLiteDatabase db = getWritableDatabase();
+    final int count = db.delete(
+      table,
+      SQLiteSchema.quote(keyColumn) + " = ?",
+      new String[] {String.valueOf(key)}
+    );
+    remove(key);
+    return count;
+  }
+
+  /**
+   * Reads the row with the specified key from the table into the mirror,
+   * after it was written by other means than this mirror or the write queue.
+   *
+   * @param key of the row
+   */
+  public void refresh(long key) {
+    refresh(SQLiteSchema.quote(keyColumn) + " = ?", key, key);
+  }
+
+  /**
+   * Reloads the whole table when it's next used, after it was written by
+   * other means than this mirror or the write queue.
+   */
+  public void invalidate() {
+    stale = true;
+  }
+
+  @Override
+  public String toString() {
+    return "SQLiteHotTable{table=" + table + ", key=" + keyColumn + "}";
+  }
+
+  /**
+   * Binds this mirror to the database at the specified normalized file path.
+   *
+   * @param filePath normalized file path of database file
+   */
+  synchronized void attach(String filePath) {
+    ensureDetached();
+    this.filePath = filePath;
+  }
+
+  /**
+   * Unbinds this mirror from its database and drops its rows.
+   */
+  synchronized void detach() {
+    unload();
+    filePath = null;
+  }
+
+  /**
+   * Drops the mirrored rows; they're loaded again when next used.
+   *
+   * @return estimated memory freed, in bytes
+   */
+  synchronized long unload() {
+    final long freed = bytes;
+    connection = null;
+    rows = null;
+    bytes = 0;
+    stale = true;
+    writers.clear();
+    return freed;
+  }
+
+  /**
+   * Loads the mirrored rows if they're not loaded or out of date.
+   */
+  synchronized void load() {
+    ensureLoaded();
+  }
+
+  /**
+   * Returns the time this mirror was last used, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * Marks the mirror for reloading if any of the specified statements, which
+   * have just been committed, wrote to the table.
+   *
+   * @param sqls of the committed statements
+   */
+  void invalidateWrites(Collection<String> sqls) {
+    final SQLiteConnection connection = this.connection;
+    if(null == connection || stale) {
+      return;
+    }
+    for(String sql : sqls) {
+      Boolean written = writers.get(sql);
+      if(null == written) {
+        written = isWrittenBy(connection, sql);
+        writers.put(sql, written);
+      }
+      if(written) {
+        stale = true;
+        return;
+      }
+    }
+  }
+
+  private Object[] lookup(long key) {
+    lastUsed = SystemClock.elapsedRealtime();
+    lookups++;
+    ensureLoaded();
+    if(null != rows) {
+      return rows.get(key);
+    }
+
+    // Too large to mirror, read the row from the database.
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT * FROM " + SQLiteSchema.quote(table) + " WHERE " +
+        SQLiteSchema.quote(keyColumn) + " = ?",
+      key
+    );
+    try {
+      return cursor.moveToNext() ? readRow(cursor, 0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void ensureLoaded() {
+    if(stale || null == connection) {
+      final SQLiteDatabase db =
+        SQLiteManager.getInstance().getOpenDatabase(getFilePath());
+      load(SQLiteAndroidBackend.wrap(db));
+    }
+  }
+
+  private void load(SQLiteConnection connection) {
+    final long startTime = System.nanoTime();
+
+    // Writes committed from now on mark the mirror as stale again; the
+    // connection is published before reading, so they're checked against it
+    // even while the rows are being read.
+    stale = false;
+    writers.clear();
+    rows = null;
+    bytes = 0;
+    this.connection = connection;
+
+    final LongHashMap<Object[]> loadedRows = new LongHashMap();
+    long loadedBytes = 0;
+    boolean overBudget = false;
+
+    try {
+      rootPage = getRootPage(connection);
+      final SQLiteBackendCursor cursor = connection.query(
+        "SELECT " + SQLiteSchema.quote(keyColumn) + ", * FROM " +
+          SQLiteSchema.quote(table)
+      );
+      try {
+        columns = new String[cursor.getColumnCount() - 1];
+        for(int index = 0; index < columns.length; index++) {
+          columns[index] = cursor.getColumnName(1 + index);
+        }
+        while(cursor.moveToNext()) {
+          // Rows without a key can't be looked up.
+          if(cursor.isNull(0)) {
+            continue;
+          }
+          final Object[] row = readRow(cursor, 1);
+          loadedBytes += sizeOf(row);
+          if(budget < loadedBytes) {
+            overBudget = true;
+            break;
+          }
+          loadedRows.put(cursor.getLong(0), row);
+        }
+      } finally {
+        cursor.close();
+      }
+    } catch(RuntimeException error) {
+      stale = true;
+      throw error;
+    }
+
+    loads++;
+
+    final long millis = (System.nanoTime() - startTime) / 1000000;
+    if(overBudget) {
+      Log.w(
+        LOG_TAG,
+        "Table " + table + " exceeds the budget of " + budget +
+          " bytes, serving lookups from the database: " + getFilePath()
+      );
+    } else {
+      rows = loadedRows;
+      bytes = loadedBytes;
+      Log.i(
+        LOG_TAG,
+        String.format(
+          Locale.US,
+          "Mirrored %d row(s) of %s in %d ms, %d bytes: %s",
+          loadedRows.size(),
+          table,
+          millis,
+          loadedBytes,
+          getFilePath()
+        )
+      );
+    }
+  }
+
+  private void refresh(String where, long value, Long key) {
+    final SQLiteBackendCursor cursor;
+    synchronized(this) {
+      if(null == rows || stale) {
+        // The whole table is read on next use anyway.
+        return;
+      }
+
+      cursor = connection.query(
+        "SELECT " + SQLiteSchema.quote(keyColumn) + ", * FROM " +
+          SQLiteSchema.quote(table) + " WHERE " + where,
+        value
+      );
+      try {
+        if(cursor.moveToNext() && !cursor.isNull(0)) {
+          final Object[] row = readRow(cursor, 1);
+          final Object[] previous = rows.put(cursor.getLong(0), row);
+          bytes += sizeOf(row) - (null == previous ? 0 : sizeOf(previous));
+        } else if(null != key) {
+          remove(key);
+        }
+      } finally {
+        cursor.close();
+      }
+
+      if(budget < bytes) {
+        Log.w(LOG_TAG, "Table " + table + " outgrew its budget of " + budget +
+          " bytes: " + getFilePath());
+        stale = true;
+      }
+    }
+  }
+
+  private synchronized void remove(long key) {
+    if(null != rows) {
+      final Object[] previous = rows.remove(key);
+      if(null != previous) {
+        bytes -= sizeOf(previous);
+      }
+    }
+  }
+
+  private SQLiteDatabase getWritableDatabase() {
+    final SQLiteDatabase db =
+      SQLiteManager.getInstance().getOpenDatabase(getFilePath());
+    if(db.inTransaction()) {
+      throw new IllegalStateException(
+        "Unable to write through mirror of " + table + " in a transaction.");
+    }
+    return db;
+  }
+
+  private String getFilePath() {
+    final String path = filePath;
+    if(null == path) {
+      throw new IllegalStateException(
+        "Mirror of " + table + " hasn't been registered.");
+    }
+    return path;
+  }
+
+  private void ensureDetached() {
+    if(null != filePath) {
+      throw new IllegalStateException(
+        "Mirror of " + table + " has already been registered.");
+    }
+  }
+
+  private long getRootPage(SQLiteConnection connection) {
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT rootpage FROM sqlite_master WHERE type = 'table' AND " +
+        "name = ? COLLATE NOCASE",
+      table
+    );
+    try {
+      if(!cursor.moveToNext()) {
+        throw connection.newException("No such table: " + table);
+      }
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Checks whether the specified statement writes to the table, by looking at
+   * the program SQLite compiles for it. Statements whose effects can't be
+   * told, such as ones firing triggers, are assumed to write to it.
+   */
+  private boolean isWrittenBy(SQLiteConnection connection, String sql) {
+    try {
+      final SQLiteBackendCursor cursor = connection.query("EXPLAIN " + sql);
+      try {
+        while(cursor.moveToNext()) {
+          final String opcode = cursor.getString(1);
+          if("OpenWrite".equals(opcode)) {
+            if(0 != cursor.getLong(4) || rootPage == cursor.getLong(3) ||
+              1 == cursor.getLong(3)
+            ) {
+              return true;
+            }
+          } else if("Clear".equals(opcode)) {
+            if(0 != cursor.getLong(3) || rootPage == cursor.getLong(2)) {
+              return true;
+            }
+          } else if("Destroy".equals(opcode) || "CreateBtree".equals(opcode) ||
+            "ParseSchema".equals(opcode) || "Program".equals(opcode) ||
+            "VUpdate".equals(opcode)
+          ) {
+            return true;
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    } catch(RuntimeException error) {
+      Log.w(LOG_TAG, "Unable to analyze write: " + sql, error);
+      return true;
+    }
+    return false;
+  }
+
+  private static Object[] readRow(SQLiteBackendCursor cursor, int offset) {
+    final Object[] row = new Object[cursor.getColumnCount() - offset];
+    for(int index = 0; index < row.length; index++) {
+      row[index] = cursor.getValue(offset + index);
+    }
+    return row;
+  }
+
+  private static long sizeOf(Object[] row) {
+    long size = SLOT_SIZE + OBJECT_OVERHEAD + REFERENCE_SIZE * row.length;
+    for(Object value : row) {
+      if(value instanceof String) {
+        size += OBJECT_OVERHEAD + 2 * ((String)value).length();
+      } else if(value instanceof byte[]) {
+        size += OBJECT_OVERHEAD + ((byte[])value).length;
+      } else if(null != value) {
+        size += OBJECT_OVERHEAD;
+      }
+    }
+    return size;
+  }
+}
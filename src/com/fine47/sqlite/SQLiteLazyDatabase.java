@@ -0,0 +1,153 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.aux.Util;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A handle to a {@link SQLiteDatabase} which is being opened and migrated in
+ * the background. Calling {@link #getDatabase()} blocks only if the database
+ * isn't ready yet, so the handle can be obtained early (for example in
+ * {@link SQLiteApplication#onCreate()}) and used much later. If the manager
+ * evicted the database in the meantime, it's opened again.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#openDatabaseAsync(String, int, SQLitePlanRunner.Preparer)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteLazyDatabase implements Future<SQLiteDatabase> {
+
+  private final SQLiteManager manager;
+  private final String filePath;
+  private final FutureTask<SQLiteDatabase> task;
+
+  SQLiteLazyDatabase(
+    SQLiteManager manager,
+    String filePath,
+    FutureTask<SQLiteDatabase> task
+  ) {
+    this.manager = manager;
+    this.filePath = filePath;
+    this.task = task;
+  }
+
+  /**
+   * Returns the normalized file path of the database.
+   *
+   * @return file path of database
+   */
+  public String getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Checks whether the database has been opened and migrated successfully, in
+   * which case {@link #getDatabase()} returns immediately.
+   *
+   * @return TRUE if database is ready, FALSE otherwise
+   */
+  public boolean isReady() {
+    if(!task.isDone() || task.isCancelled()) {
+      return false;
+    }
+    try {
+      task.get();
+      return true;
+    } catch(InterruptedException ignored) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch(ExecutionException ignored) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the database, waiting for it to be opened and migrated if
+   * necessary. Errors which occurred while opening or migrating the database
+   * are rethrown.
+   *
+   * @return database instance
+   * @throws IllegalStateException if the database was closed explicitly
+   */
+  public SQLiteDatabase getDatabase() {
+    return resolve(Util.getUninterruptibly(task));
+  }
+
+  /**
+   * Checks whether the database has been opened and migrated successfully,
+   * and hasn't been closed since.
+   *
+   * @return TRUE if database is open, FALSE otherwise
+   */
+  boolean isOpen() {
+    return isReady() && Util.getUninterruptibly(task).isOpen();
+  }
+
+  // The database may have been evicted, and perhaps opened again, since the
+  // migration finished.
+  private SQLiteDatabase resolve(SQLiteDatabase db) {
+    return db.isOpen() ? db : manager.getOpenDatabase(filePath);
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    // Interrupting a migration midway isn't supported.
+    return task.cancel(false);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return task.isCancelled();
+  }
+
+  @Override
+  public boolean isDone() {
+    return task.isDone();
+  }
+
+  @Override
+  public SQLiteDatabase get()
+    throws InterruptedException, ExecutionException
+  {
+    return resolve(task.get());
+  }
+
+  @Override
+  public SQLiteDatabase get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    return resolve(task.get(timeout, unit));
+  }
+}
@@ -0,0 +1,496 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import com.fine47.sqlite.aux.Util;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background maintenance of managed databases, so they don't fragment and
+ * their query plans don't drift over time, without ever running a full
+ * VACUUM. The following tasks are run, each at its own interval:
+ *
+ * <ol>
+ *   <li>{@link #TASK_OPTIMIZE}: PRAGMA optimize, which analyzes tables whose
+ *   statistics are out of date.</li>
+ *   <li>{@link #TASK_VACUUM}: incremental_vacuum in small steps, returning
+ *   free pages to the file system; only databases created with
+ *   {@link SQLiteOptions#AUTO_VACUUM_INCREMENTAL} support it.</li>
+ *   <li>{@link #TASK_ANALYZE}: ANALYZE, with the analysis limited to a number
+ *   of rows per index. It's skipped on SQLite older than 3.32, which can't
+ *   limit the analysis, unless the limit is 0.</li>
+ *   <li>{@link #TASK_INTEGRITY_CHECK}: PRAGMA quick_check.</li>
+ * </ol>
+ *
+ * Maintenance is enabled by calling
+ * {@link SQLiteManager#setMaintenance(SQLiteMaintenance)}, which looks for idle
+ * databases periodically: open databases which have no readers in use and no
+ * pending writes, and weren't used during the idle delay. Each run stops
+ * starting new tasks, or vacuum steps, once its time budget is used up; the
+ * remaining tasks are resumed by the next run.
+ *
+ * When each task last ran, and what it reported, is recorded in the
+ * {@link #MAINTENANCE_TABLE} table, which maintenance creates in every
+ * database it runs on, so intervals hold across process restarts; recent
+ * runs are also kept in memory and returned by {@link #getHistory()}.
+ * Settings must be defined before maintenance is enabled.
+ *
+ * @since 1.4
+ */
+public class SQLiteMaintenance {
+
+  private final static String LOG_TAG = "SQLiteMaintenance";
+
+  /**
+   * Name of the table recording when each task last ran.
+   */
+  public final static String MAINTENANCE_TABLE = "_sqlite_manager_maintenance";
+
+  /**
+   * Task running PRAGMA optimize.
+   */
+  public final static String TASK_OPTIMIZE = "optimize";
+
+  /**
+   * Task running incremental_vacuum in steps.
+   */
+  public final static String TASK_VACUUM = "incremental_vacuum";
+
+  /**
+   * Task running ANALYZE.
+   */
+  public final static String TASK_ANALYZE = "analyze";
+
+  /**
+   * Task running PRAGMA quick_check.
+   */
+  public final static String TASK_INTEGRITY_CHECK = "integrity_check";
+
+  /**
+   * Number of runs kept in the history.
+   */
+  public final static int HISTORY_SIZE = 32;
+
+  // Cheap tasks go first, so they're not starved by the expensive ones.
+  private final static String[] TASKS = {
+    TASK_OPTIMIZE,
+    TASK_VACUUM,
+    TASK_ANALYZE,
+    TASK_INTEGRITY_CHECK
+  };
+
+  // Maximum number of problems reported by an integrity check.
+  private final static int MAX_PROBLEMS = 10;
+
+  private final HashMap<String, Long> intervals = new HashMap();
+  private final ConcurrentHashMap<String, Long> nextRuns =
+    new ConcurrentHashMap();
+  private final LinkedList<SQLiteMaintenanceReport> history = new LinkedList();
+
+  private long checkInterval = TimeUnit.MINUTES.toMillis(5);
+  private long idleDelay = TimeUnit.SECONDS.toMillis(30);
+  private long timeBudget = 250;
+  private int vacuumStep = 128;
+  private int analysisLimit = 1000;
+
+  /**
+   * Constructs a new instance with the default settings: idle databases are
+   * looked for every 5 minutes, and maintained for 250 ms at most once they
+   * weren't used for 30 seconds. Databases are optimized and vacuumed daily,
+   * analyzed and checked weekly.
+   */
+  public SQLiteMaintenance() {
+    intervals.put(TASK_OPTIMIZE, TimeUnit.DAYS.toMillis(1));
+    intervals.put(TASK_VACUUM, TimeUnit.DAYS.toMillis(1));
+    intervals.put(TASK_ANALYZE, TimeUnit.DAYS.toMillis(7));
+    intervals.put(TASK_INTEGRITY_CHECK, TimeUnit.DAYS.toMillis(7));
+  }
+
+  /**
+   * Defines how often idle databases are looked for.
+   *
+   * @param interval between two looks
+   * @param unit of the interval
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setCheckInterval(long interval, TimeUnit unit) {
+    if(1 > interval) {
+      throw new IllegalArgumentException(
+        "Interval must be equal or greater than 1.");
+    }
+    checkInterval = unit.toMillis(interval);
+    return this;
+  }
+
+  /**
+   * Returns how often idle databases are looked for.
+   *
+   * @return interval, in milliseconds
+   */
+  public long getCheckInterval() {
+    return checkInterval;
+  }
+
+  /**
+   * Defines how long a database must not have been used to be maintained.
+   *
+   * @param delay idle time
+   * @param unit of the delay
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setIdleDelay(long delay, TimeUnit unit) {
+    if(0 > delay) {
+      throw new IllegalArgumentException(
+        "Delay must be equal or greater than 0.");
+    }
+    idleDelay = unit.toMillis(delay);
+    return this;
+  }
+
+  /**
+   * Returns how long a database must not have been used to be maintained.
+   *
+   * @return idle time, in milliseconds
+   */
+  public long getIdleDelay() {
+    return idleDelay;
+  }
+
+  /**
+   * Defines the time budget of a run on a single database. A task, or vacuum
+   * step, which started before the budget was used up is finished, so runs
+   * may take longer.
+   *
+   * @param budget time budget
+   * @param unit of the budget
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setTimeBudget(long budget, TimeUnit unit) {
+    if(1 > budget) {
+      throw new IllegalArgumentException(
+        "Budget must be equal or greater than 1.");
+    }
+    timeBudget = unit.toMillis(budget);
+    return this;
+  }
+
+  /**
+   * Returns the time budget of a run on a single database.
+   *
+   * @return time budget, in milliseconds
+   */
+  public long getTimeBudget() {
+    return timeBudget;
+  }
+
+  /**
+   * Defines how often the specified task runs on each database.
+   *
+   * @param task name of the task
+   * @param interval between two runs of the task, 0 to never run it
+   * @param unit of the interval
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setInterval(
+    String task,
+    long interval,
+    TimeUnit unit
+  ) {
+    if(!intervals.containsKey(task)) {
+      throw new IllegalArgumentException("Unknown task: " + task);
+    }
+    if(0 > interval) {
+      throw new IllegalArgumentException(
+        "Interval must be equal or greater than 0.");
+    }
+    intervals.put(task, unit.toMillis(interval));
+    return this;
+  }
+
+  /**
+   * Returns how often the specified task runs on each database.
+   *
+   * @param task name of the task
+   * @return interval, in milliseconds, or 0 if the task never runs
+   */
+  public long getInterval(String task) {
+    final Long interval = intervals.get(task);
+    if(null == interval) {
+      throw new IllegalArgumentException("Unknown task: " + task);
+    }
+    return interval;
+  }
+
+  /**
+   * Defines the number of pages returned to the file system by each step of
+   * incremental vacuuming.
+   *
+   * @param pages per step
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setVacuumStep(int pages) {
+    if(1 > pages) {
+      throw new IllegalArgumentException(
+        "Step must be equal or greater than 1.");
+    }
+    vacuumStep = pages;
+    return this;
+  }
+
+  /**
+   * Returns the number of pages returned to the file system by each step of
+   * incremental vacuuming.
+   *
+   * @return pages per step
+   */
+  public int getVacuumStep() {
+    return vacuumStep;
+  }
+
+  /**
+   * Defines the approximate number of rows ANALYZE looks at in each index,
+   * which keeps it fast on large tables.
+   *
+   * @param rows per index, 0 to analyze all rows
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteMaintenance setAnalysisLimit(int rows) {
+    if(0 > rows) {
+      throw new IllegalArgumentException(
+        "Limit must be equal or greater than 0.");
+    }
+    analysisLimit = rows;
+    return this;
+  }
+
+  /**
+   * Returns the approximate number of rows ANALYZE looks at in each index.
+   *
+   * @return rows per index, 0 if all rows are analyzed
+   */
+  public int getAnalysisLimit() {
+    return analysisLimit;
+  }
+
+  /**
+   * Returns the most recent runs which did anything, oldest first.
+   *
+   * @return reports of recent runs
+   */
+  public synchronized List<SQLiteMaintenanceReport> getHistory() {
+    return new ArrayList(history);
+  }
+
+  /**
+   * Runs the tasks which are due on the specified database right away, within
+   * the time budget. Tasks which aren't due are skipped.
+   *
+   * @param db to maintain
+   * @return report of the run
+   */
+  public SQLiteMaintenanceReport run(SQLiteDatabase db) {
+    final long startTime = System.nanoTime();
+    final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeBudget);
+    final long now = System.currentTimeMillis();
+
+    db.execSQL(
+      "CREATE TABLE IF NOT EXISTS " + MAINTENANCE_TABLE + " (" +
+        "task TEXT PRIMARY KEY, " +
+        "last_run INTEGER NOT NULL, " +
+        "result TEXT)"
+    );
+    final HashMap<String, Long> lastRuns = getLastRuns(db);
+
+    final LinkedHashMap<String, String> results = new LinkedHashMap();
+    long pagesFreed = 0;
+    boolean complete = true;
+    long nextRun = Long.MAX_VALUE;
+
+    for(String task : TASKS) {
+      final long interval = intervals.get(task);
+      if(0 == interval) {
+        continue;
+      }
+      final Long lastRun = lastRuns.get(task);
+      if(null != lastRun && now < lastRun + interval) {
+        nextRun = Math.min(nextRun, lastRun + interval);
+        continue;
+      }
+      if(deadline <= System.nanoTime()) {
+        complete = false;
+        continue;
+      }
+
+      String result;
+      boolean done = true;
+      if(TASK_OPTIMIZE.equals(task)) {
+        Util.pragma(db, "optimize");
+        result = "ok";
+      } else if(TASK_VACUUM.equals(task)) {
+        if(SQLiteOptions.AUTO_VACUUM_INCREMENTAL !=
+          Util.pragmaForLong(db, "auto_vacuum")
+        ) {
+          result = "not supported";
+        } else {
+          final long freePages = Util.pragmaForLong(db, "freelist_count");
+          long pagesLeft = freePages;
+          while(0 < pagesLeft && System.nanoTime() < deadline) {
+            Util.pragma(db, "incremental_vacuum(" + vacuumStep + ")");
+            final long pages = Util.pragmaForLong(db, "freelist_count");
+            if(pages >= pagesLeft) {
+              break;
+            }
+            pagesLeft = pages;
+          }
+          pagesFreed += freePages - pagesLeft;
+          done = 0 == pagesLeft;
+          result = (freePages - pagesLeft) + " page(s) freed" +
+            (done ? "" : ", " + pagesLeft + " left");
+        }
+      } else if(TASK_ANALYZE.equals(task)) {
+        // Older versions of SQLite ignore the limit, and would read every row
+        // of every index; PRAGMA optimize keeps their statistics fresh.
+        if(0 < analysisLimit && !supportsAnalysisLimit(db)) {
+          result = "not supported";
+        } else {
+          Util.pragma(db, "analysis_limit=" + analysisLimit);
+          db.execSQL("ANALYZE");
+          result = "ok";
+        }
+      } else {
+        result = checkIntegrity(db);
+      }
+
+      results.put(task, result);
+      if(done) {
+        db.execSQL(
+          "INSERT OR REPLACE INTO " + MAINTENANCE_TABLE +
+            " (task, last_run, result) VALUES (?, ?, ?)",
+          new Object[] {task, now, result}
+        );
+        nextRun = Math.min(nextRun, now + interval);
+      } else {
+        complete = false;
+      }
+    }
+
+    // Resume leftover tasks as soon as the database is idle again.
+    nextRuns.put(db.getPath(), complete ? nextRun : now);
+
+    final SQLiteMaintenanceReport report = new SQLiteMaintenanceReport(
+      Util.getFileName(db),
+      now,
+      results,
+      pagesFreed,
+      complete,
+      System.nanoTime() - startTime
+    );
+    if(!results.isEmpty()) {
+      synchronized(this) {
+        history.addLast(report);
+        if(HISTORY_SIZE < history.size()) {
+          history.removeFirst();
+        }
+      }
+      Log.i(LOG_TAG, "Maintained " + report);
+    }
+    return report;
+  }
+
+  /**
+   * Checks whether any task may be due on the database at the specified
+   * normalized file path.
+   *
+   * @param filePath normalized file path of database file
+   * @return TRUE if a task may be due, FALSE otherwise
+   */
+  boolean isDue(String filePath) {
+    final Long nextRun = nextRuns.get(filePath);
+    return null == nextRun || nextRun <= System.currentTimeMillis();
+  }
+
+  // PRAGMA analysis_limit was introduced in SQLite 3.32.0.
+  private static boolean supportsAnalysisLimit(SQLiteDatabase db) {
+    final String[] version = DatabaseUtils
+      .stringForQuery(db, "SELECT sqlite_version()", null)
+      .split("\\.");
+    final int major = Integer.parseInt(version[0]);
+    final int minor = 1 < version.length ? Integer.parseInt(version[1]) : 0;
+    return 3 < major || (3 == major && 32 <= minor);
+  }
+
+  private static HashMap<String, Long> getLastRuns(SQLiteDatabase db) {
+    final HashMap<String, Long> lastRuns = new HashMap();
+    final Cursor cursor = db.rawQuery(
+      "SELECT task, last_run FROM " + MAINTENANCE_TABLE,
+      null
+    );
+    try {
+      while(cursor.moveToNext()) {
+        lastRuns.put(cursor.getString(0), cursor.getLong(1));
+      }
+    } finally {
+      cursor.close();
+    }
+    return lastRuns;
+  }
+
+  private static String checkIntegrity(SQLiteDatabase db) {
+    final StringBuilder problems = new StringBuilder();
+    final Cursor cursor = db.rawQuery(
+      "PRAGMA quick_check(" + MAX_PROBLEMS + ")",
+      null
+    );
+    try {
+      while(cursor.moveToNext()) {
+        if(0 < problems.length()) {
+          problems.append("; ");
+        }
+        problems.append(cursor.getString(0));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    final String result = problems.toString();
+    if(!"ok".equals(result)) {
+      Log.e(LOG_TAG, "Integrity check failed: " + db.getPath() + ": " + result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Record of a single maintenance run of {@link SQLiteMaintenance} on a
+ * database: which tasks ran, what they reported, how many pages were returned
+ * to the file system and how long it took.
+ *
+ * @since 1.4
+ */
+public class SQLiteMaintenanceReport {
+
+  private final String fileName;
+  private final long time;
+  private final Map<String, String> results;
+  private final long pagesFreed;
+  private final boolean complete;
+  private final long wallNanos;
+
+  SQLiteMaintenanceReport(
+    String fileName,
+    long time,
+    Map<String, String> results,
+    long pagesFreed,
+    boolean complete,
+    long wallNanos
+  ) {
+    this.fileName = fileName;
+    this.time = time;
+    this.results = Collections.unmodifiableMap(results);
+    this.pagesFreed = pagesFreed;
+    this.complete = complete;
+    this.wallNanos = wallNanos;
+  }
+
+  /**
+   * Returns the file name of the maintained database.
+   *
+   * @return database file name
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Returns the time the run started.
+   *
+   * @return time, in milliseconds since the epoch
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the tasks which ran, in order, along with what they reported.
+   *
+   * @return results by task name
+   * @see SQLiteMaintenance#TASK_OPTIMIZE
+   * @see SQLiteMaintenance#TASK_VACUUM
+   * @see SQLiteMaintenance#TASK_ANALYZE
+   * @see SQLiteMaintenance#TASK_INTEGRITY_CHECK
+   */
+  public Map<String, String> getResults() {
+    return results;
+  }
+
+  /**
+   * Returns the number of pages returned to the file system by incremental
+   * vacuuming.
+   *
+   * @return number of pages
+   */
+  public long getPagesFreed() {
+    return pagesFreed;
+  }
+
+  /**
+   * Checks whether all due tasks were finished. Tasks left over when the time
+   * budget runs out are resumed by the next run.
+   *
+   * @return TRUE if all due tasks were finished, FALSE otherwise
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Returns the wall-clock time of the run.
+   *
+   * @return time, in nanoseconds
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  @Override
+  public String toString() {
+    return fileName + ": " + results + ", " + pagesFreed + " page(s) freed, " +
+      (wallNanos / 1000000) + " ms" + (complete ? "" : ", incomplete");
+  }
+}
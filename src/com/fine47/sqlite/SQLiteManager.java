@@ -28,14 +28,32 @@
 package com.fine47.sqlite;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteDatabaseCorruptException;
 import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
 import android.util.Log;
 import com.fine47.sqlite.aux.Util;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages all {@link SQLiteDatabase} instances and handles low-memory
@@ -46,6 +64,15 @@ import java.util.concurrent.ConcurrentHashMap;
  * To simplify, an integrated {@link SQLiteApplication} class can be used to
  * properly initialize this manager.
  *
+ * The manager is safe to use from multiple threads. Concurrent requests to open
+ * the same database file share a single in-flight open operation, and handles
+ * which are already open are returned without any locking.
+ *
+ * The number of open databases may be capped by
+ * {@link #setMaxOpenDatabases(int)}, and databases which weren't used for a
+ * while closed by {@link #setIdleTimeout(long, TimeUnit)}. Such databases are
+ * opened again, with the same {@link SQLiteOptions}, when next requested.
+ *
  * @see SQLiteApplication
  * @since 1.0
  */
@@ -59,9 +86,71 @@ public class SQLiteManager {
   private final static ConcurrentHashMap<String, SQLiteDatabase>
     databases = new ConcurrentHashMap();
 
-  private static SQLiteManager instance;
+  private final static ConcurrentHashMap<String, String>
+    filePaths = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, FutureTask<SQLiteDatabase>>
+    pendingDatabases = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLitePool>
+    pools = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteOptions>
+    databaseOptions = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteStatementCache>
+    statementCaches = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteWriteQueue>
+    writeQueues = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteQueryCache>
+    queryCaches = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String,
+    ConcurrentHashMap<String, SQLiteHotTable>> hotTables =
+      new ConcurrentHashMap();
+
+  private final static Set<SQLiteFederation> federations =
+    Collections.newSetFromMap(
+      new ConcurrentHashMap<SQLiteFederation, Boolean>());
+
+  private final static ConcurrentHashMap<String, SQLiteLazyDatabase>
+    lazyDatabases = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteShardSet>
+    shardSets = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLitePrebuilt>
+    prebuiltDatabases = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, Usage>
+    usages = new ConcurrentHashMap();
+
+  private final static ConcurrentHashMap<String, SQLiteOptions>
+    evictedDatabases = new ConcurrentHashMap();
+
+  // Marks evicted databases which were opened without options.
+  private final static SQLiteOptions NO_OPTIONS = new SQLiteOptions();
 
-  private Application app;
+  // Minimum time, in milliseconds, between two looks for idle databases.
+  private final static long MIN_REAP_INTERVAL = 1000;
+
+  private final AtomicLong opens = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong reopens = new AtomicLong();
+
+  private volatile int maxOpenDatabases;
+  private volatile long idleTimeout;
+
+  private ScheduledExecutorService reaper;
+  private ScheduledFuture<?> reaping;
+  private ScheduledFuture<?> maintaining;
+  private volatile SQLiteMaintenance maintenance;
+
+  private volatile ExecutorService executor;
+
+  private volatile Application app;
 
   private SQLiteManager() {
     // Singleton.
@@ -73,10 +162,7 @@ public class SQLiteManager {
    * @return singleton instance
    */
   public static SQLiteManager getInstance() {
-    if(null == instance) {
-      instance = new SQLiteManager();
-    }
-    return instance;
+    return InstanceHolder.instance;
   }
 
   /**
@@ -157,6 +243,26 @@ public class SQLiteManager {
     return openDatabase(file.getAbsolutePath(), targetVersion, cursor);
   }
 
+  /**
+   * Returns {@link SQLiteDatabase} instance for the specified file and use the
+   * specified {@link CursorFactory} as the cursor. The specified
+   * {@link SQLiteOptions} are applied when the database is first opened.
+   *
+   * @param file of database file
+   * @param targetVersion target version for brand new databases
+   * @param cursor to use with the database
+   * @param options to apply when opening the database
+   * @return database instance
+   */
+  public SQLiteDatabase openDatabase(
+    File file,
+    int targetVersion,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
+    return openDatabase(file.getAbsolutePath(), targetVersion, cursor, options);
+  }
+
   /**
    * Returns {@link SQLiteDatabase} instance for the specified file path.
    * No {@link CursorFactory} will be used.
@@ -212,82 +318,1650 @@ public class SQLiteManager {
    * @return {@link SQLiteDatabase} instance
    */
   public SQLiteDatabase openDatabase(String filePath, int targetVersion, CursorFactory cursor) {
+    return openDatabase(filePath, targetVersion, cursor, null);
+  }
+
+  /**
+   * Returns {@link SQLiteDatabase} instance for the specified file path and use
+   * the specified {@link CursorFactory} as the cursor. If the file path is
+   * actually a file name, an absolute file path will be generated using
+   * {@link Util#normalizeFilePath(android.content.Context, java.lang.String)}
+   * method.
+   *
+   * The specified {@link SQLiteOptions} are applied, before the database is
+   * made available to other threads, only when the database is first opened; a
+   * cached database is returned as-is. The effective options can be queried by
+   * calling {@link #getOptions(String)}.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version for brand new databases
+   * @param cursor to use with the database
+   * @param options to apply when opening the database, may be NULL
+   * @return {@link SQLiteDatabase} instance
+   */
+  public SQLiteDatabase openDatabase(
+    String filePath,
+    int targetVersion,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
     // Normalize the file path if application is known.
-    filePath = Util.normalizeFilePath(getApplication(), filePath);
+    filePath = normalizeFilePath(filePath);
 
-    // Try to find a cached instance.
+    // Try to find a cached instance; this is the fast path.
     SQLiteDatabase db = databases.get(filePath);
-
-    // If this is the first time for getting this database, or if the database
-    // was previously closed by the user.
     if(null == db || !db.isOpen()) {
-      // Auto-create parent directories.
-      File parentFile = new File(Util.getParentPath(filePath));
+      // If this is the first time for getting this database, or if the
+      // database was previously closed by the user or by the manager.
+      db = openDatabaseOnce(filePath, targetVersion, cursor, options);
+    }
+
+    touch(filePath);
+    return db;
+  }
+
+  /**
+   * Returns {@link SQLiteDatabase} instance for the specified file path, like
+   * {@link #openDatabase(String)}, and marks it as being in use so it's never
+   * evicted by {@link #setMaxOpenDatabases(int)},
+   * {@link #setIdleTimeout(long, TimeUnit)} or {@link #trimMemory(int)}. Use
+   * this instead of {@link #openDatabase(String)} for handles which are kept
+   * around, and call {@link #releaseDatabase(String)} once done with it.
+   *
+   * @param filePath file name/path of database file
+   * @return {@link SQLiteDatabase} instance
+   */
+  public SQLiteDatabase acquireDatabase(String filePath) {
+    return acquireDatabase(filePath, 1, null, null);
+  }
+
+  /**
+   * Returns {@link SQLiteDatabase} instance for the specified file path, like
+   * {@link #openDatabase(String, int, CursorFactory, SQLiteOptions)}, and
+   * marks it as being in use like {@link #acquireDatabase(String)}.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version for brand new databases
+   * @param cursor to use with the database
+   * @param options to apply when opening the database, may be NULL
+   * @return {@link SQLiteDatabase} instance
+   */
+  public SQLiteDatabase acquireDatabase(
+    String filePath,
+    int targetVersion,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    // Count the handle before opening, so an eviction which is about to close
+    // the database either sees it or happens before it's opened again. The
+    // usage is looked up under the lock, since an eviction drops it.
+    synchronized(evictedDatabases) {
+      getUsage(filePath).acquired++;
+    }
+
+    try {
+      return openDatabase(filePath, targetVersion, cursor, options);
+    } catch(RuntimeException error) {
+      releaseDatabase(filePath);
+      throw error;
+    }
+  }
+
+  /**
+   * Releases a handle previously acquired by calling
+   * {@link #acquireDatabase(String)}. The database stays open, but may be
+   * evicted once no other handles are acquired.
+   *
+   * @param filePath file name/path of database file
+   */
+  public void releaseDatabase(String filePath) {
+    final Usage usage = usages.get(normalizeFilePath(filePath));
+    if(null != usage) {
+      synchronized(evictedDatabases) {
+        if(0 < usage.acquired) {
+          usage.acquired--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens and migrates the database at the specified file path in the
+   * background, and returns immediately. No {@link CursorFactory} will be used.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version of the database
+   * @param preparer to define the migration plans, may be NULL
+   * @return {@link SQLiteLazyDatabase} instance
+   * @see #openDatabaseAsync(String, int, CursorFactory, SQLiteOptions, SQLitePlanRunner.Preparer)
+   */
+  public SQLiteLazyDatabase openDatabaseAsync(
+    String filePath,
+    int targetVersion,
+    SQLitePlanRunner.Preparer preparer
+  ) {
+    return openDatabaseAsync(filePath, targetVersion, null, null, preparer);
+  }
+
+  /**
+   * Opens and migrates the database at the specified file path in the
+   * background, and returns immediately. Once the database is opened, a
+   * {@link SQLitePlanRunner} is prepared by the specified
+   * {@link SQLitePlanRunner.Preparer} and executed if the database's version
+   * differs from the target version.
+   *
+   * Concurrent calls for the same file path share the same background work. A
+   * call made after a previous attempt has failed starts over.
+   *
+   * Note that {@link #openDatabase(String)} returns the database without
+   * waiting for the migration to finish; use
+   * {@link SQLiteLazyDatabase#getDatabase()} instead.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version of the database
+   * @param cursor to use with the database
+   * @param options to apply when opening the database, may be NULL
+   * @param preparer to define the migration plans, may be NULL
+   * @return {@link SQLiteLazyDatabase} instance
+   */
+  public SQLiteLazyDatabase openDatabaseAsync(
+    String filePath,
+    final int targetVersion,
+    final CursorFactory cursor,
+    final SQLiteOptions options,
+    final SQLitePlanRunner.Preparer preparer
+  ) {
+    // Normalize the file path if application is known.
+    final String normalizedPath = normalizeFilePath(filePath);
 
-      // If parent directory is actually a file, throw an error.
-      if(parentFile.isFile()) {
-        throw new IllegalStateException(
-          "Parent directory is actually a file: " + parentFile);
+    SQLiteLazyDatabase lazyDatabase = lazyDatabases.get(normalizedPath);
+    if(null != lazyDatabase && isUsable(lazyDatabase)) {
+      return lazyDatabase;
+    }
+
+    final FutureTask<SQLiteDatabase> task = new FutureTask<SQLiteDatabase>(
+      new Callable<SQLiteDatabase>() {
+        @Override
+        public SQLiteDatabase call() {
+          final SQLiteDatabase db = openDatabase(
+            normalizedPath,
+            targetVersion,
+            cursor,
+            options
+          );
+          if(targetVersion != db.getVersion()) {
+            final SQLitePlanRunner runner =
+              SQLitePlanRunner.For(db, targetVersion);
+            if(null != preparer) {
+              preparer.prepare(runner);
+            }
+            runner.run();
+          }
+          return db;
+        }
+      }
+    );
+
+    synchronized(lazyDatabases) {
+      lazyDatabase = lazyDatabases.get(normalizedPath);
+      if(null != lazyDatabase && isUsable(lazyDatabase)) {
+        return lazyDatabase;
+      }
+      lazyDatabase = new SQLiteLazyDatabase(this, normalizedPath, task);
+      lazyDatabases.put(normalizedPath, lazyDatabase);
+    }
+
+    getExecutor().execute(task);
+
+    return lazyDatabase;
+  }
+
+  private static boolean isUsable(SQLiteLazyDatabase lazyDatabase) {
+    return !lazyDatabase.isDone() || lazyDatabase.isOpen();
+  }
+
+  /**
+   * Returns the executor used by the manager for background work. Its threads
+   * run with background priority and don't keep the process alive.
+   *
+   * @return executor instance
+   */
+  ExecutorService getExecutor() {
+    ExecutorService executor = this.executor;
+    if(null == executor) {
+      synchronized(this) {
+        executor = this.executor;
+        if(null == executor) {
+          executor = Executors.newCachedThreadPool(
+            new BackgroundThreadFactory(LOG_TAG));
+          this.executor = executor;
+        }
       }
+    }
+    return executor;
+  }
+
+  /**
+   * Returns the normalized, absolute file path for the specified file name/path.
+   * Results are cached so subsequent calls for the same file name don't need
+   * to consult the {@link Application} again.
+   *
+   * @param filePath file name/path of database file
+   * @return normalized, absolute file path
+   */
+  String normalizeFilePath(String filePath) {
+    String normalizedPath = filePaths.get(filePath);
+    if(null == normalizedPath) {
+      normalizedPath = Util.normalizeFilePath(getApplication(), filePath);
+      filePaths.putIfAbsent(filePath, normalizedPath);
+    }
+    return normalizedPath;
+  }
+
+  /**
+   * Opens the database at the specified normalized file path, making sure that
+   * concurrent callers for the same file path share a single open operation.
+   *
+   * @param filePath normalized file path of database file
+   * @param targetVersion target version for brand new databases
+   * @param cursor to use with the database
+   * @param options to apply when opening the database, may be NULL
+   * @return {@link SQLiteDatabase} instance
+   */
+  private SQLiteDatabase openDatabaseOnce(
+    final String filePath,
+    final int targetVersion,
+    final CursorFactory cursor,
+    final SQLiteOptions options
+  ) {
+    final FutureTask<SQLiteDatabase> task = new FutureTask<SQLiteDatabase>(
+      new Callable<SQLiteDatabase>() {
+        @Override
+        public SQLiteDatabase call() {
+          // Another thread might have finished opening the database just before
+          // this task was registered.
+          SQLiteDatabase db = databases.get(filePath);
+          if(null == db || !db.isOpen()) {
+            // Databases evicted by the manager are reopened with the same
+            // options, unless others are specified.
+            final SQLiteOptions evictedOptions = evictedDatabases.get(filePath);
+            db = createDatabase(
+              filePath,
+              targetVersion,
+              cursor,
+              null == options && NO_OPTIONS != evictedOptions
+                ? evictedOptions
+                : options
+            );
+
+            // Store in internal dictionary.
+            databases.put(filePath, db);
+            opens.incrementAndGet();
+            if(null != evictedDatabases.remove(filePath)) {
+              reopens.incrementAndGet();
+            }
 
-      // Auto-create parent directories.
-      if(!parentFile.mkdirs() && !parentFile.isDirectory()) {
-        throw new IllegalStateException(
-          "Unable to create parent directories for database: " + filePath);
+            // Make room for the new database if there are too many.
+            touch(filePath);
+            evictLeastRecentlyUsed(filePath);
+
+            // Mirror hot tables of the database in the background.
+            reloadHotTables(filePath);
+          }
+          return db;
+        }
       }
+    );
+
+    FutureTask<SQLiteDatabase> pendingTask =
+      pendingDatabases.putIfAbsent(filePath, task);
 
+    // No other thread is opening this database, so do it in this thread.
+    if(null == pendingTask) {
       try {
-        // Try to open the database first.
-        db = SQLiteDatabase.openDatabase(
-          filePath,
+        task.run();
+      } finally {
+        pendingDatabases.remove(filePath, task);
+      }
+      pendingTask = task;
+    }
+
+    return Util.getUninterruptibly(pendingTask);
+  }
+
+  /**
+   * Opens, or creates if non-existent, the database at the specified normalized
+   * file path. Parent directories are created automatically.
+   *
+   * @param filePath normalized file path of database file
+   * @param targetVersion target version for brand new databases
+   * @param cursor to use with the database
+   * @param options to apply when opening the database, may be NULL
+   * @return {@link SQLiteDatabase} instance
+   */
+  private SQLiteDatabase createDatabase(
+    String filePath,
+    int targetVersion,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
+    // Auto-create parent directories.
+    File parentFile = new File(Util.getParentPath(filePath));
+
+    // If parent directory is actually a file, throw an error.
+    if(parentFile.isFile()) {
+      throw new IllegalStateException(
+        "Parent directory is actually a file: " + parentFile);
+    }
+
+    // Auto-create parent directories.
+    if(!parentFile.mkdirs() && !parentFile.isDirectory()) {
+      throw new IllegalStateException(
+        "Unable to create parent directories for database: " + filePath);
+    }
+
+    // Install the prebuilt image, if any, in place of a brand new database.
+    final SQLitePrebuilt prebuilt = prebuiltDatabases.get(filePath);
+    if(null != prebuilt && !new File(filePath).exists()) {
+      final long size = prebuilt.install(getApplication(), filePath);
+      Log.i(LOG_TAG, "Installed prebuilt database " + prebuilt + " (" + size +
+        " bytes): " + filePath);
+    }
+
+    SQLiteDatabase db;
+    boolean created = false;
+
+    try {
+      // Try to open the database first.
+      db = SQLiteDatabase.openDatabase(
+        filePath,
+        cursor,
+        SQLiteDatabase.OPEN_READWRITE
+      );
+
+      // Log the opening.
+      Log.i(LOG_TAG, "Opened database (v" + db.getVersion() + "): " + filePath);
+    } catch(SQLiteDatabaseCorruptException error) {
+      Log.e(LOG_TAG, "Corruption error detected in database: " + filePath);
+      throw error;
+    } catch(SQLiteException ignored) {
+      // The database is possibly non-existent, create it.
+      db = SQLiteDatabase.openOrCreateDatabase(filePath, cursor);
+      created = true;
+
+      // Log the creation.
+      Log.i(LOG_TAG, "Created database (v" + targetVersion + "): " + filePath);
+    }
+
+    try {
+      // Apply options before anything else is written to the database, and
+      // before it's made available to other threads.
+      if(null != options) {
+        final SQLiteOptions effectiveOptions = options.apply(db, created);
+        databaseOptions.put(filePath, effectiveOptions);
+        Log.i(LOG_TAG, "Applied " + effectiveOptions + ": " + filePath);
+      } else {
+        databaseOptions.remove(filePath);
+      }
+
+      // Database created; set initial version.
+      if(created) {
+        db.setVersion(targetVersion);
+      }
+    } catch(RuntimeException error) {
+      db.close();
+      throw error;
+    }
+
+    return db;
+  }
+
+  /**
+   * Defines the prebuilt image to install when the database at the specified
+   * file path is opened and its file doesn't exist yet. The installed database
+   * keeps the version stored in the image instead of the target version, so
+   * only plans after it are applied.
+   *
+   * @param filePath file name/path of database file
+   * @param prebuilt image to install, NULL to create empty databases again
+   */
+  public void setPrebuilt(String filePath, SQLitePrebuilt prebuilt) {
+    filePath = normalizeFilePath(filePath);
+    if(null == prebuilt) {
+      prebuiltDatabases.remove(filePath);
+    } else {
+      prebuiltDatabases.put(filePath, prebuilt);
+    }
+  }
+
+  /**
+   * Returns the effective {@link SQLiteOptions} of the database at the
+   * specified file path, as reported by the database right after it was
+   * opened.
+   *
+   * @param filePath file name/path of database file
+   * @return effective options, or NULL if the database hasn't been opened with
+   *   any options
+   */
+  public SQLiteOptions getOptions(String filePath) {
+    final SQLiteOptions effectiveOptions =
+      databaseOptions.get(normalizeFilePath(filePath));
+    return null == effectiveOptions
+      ? null
+      : new SQLiteOptions(effectiveOptions);
+  }
+
+  /**
+   * Returns a {@link SQLitePool} for the specified file path, with the
+   * specified number of read-only connections. The database is switched to
+   * write-ahead logging (WAL) mode and its writer connection is the same
+   * {@link SQLiteDatabase} instance returned by {@link #openDatabase(String)}.
+   * If a pool is already open for the file path, it's returned as-is.
+   *
+   * @param filePath file name/path of database file
+   * @param readers number of read-only connections
+   * @return {@link SQLitePool} instance
+   */
+  public SQLitePool openPool(String filePath, int readers) {
+    return openPool(filePath, 1, readers, null, null);
+  }
+
+  /**
+   * Returns a {@link SQLitePool} for the specified file path, with the
+   * specified number of read-only connections, and use the specified target
+   * version when creating a brand new database. If a pool is already open for
+   * the file path, it's returned as-is.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version for brand new databases
+   * @param readers number of read-only connections
+   * @param cursor to use with the connections
+   * @return {@link SQLitePool} instance
+   */
+  public SQLitePool openPool(
+    String filePath,
+    int targetVersion,
+    int readers,
+    CursorFactory cursor
+  ) {
+    return openPool(filePath, targetVersion, readers, cursor, null);
+  }
+
+  /**
+   * Returns a {@link SQLitePool} for the specified file path, with the
+   * specified number of read-only connections, and use the specified target
+   * version when creating a brand new database. The specified
+   * {@link SQLiteOptions} are applied to the writer when the database is first
+   * opened, and their connection-level settings to every reader; without
+   * options, readers get the settings the database was opened with. If a pool
+   * is already open for the file path, it's returned as-is.
+   *
+   * @param filePath file name/path of database file
+   * @param targetVersion target version for brand new databases
+   * @param readers number of read-only connections
+   * @param cursor to use with the connections
+   * @param options to apply when opening the database, may be NULL
+   * @return {@link SQLitePool} instance
+   */
+  public SQLitePool openPool(
+    String filePath,
+    int targetVersion,
+    int readers,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    // Try to find a cached instance; this is the fast path.
+    SQLitePool pool = pools.get(filePath);
+    if(null != pool && pool.isOpen()) {
+      return pool;
+    }
+
+    // Pools are rarely created, a lock is good enough here.
+    synchronized(pools) {
+      pool = pools.get(filePath);
+      if(null == pool || !pool.isOpen()) {
+        if(null != pool) {
+          pool.close();
+        }
+        final SQLiteDatabase writer =
+          openDatabase(filePath, targetVersion, cursor, options);
+
+        // Connection-level settings aren't persisted in the database file, so
+        // readers need them too; fall back to the ones the writer got.
+        pool = new SQLitePool(
+          writer,
+          readers,
           cursor,
-          SQLiteDatabase.OPEN_READWRITE
+          null == options ? databaseOptions.get(filePath) : options
         );
+        pools.put(filePath, pool);
+      } else if(readers != pool.getReaderCount()) {
+        Log.w(
+          LOG_TAG,
+          "Pool already open with " + pool.getReaderCount() +
+          " reader(s), ignoring request for " + readers + ": " + filePath
+        );
+      }
+    }
 
-        // Log the opening.
-        Log.i(LOG_TAG, "Opened database (v" + db.getVersion() + "): " + filePath);
-      } catch(SQLiteDatabaseCorruptException error) {
-        Log.e(LOG_TAG, "Corruption error detected in database: " + filePath);
-        throw error;
-      } catch(SQLiteException ignored) {
-        // The database is possibly non-existent, create it.
-        db = SQLiteDatabase.openOrCreateDatabase(filePath, cursor);
+    return pool;
+  }
 
-        // Database created; set initial version.
-        db.setVersion(targetVersion);
+  /**
+   * Returns the {@link SQLiteStatementCache} of the database at the specified
+   * file path, creating it with {@link SQLiteStatementCache#DEFAULT_CAPACITY}
+   * if necessary.
+   *
+   * @param filePath file name/path of an open database
+   * @return {@link SQLiteStatementCache} instance
+   */
+  public SQLiteStatementCache getStatementCache(String filePath) {
+    return getStatementCache(filePath, SQLiteStatementCache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Returns the {@link SQLiteStatementCache} of the database at the specified
+   * file path, creating it with the specified capacity if necessary. The
+   * database must have been opened already; the cache is bound to the current
+   * {@link SQLiteDatabase} instance and closed along with it.
+   *
+   * @param filePath file name/path of an open database
+   * @param capacity maximum number of cached statements for new caches
+   * @return {@link SQLiteStatementCache} instance
+   */
+  public SQLiteStatementCache getStatementCache(String filePath, int capacity) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    // Try to find a cached instance; this is the fast path.
+    SQLiteStatementCache cache = statementCaches.get(filePath);
+    if(null != cache && cache.isOpen()) {
+      return cache;
+    }
 
-        // Log the creation.
-        Log.i(LOG_TAG, "Created database (v1): " + filePath);
+    final SQLiteDatabase db = getOpenDatabase(filePath);
+
+    synchronized(statementCaches) {
+      cache = statementCaches.get(filePath);
+      if(null == cache || !cache.isOpen() || db != cache.getDatabase()) {
+        // The database was closed and reopened since the cache was created.
+        if(null != cache) {
+          cache.close();
+        }
+        cache = new SQLiteStatementCache(db, capacity);
+        statementCaches.put(filePath, cache);
       }
+    }
+
+    return cache;
+  }
+
+  /**
+   * Returns the {@link SQLiteQueryCache} of the database at the specified file
+   * path, creating it with {@link SQLiteQueryCache#DEFAULT_BUDGET} if
+   * necessary.
+   *
+   * @param filePath file name/path of an open database
+   * @return {@link SQLiteQueryCache} instance
+   */
+  public SQLiteQueryCache getQueryCache(String filePath) {
+    return getQueryCache(filePath, SQLiteQueryCache.DEFAULT_BUDGET);
+  }
+
+  /**
+   * Returns the {@link SQLiteQueryCache} of the database at the specified file
+   * path, creating it with the specified memory budget if necessary. The
+   * database must have been opened already; the cache is bound to the current
+   * {@link SQLiteDatabase} instance and closed along with it. Writes applied
+   * by the database's {@link SQLiteWriteQueue} invalidate the results read
+   * from the tables they write to.
+   *
+   * @param filePath file name/path of an open database
+   * @param budget maximum memory held by results of new caches, in bytes
+   * @return {@link SQLiteQueryCache} instance
+   */
+  public SQLiteQueryCache getQueryCache(String filePath, long budget) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
 
-      // Store in internal dictionary.
-      databases.put(filePath, db);
+    // Try to find a cached instance; this is the fast path.
+    SQLiteQueryCache cache = queryCaches.get(filePath);
+    if(null != cache && cache.isOpen()) {
+      return cache;
     }
 
-    return db;
+    final SQLiteDatabase db = getOpenDatabase(filePath);
+
+    synchronized(queryCaches) {
+      cache = queryCaches.get(filePath);
+      if(null == cache || !cache.isOpen() || db != cache.getDatabase()) {
+        // The database was closed and reopened since the cache was created.
+        if(null != cache) {
+          cache.close();
+        }
+        cache = new SQLiteQueryCache(db, budget);
+        queryCaches.put(filePath, cache);
+      }
+    }
+
+    return cache;
   }
 
   /**
-   * Checks whether the specified {@link SQLiteDatabase} has a version which
-   * is older than the specified version, and thus is eligible for upgrade.
+   * Returns the {@link SQLiteQueryCache} of the database at the specified
+   * normalized file path, without creating it.
    *
-   * @param db to check
-   * @param targetVersion new version of database to check against
-   * @return TRUE if database needs upgrade, FALSE otherwise
+   * @param filePath normalized file path of database file
+   * @return {@link SQLiteQueryCache} instance, or NULL if none is open
    */
-  public boolean needsUpgrade(SQLiteDatabase db, int targetVersion) {
-    return targetVersion > db.getVersion();
+  static SQLiteQueryCache findQueryCache(String filePath) {
+    final SQLiteQueryCache cache = queryCaches.get(filePath);
+    return null != cache && cache.isOpen() ? cache : null;
   }
 
   /**
-   * Checks whether the specified {@link SQLiteDatabase} has a version which
-   * is newer than the specified version, and thus is eligible for downgrade.
+   * Returns the {@link SQLiteChangeLog} of the database at the specified file
+   * path, which reads the changes captured by a
+   * {@link SQLiteChangeCapturePlan}. The database must have been opened
+   * already.
    *
-   * @param db to check
-   * @param targetVersion old version of database to check against
-   * @return TRUE if database needs downgrade, FALSE otherwise
+   * @param filePath file name/path of an open database
+   * @return {@link SQLiteChangeLog} instance
    */
-  public boolean needsDowngrade(SQLiteDatabase db, int targetVersion) {
-    return targetVersion < db.getVersion();
+  public SQLiteChangeLog getChangeLog(String filePath) {
+    return new SQLiteChangeLog(
+      SQLiteAndroidBackend.wrap(getOpenDatabase(normalizeFilePath(filePath))));
+  }
+
+  /**
+   * Registers an in-memory mirror of a table of the database at the specified
+   * file path, replacing the table's previous mirror, if any. The mirror is
+   * loaded in the background right away if the database is open, and every
+   * time it's opened again.
+   *
+   * @param filePath file name/path of database file
+   * @param hotTable mirror of the table
+   */
+  public void mirrorTable(String filePath, SQLiteHotTable hotTable) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+    hotTable.attach(filePath);
+
+    ConcurrentHashMap<String, SQLiteHotTable> tables = hotTables.get(filePath);
+    if(null == tables) {
+      tables = new ConcurrentHashMap();
+      final ConcurrentHashMap<String, SQLiteHotTable> existingTables =
+        hotTables.putIfAbsent(filePath, tables);
+      if(null != existingTables) {
+        tables = existingTables;
+      }
+    }
+
+    final SQLiteHotTable previous =
+      tables.put(hotTable.getTable().toLowerCase(Locale.US), hotTable);
+    if(null != previous) {
+      previous.detach();
+    }
+
+    final SQLiteDatabase db = databases.get(filePath);
+    if(null != db && db.isOpen()) {
+      preload(hotTable);
+    }
+  }
+
+  /**
+   * Returns the in-memory mirror of a table of the database at the specified
+   * file path.
+   *
+   * @param filePath file name/path of database file
+   * @param table name of the mirrored table
+   * @return {@link SQLiteHotTable} instance, or NULL if the table isn't
+   *   mirrored
+   * @see #mirrorTable(String, SQLiteHotTable)
+   */
+  public SQLiteHotTable getHotTable(String filePath, String table) {
+    final ConcurrentHashMap<String, SQLiteHotTable> tables =
+      hotTables.get(normalizeFilePath(filePath));
+    return null == tables ? null : tables.get(table.toLowerCase(Locale.US));
+  }
+
+  /**
+   * Removes the in-memory mirror of a table of the database at the specified
+   * file path, dropping its rows.
+   *
+   * @param filePath file name/path of database file
+   * @param table name of the mirrored table
+   */
+  public void unmirrorTable(String filePath, String table) {
+    final ConcurrentHashMap<String, SQLiteHotTable> tables =
+      hotTables.get(normalizeFilePath(filePath));
+    if(null != tables) {
+      final SQLiteHotTable hotTable =
+        tables.remove(table.toLowerCase(Locale.US));
+      if(null != hotTable) {
+        hotTable.detach();
+      }
+    }
+  }
+
+  /**
+   * Returns the in-memory mirrors of tables of the database at the specified
+   * normalized file path.
+   *
+   * @param filePath normalized file path of database file
+   * @return {@link SQLiteHotTable} instances, may be empty
+   */
+  static Collection<SQLiteHotTable> findHotTables(String filePath) {
+    final ConcurrentHashMap<String, SQLiteHotTable> tables =
+      hotTables.get(filePath);
+    return null == tables
+      ? Collections.<SQLiteHotTable>emptyList()
+      : tables.values();
+  }
+
+  /**
+   * Reloads, in the background, the in-memory mirrors of tables of the
+   * database at the specified normalized file path; called when it's opened,
+   * migrated or its tables are rebuilt.
+   *
+   * @param filePath normalized file path of database file
+   */
+  static void reloadHotTables(String filePath) {
+    for(SQLiteHotTable hotTable : findHotTables(filePath)) {
+      hotTable.invalidate();
+      getInstance().preload(hotTable);
+    }
+  }
+
+  /**
+   * Discards the cached query results of the database at the specified
+   * normalized file path, along with what its {@link SQLiteQueryCache} knows
+   * of the schema; called when it's migrated or its tables are rebuilt.
+   *
+   * @param filePath normalized file path of database file
+   */
+  static void invalidateQueryCache(String filePath) {
+    final SQLiteQueryCache queryCache = queryCaches.get(filePath);
+    if(null != queryCache) {
+      queryCache.invalidateSchema();
+    }
+  }
+
+  private void preload(final SQLiteHotTable hotTable) {
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          hotTable.load();
+        } catch(RuntimeException error) {
+          Log.w(LOG_TAG, "Unable to mirror " + hotTable, error);
+        }
+      }
+    });
+  }
+
+  /**
+   * Opens a new {@link SQLiteFederation}, a view which attaches several
+   * managed databases to a single connection so queries can join their
+   * tables. Attachments are kept in step with the databases closed and
+   * reopened by this manager.
+   *
+   * @return {@link SQLiteFederation} instance
+   */
+  public SQLiteFederation openFederation() {
+    final SQLiteFederation federation =
+      new SQLiteFederation(this, SQLiteDatabase.create(null));
+    federations.add(federation);
+    return federation;
+  }
+
+  /**
+   * Forgets the specified {@link SQLiteFederation}, which has been closed.
+   *
+   * @param federation which has been closed
+   */
+  static void removeFederation(SQLiteFederation federation) {
+    federations.remove(federation);
+  }
+
+  /**
+   * Returns the {@link SQLiteWriteQueue} of the database at the specified file
+   * path, creating it with the default batch size and flush interval if
+   * necessary.
+   *
+   * @param filePath file name/path of an open database
+   * @return {@link SQLiteWriteQueue} instance
+   */
+  public SQLiteWriteQueue getWriteQueue(String filePath) {
+    return getWriteQueue(
+      filePath,
+      SQLiteWriteQueue.DEFAULT_MAX_BATCH_SIZE,
+      SQLiteWriteQueue.DEFAULT_FLUSH_INTERVAL
+    );
+  }
+
+  /**
+   * Returns the {@link SQLiteWriteQueue} of the database at the specified file
+   * path, creating it with the specified batch size and flush interval if
+   * necessary. The database must have been opened already; the queue is bound
+   * to the current {@link SQLiteDatabase} instance and closed along with it.
+   *
+   * @param filePath file name/path of an open database
+   * @param maxBatchSize maximum number of writes in a single batch
+   * @param flushInterval time, in milliseconds, a batch waits for more writes
+   * @return {@link SQLiteWriteQueue} instance
+   */
+  public SQLiteWriteQueue getWriteQueue(
+    String filePath,
+    int maxBatchSize,
+    long flushInterval
+  ) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    // Try to find a cached instance; this is the fast path.
+    SQLiteWriteQueue queue = writeQueues.get(filePath);
+    if(null != queue && queue.isOpen()) {
+      return queue;
+    }
+
+    final SQLiteDatabase db = getOpenDatabase(filePath);
+
+    synchronized(writeQueues) {
+      queue = writeQueues.get(filePath);
+      if(null == queue || !queue.isOpen() || db != queue.getDatabase()) {
+        // The database was closed and reopened since the queue was created.
+        if(null != queue) {
+          queue.close();
+        }
+        queue = new SQLiteWriteQueue(db, maxBatchSize, flushInterval);
+        writeQueues.put(filePath, queue);
+      }
+    }
+
+    return queue;
+  }
+
+  /**
+   * Returns the {@link SQLiteShardSet} of the logical database at the
+   * specified file path, made up of the specified number of shards. Brand new
+   * shards are created with version 1.
+   *
+   * @param filePath file name/path of the logical database
+   * @param shards number of shards
+   * @return {@link SQLiteShardSet} instance
+   * @throws IllegalStateException if the set is open, or was created, with
+   *   another number of shards
+   */
+  public SQLiteShardSet openShardSet(String filePath, int shards) {
+    return openShardSet(filePath, shards, 1, null);
+  }
+
+  /**
+   * Returns the {@link SQLiteShardSet} of the logical database at the
+   * specified file path, made up of the specified number of shards, opening
+   * all of them. If the set is already open, it's returned as-is.
+   *
+   * @param filePath file name/path of the logical database
+   * @param shards number of shards
+   * @param targetVersion target version for brand new shards
+   * @param options to apply when opening each shard, may be NULL
+   * @return {@link SQLiteShardSet} instance
+   * @throws IllegalStateException if the set is open, or was created, with
+   *   another number of shards
+   */
+  public SQLiteShardSet openShardSet(
+    String filePath,
+    int shards,
+    int targetVersion,
+    SQLiteOptions options
+  ) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    // Try to find a cached instance; this is the fast path.
+    SQLiteShardSet shardSet = shardSets.get(filePath);
+    if(null == shardSet) {
+      // Shard sets are rarely created, a lock is good enough here.
+      synchronized(shardSets) {
+        shardSet = shardSets.get(filePath);
+        if(null == shardSet) {
+          shardSet = new SQLiteShardSet(
+            this,
+            filePath,
+            shards,
+            targetVersion,
+            options
+          );
+          try {
+            for(int index = 0; index < shards; index++) {
+              shardSet.getShard(index);
+            }
+            shardSet.verifyShardCount();
+          } catch(RuntimeException error) {
+            shardSet.close();
+            throw error;
+          }
+          shardSets.put(filePath, shardSet);
+        }
+      }
+    }
+
+    if(shards != shardSet.getShardCount()) {
+      throw new IllegalStateException(
+        "Shard set already open with " + shardSet.getShardCount() +
+        " shard(s), unable to open it with " + shards + ": " + filePath);
+    }
+
+    return shardSet;
+  }
+
+  /**
+   * Closes all shards of the logical database at the specified file path, as
+   * if by {@link #closeDatabase(String)}.
+   *
+   * @param filePath file name/path of the logical database
+   */
+  public void closeShardSet(String filePath) {
+    final SQLiteShardSet shardSet =
+      shardSets.remove(normalizeFilePath(filePath));
+    if(null != shardSet) {
+      shardSet.close();
+    }
+  }
+
+  /**
+   * Returns a new {@link SQLiteMigrator} which migrates many databases to the
+   * specified version concurrently, using the plans of the specified registry.
+   *
+   * @param registry of plans shared by all databases
+   * @param targetVersion target version of the databases
+   * @return {@link SQLiteMigrator} instance
+   */
+  public SQLiteMigrator newMigrator(
+    SQLitePlanRegistry registry,
+    int targetVersion
+  ) {
+    return new SQLiteMigrator(this, registry, targetVersion);
+  }
+
+  /**
+   * Closes the database at the specified file path, along with any
+   * {@link SQLitePool}, {@link SQLiteStatementCache}, {@link SQLiteQueryCache}
+   * and {@link SQLiteWriteQueue} opened for it, and detaches it from any
+   * {@link SQLiteFederation}. Pending writes are applied before the database
+   * is closed, and rows of its {@link SQLiteHotTable} mirrors are dropped,
+   * though the mirrors stay registered. A subsequent call to
+   * {@link #openDatabase(String)} will open the database again.
+   *
+   * @param filePath file name/path of database file
+   */
+  public void closeDatabase(String filePath) {
+    // Normalize the file path if application is known.
+    filePath = normalizeFilePath(filePath);
+
+    evictedDatabases.remove(filePath);
+    usages.remove(filePath);
+
+    final SQLiteWriteQueue queue = writeQueues.remove(filePath);
+    if(null != queue) {
+      queue.close();
+    }
+
+    lazyDatabases.remove(filePath);
+
+    final SQLitePool pool = pools.remove(filePath);
+    if(null != pool) {
+      pool.close();
+    }
+
+    final SQLiteStatementCache cache = statementCaches.remove(filePath);
+    if(null != cache) {
+      cache.close();
+    }
+
+    final SQLiteQueryCache queryCache = queryCaches.remove(filePath);
+    if(null != queryCache) {
+      queryCache.close();
+    }
+
+    for(SQLiteHotTable hotTable : findHotTables(filePath)) {
+      hotTable.unload();
+    }
+
+    for(SQLiteFederation federation : federations) {
+      federation.release(filePath);
+    }
+
+    databaseOptions.remove(filePath);
+
+    final SQLiteDatabase db = databases.remove(filePath);
+    if(null != db && db.isOpen()) {
+      db.close();
+      Log.i(LOG_TAG, "Closed database: " + filePath);
+    }
+  }
+
+  /**
+   * Returns the maximum number of databases kept open by this manager.
+   *
+   * @return maximum number of open databases, 0 if unlimited
+   * @see #setMaxOpenDatabases(int)
+   */
+  public int getMaxOpenDatabases() {
+    return maxOpenDatabases;
+  }
+
+  /**
+   * Caps the number of databases kept open by this manager. When opening a
+   * database exceeds the cap, the least recently used databases which have no
+   * readers in use, no pending writes and no background work are evicted:
+   * they're closed, along with their pools, statement caches and write
+   * queues, and opened again with the same {@link SQLiteOptions} when next
+   * requested. Databases which are in use are never evicted, so the cap may
+   * be exceeded temporarily.
+   *
+   * Only handles acquired by {@link #acquireDatabase(String)}, and the pools,
+   * write queues and lazy databases of this manager count as being in use; a
+   * lazy database only until it's migrated, after which
+   * {@link SQLiteLazyDatabase#getDatabase()} opens it again if it was evicted.
+   * Plain {@link SQLiteDatabase} handles returned by
+   * {@link #openDatabase(String)} may be closed by an eviction at any time,
+   * so they must not be kept around; get them from this manager each time.
+   *
+   * @param maxOpenDatabases maximum number of open databases, 0 for unlimited
+   */
+  public void setMaxOpenDatabases(int maxOpenDatabases) {
+    if(0 > maxOpenDatabases) {
+      throw new IllegalArgumentException(
+        "Maximum must be equal or greater than 0.");
+    }
+    this.maxOpenDatabases = maxOpenDatabases;
+    evictLeastRecentlyUsed(null);
+  }
+
+  /**
+   * Returns the time after which unused databases are evicted.
+   *
+   * @return idle timeout in milliseconds, 0 if databases are never evicted
+   * @see #setIdleTimeout(long, TimeUnit)
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Evicts databases which weren't used during the specified time, checking
+   * periodically in the background. A database is used when it, or its pool,
+   * statement cache or write queue, is obtained from this manager or used.
+   * Evicted databases are opened again with the same {@link SQLiteOptions}
+   * when next requested. As with {@link #setMaxOpenDatabases(int)}, handles
+   * returned by {@link #openDatabase(String)} must not be kept around, while
+   * those acquired by {@link #acquireDatabase(String)} are never evicted.
+   *
+   * @param timeout idle time after which a database is evicted, 0 to never
+   *   evict idle databases
+   * @param unit of the timeout
+   * @see #setMaxOpenDatabases(int)
+   */
+  public synchronized void setIdleTimeout(long timeout, TimeUnit unit) {
+    if(0 > timeout) {
+      throw new IllegalArgumentException(
+        "Timeout must be equal or greater than 0.");
+    }
+    idleTimeout = unit.toMillis(timeout);
+
+    if(null != reaping) {
+      reaping.cancel(false);
+      reaping = null;
+    }
+
+    if(0 < idleTimeout) {
+      final long interval = Math.max(MIN_REAP_INTERVAL, idleTimeout / 2);
+      reaping = getReaper().scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              evictIdle();
+            } catch(RuntimeException error) {
+              // Keep looking for idle databases on the next run.
+              Log.e(LOG_TAG, "Unable to evict idle databases", error);
+            }
+          }
+        },
+        interval,
+        interval,
+        TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  /**
+   * Returns the background maintenance of idle databases.
+   *
+   * @return maintenance settings, or NULL if maintenance is disabled
+   * @see #setMaintenance(SQLiteMaintenance)
+   */
+  public SQLiteMaintenance getMaintenance() {
+    return maintenance;
+  }
+
+  /**
+   * Maintains databases in the background with the specified settings: open
+   * databases which have no readers in use, no pending writes and weren't used
+   * during the idle delay are optimized, vacuumed, analyzed and checked at the
+   * intervals of the maintenance.
+   *
+   * Maintenance runs on the same background thread as eviction of idle
+   * databases, so databases aren't evicted in the middle of a run.
+   *
+   * @param maintenance settings, or NULL to disable maintenance
+   */
+  public synchronized void setMaintenance(SQLiteMaintenance maintenance) {
+    this.maintenance = maintenance;
+
+    if(null != maintaining) {
+      maintaining.cancel(false);
+      maintaining = null;
+    }
+
+    if(null != maintenance) {
+      final long interval = maintenance.getCheckInterval();
+      maintaining = getReaper().scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              maintainIdle();
+            } catch(RuntimeException error) {
+              // Keep looking for idle databases on the next run.
+              Log.e(LOG_TAG, "Unable to maintain idle databases", error);
+            }
+          }
+        },
+        interval,
+        interval,
+        TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  private ScheduledExecutorService getReaper() {
+    if(null == reaper) {
+      reaper = Executors.newSingleThreadScheduledExecutor(
+        new BackgroundThreadFactory(LOG_TAG + "-Reaper"));
+    }
+    return reaper;
+  }
+
+  /**
+   * Returns the number of times a database was opened by this manager,
+   * including reopens.
+   *
+   * @return number of opens
+   */
+  public long getOpenCount() {
+    return opens.get();
+  }
+
+  /**
+   * Returns the number of times a database was evicted by this manager, for
+   * being idle, least recently used or due to memory pressure.
+   *
+   * @return number of evictions
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Returns the number of times an evicted database was opened again.
+   *
+   * @return number of reopens
+   */
+  public long getReopenCount() {
+    return reopens.get();
+  }
+
+  /**
+   * Records an access to the database at the specified normalized file path,
+   * if evictions are enabled.
+   *
+   * @param filePath normalized file path of database file
+   */
+  private void touch(String filePath) {
+    if(0 < maxOpenDatabases || 0 < idleTimeout || null != maintenance) {
+      getUsage(filePath).lastAccess = SystemClock.elapsedRealtime();
+    }
+  }
+
+  /**
+   * Returns the usage of the database at the specified normalized file path,
+   * creating it if necessary.
+   *
+   * @param filePath normalized file path of database file
+   * @return {@link Usage} instance
+   */
+  private static Usage getUsage(String filePath) {
+    // Try to find an existing instance; this is the fast path.
+    Usage usage = usages.get(filePath);
+    if(null == usage) {
+      synchronized(usages) {
+        usage = usages.get(filePath);
+        if(null == usage) {
+          usage = new Usage();
+          usages.put(filePath, usage);
+        }
+      }
+    }
+    return usage;
+  }
+
+  /**
+   * Returns the time the database at the specified normalized file path, or
+   * any of its components, was last used.
+   *
+   * @param filePath normalized file path of database file
+   * @return time of last use, in milliseconds since boot
+   */
+  private static long getLastAccess(String filePath) {
+    final Usage usage = usages.get(filePath);
+    long lastUsed = null == usage ? 0 : usage.lastAccess;
+
+    final SQLitePool pool = pools.get(filePath);
+    if(null != pool) {
+      lastUsed = Math.max(lastUsed, pool.getLastUsed());
+    }
+    final SQLiteStatementCache cache = statementCaches.get(filePath);
+    if(null != cache) {
+      lastUsed = Math.max(lastUsed, cache.getLastUsed());
+    }
+    final SQLiteQueryCache queryCache = queryCaches.get(filePath);
+    if(null != queryCache) {
+      lastUsed = Math.max(lastUsed, queryCache.getLastUsed());
+    }
+    final SQLiteWriteQueue queue = writeQueues.get(filePath);
+    if(null != queue) {
+      lastUsed = Math.max(lastUsed, queue.getLastUsed());
+    }
+    for(SQLiteHotTable hotTable : findHotTables(filePath)) {
+      lastUsed = Math.max(lastUsed, hotTable.getLastUsed());
+    }
+    for(SQLiteFederation federation : federations) {
+      if(federation.contains(filePath)) {
+        lastUsed = Math.max(lastUsed, federation.getLastUsed());
+      }
+    }
+    return lastUsed;
+  }
+
+  /**
+   * Evicts the least recently used databases until no more than the maximum
+   * number of databases are open.
+   *
+   * @param excludedPath normalized file path of a database which must not be
+   *   evicted, may be NULL
+   */
+  private void evictLeastRecentlyUsed(String excludedPath) {
+    final int max = maxOpenDatabases;
+    if(0 == max) {
+      return;
+    }
+
+    while(max < databases.size()) {
+      String victim = null;
+      long oldest = Long.MAX_VALUE;
+      for(Map.Entry<String, SQLiteDatabase> entry : databases.entrySet()) {
+        final String filePath = entry.getKey();
+        if(filePath.equals(excludedPath) ||
+          !isUnused(filePath, entry.getValue())
+        ) {
+          continue;
+        }
+        final long lastUsed = getLastAccess(filePath);
+        if(lastUsed < oldest) {
+          oldest = lastUsed;
+          victim = filePath;
+        }
+      }
+
+      if(null == victim) {
+        Log.w(
+          LOG_TAG,
+          "All " + databases.size() + " databases are in use, exceeding " +
+          "the maximum of " + max
+        );
+        break;
+      }
+      evict(victim, "least recently used");
+    }
+  }
+
+  /**
+   * Evicts the databases which weren't used during the idle timeout.
+   */
+  private void evictIdle() {
+    final long timeout = idleTimeout;
+    if(0 == timeout) {
+      return;
+    }
+
+    final long now = SystemClock.elapsedRealtime();
+    for(Map.Entry<String, SQLiteDatabase> entry : databases.entrySet()) {
+      final String filePath = entry.getKey();
+      if(timeout <= now - getLastAccess(filePath) &&
+        isUnused(filePath, entry.getValue())
+      ) {
+        evict(filePath, "idle");
+      }
+    }
+  }
+
+  /**
+   * Runs the maintenance tasks which are due on the databases which weren't
+   * used during the idle delay.
+   */
+  private void maintainIdle() {
+    final SQLiteMaintenance maintenance = this.maintenance;
+    if(null == maintenance) {
+      return;
+    }
+
+    for(Map.Entry<String, SQLiteDatabase> entry : databases.entrySet()) {
+      final String filePath = entry.getKey();
+      final long idleTime = SystemClock.elapsedRealtime() -
+        getLastAccess(filePath);
+      if(maintenance.isDue(filePath) &&
+        maintenance.getIdleDelay() <= idleTime &&
+        isUnused(filePath, entry.getValue())
+      ) {
+        try {
+          maintenance.run(entry.getValue());
+        } catch(RuntimeException error) {
+          Log.w(LOG_TAG, "Unable to maintain database: " + filePath, error);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the database at the specified normalized file path, remembering
+   * its options so it's opened again the same way when next requested.
+   *
+   * @param filePath normalized file path of database file
+   * @param reason of the eviction, for logging
+   */
+  private void evict(String filePath, String reason) {
+    synchronized(evictedDatabases) {
+      // Handles may have been acquired since the database was picked.
+      final SQLiteDatabase db = databases.get(filePath);
+      if(null == db || !isUnused(filePath, db)) {
+        return;
+      }
+
+      final SQLiteOptions options = databaseOptions.get(filePath);
+      closeDatabase(filePath);
+      evictedDatabases.put(filePath, null == options ? NO_OPTIONS : options);
+      evictions.incrementAndGet();
+      Log.i(LOG_TAG, "Evicted " + reason + " database: " + filePath);
+    }
+  }
+
+  /**
+   * Returns the open database at the specified normalized file path, opening
+   * it again if it was evicted.
+   *
+   * @param filePath normalized file path of database file
+   * @return {@link SQLiteDatabase} instance
+   * @throws IllegalStateException if the database hasn't been opened
+   */
+  SQLiteDatabase getOpenDatabase(String filePath) {
+    final SQLiteDatabase db = databases.get(filePath);
+    if(null != db && db.isOpen()) {
+      return db;
+    }
+    if(evictedDatabases.containsKey(filePath)) {
+      return openDatabase(filePath);
+    }
+    throw new IllegalStateException(
+      "Database has not been opened yet: " + filePath);
+  }
+
+  /**
+   * Releases memory held by the managed databases according to the specified
+   * trim level, as passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+   * The more severe the level, the more tiers of the policy are applied:
+   *
+   * <ul>
+   *   <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE}: page caches
+   *   of all connections are shrunk.</li>
+   *   <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}: compiled
+   *   statements of {@link SQLiteStatementCache} instances and results of
+   *   {@link SQLiteQueryCache} instances are dropped.</li>
+   *   <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL},
+   *   {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND} and
+   *   {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE}: idle readers of
+   *   {@link SQLitePool} instances are closed, and reopened when needed. Rows
+   *   of {@link SQLiteHotTable} mirrors are dropped, and loaded again when
+   *   needed.</li>
+   *   <li>{@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE}: databases which
+   *   have no readers in use, no pending writes and no background work are
+   *   evicted.</li>
+   * </ul>
+   *
+   * {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN} only means the app's UI
+   * is no longer visible, so nothing is released and cached databases stay
+   * hot while the app is in the background.
+   *
+   * Databases closed by the last tier are opened again by the next call to
+   * {@link #openDatabase(String)}, so handles shouldn't be kept around unless
+   * acquired by {@link #acquireDatabase(String)}.
+   * This method may block while databases are in use, so it shouldn't be
+   * called from the main thread.
+   *
+   * @param level trim level
+   * @return memory released by each tier
+   */
+  public synchronized SQLiteTrimReport trimMemory(int level) {
+    final int tiers = getTrimTiers(level);
+    final long[] bytesFreed = new long[SQLiteTrimReport.TIER_COUNT];
+
+    for(int tier = 0; tier < tiers; tier++) {
+      long freed = 0;
+      switch(tier) {
+        case SQLiteTrimReport.TIER_PAGE_CACHES:
+          // Let SQLite release what it can and report it first; shrinking
+          // afterwards covers builds without its memory management.
+          freed += SQLiteDatabase.releaseMemory();
+          shrinkPageCaches();
+          break;
+        case SQLiteTrimReport.TIER_STATEMENTS:
+          for(SQLiteStatementCache cache : statementCaches.values()) {
+            cache.clear();
+          }
+          for(SQLiteQueryCache cache : queryCaches.values()) {
+            freed += cache.clear();
+          }
+          break;
+        case SQLiteTrimReport.TIER_READERS:
+          for(SQLitePool pool : pools.values()) {
+            if(pool.isOpen()) {
+              pool.closeIdleReaders();
+            }
+          }
+          for(Map<String, SQLiteHotTable> tables : hotTables.values()) {
+            for(SQLiteHotTable hotTable : tables.values()) {
+              freed += hotTable.unload();
+            }
+          }
+          break;
+        case SQLiteTrimReport.TIER_DATABASES:
+          for(Map.Entry<String, SQLiteDatabase> entry : databases.entrySet()) {
+            if(isUnused(entry.getKey(), entry.getValue())) {
+              evict(entry.getKey(), "unused");
+            }
+          }
+          break;
+      }
+      if(SQLiteTrimReport.TIER_PAGE_CACHES != tier) {
+        // Whatever SQLite is able to release after this tier's work.
+        freed += SQLiteDatabase.releaseMemory();
+      }
+      bytesFreed[tier] = freed;
+    }
+
+    final SQLiteTrimReport report =
+      new SQLiteTrimReport(level, tiers, bytesFreed);
+    Log.i(LOG_TAG, "Trimmed memory, " + report);
+    return report;
+  }
+
+  private static int getTrimTiers(int level) {
+    if(ComponentCallbacks2.TRIM_MEMORY_COMPLETE <= level) {
+      return 4;
+    }
+    if(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND <= level) {
+      return 3;
+    }
+    if(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN <= level) {
+      // The app merely went to the background; memory isn't short yet.
+      return 0;
+    }
+    if(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL <= level) {
+      return 3;
+    }
+    if(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW <= level) {
+      return 2;
+    }
+    if(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE <= level) {
+      return 1;
+    }
+    return 0;
+  }
+
+  private static void shrinkPageCaches() {
+    for(SQLiteDatabase db : databases.values()) {
+      try {
+        if(db.isOpen()) {
+          Util.pragma(db, "shrink_memory");
+        }
+      } catch(SQLiteException error) {
+        Log.w(LOG_TAG, "Unable to shrink memory: " + db.getPath(), error);
+      }
+    }
+    for(SQLitePool pool : pools.values()) {
+      if(pool.isOpen()) {
+        pool.shrinkMemory();
+      }
+    }
+  }
+
+  private static boolean isUnused(String filePath, SQLiteDatabase db) {
+    if(!db.isOpen() || pendingDatabases.containsKey(filePath)) {
+      return false;
+    }
+
+    final Usage usage = usages.get(filePath);
+    if(null != usage && 0 < usage.acquired) {
+      return false;
+    }
+
+    final SQLiteLazyDatabase lazyDatabase = lazyDatabases.get(filePath);
+    if(null != lazyDatabase && !lazyDatabase.isDone()) {
+      return false;
+    }
+
+    final SQLitePool pool = pools.get(filePath);
+    if(null != pool && pool.isOpen() &&
+      pool.getIdleReaderCount() < pool.getOpenReaderCount()
+    ) {
+      return false;
+    }
+
+    final SQLiteWriteQueue queue = writeQueues.get(filePath);
+    return null == queue || !queue.isOpen() || 0 == queue.getPendingCount();
+  }
+
+  /**
+   * Checks whether the specified {@link SQLiteDatabase} has a version which
+   * is older than the specified version, and thus is eligible for upgrade.
+   *
+   * @param db to check
+   * @param targetVersion new version of database to check against
+   * @return TRUE if database needs upgrade, FALSE otherwise
+   */
+  public boolean needsUpgrade(SQLiteDatabase db, int targetVersion) {
+    return targetVersion > db.getVersion();
+  }
+
+  /**
+   * Checks whether the specified {@link SQLiteDatabase} has a version which
+   * is newer than the specified version, and thus is eligible for downgrade.
+   *
+   * @param db to check
+   * @param targetVersion old version of database to check against
+   * @return TRUE if database needs downgrade, FALSE otherwise
+   */
+  public boolean needsDowngrade(SQLiteDatabase db, int targetVersion) {
+    return targetVersion < db.getVersion();
+  }
+
+  /**
+   * Lazily creates the singleton instance on first access; class loading
+   * guarantees that this happens exactly once.
+   */
+  private static class InstanceHolder {
+
+    private final static SQLiteManager instance = new SQLiteManager();
+  }
+
+  /**
+   * Creates daemon threads which run with background priority.
+   */
+  static class BackgroundThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    BackgroundThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(
+        new Runnable() {
+          @Override
+          public void run() {
+            android.os.Process.setThreadPriority(
+              android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+          }
+        },
+        name + "-" + count.incrementAndGet()
+      );
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * How a managed database is used, as far as evictions are concerned.
+   */
+  private static class Usage {
+
+    // Time of last access, in milliseconds since boot.
+    volatile long lastAccess;
+
+    // Number of handles acquired by acquireDatabase(); guarded by the lock of
+    // evictedDatabases.
+    volatile int acquired;
   }
 }
@@ -0,0 +1,166 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregate measurements of a {@link SQLitePlanRunner} run: one
+ * {@link SQLiteStepReport} per applied plan, plus totals.
+ *
+ * @see SQLitePlanRunner#getReport()
+ * @see SQLitePlanRunner.ReportHandler
+ * @since 1.4
+ */
+public class SQLiteMigrationReport {
+
+  private final String fileName;
+  private final int oldVersion;
+  private final int newVersion;
+  private final List<SQLiteStepReport> steps;
+
+  SQLiteMigrationReport(
+    String fileName,
+    int oldVersion,
+    int newVersion,
+    List<SQLiteStepReport> steps
+  ) {
+    this.fileName = fileName;
+    this.oldVersion = oldVersion;
+    this.newVersion = newVersion;
+    this.steps = Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * Returns the file name of the migrated database.
+   *
+   * @return database file name
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Returns the version of the database before the run.
+   *
+   * @return old version
+   */
+  public int getOldVersion() {
+    return oldVersion;
+  }
+
+  /**
+   * Returns the version of the database after the run.
+   *
+   * @return new version
+   */
+  public int getNewVersion() {
+    return newVersion;
+  }
+
+  /**
+   * Returns the reports of all applied plans, in order.
+   *
+   * @return step reports
+   */
+  public List<SQLiteStepReport> getSteps() {
+    return steps;
+  }
+
+  /**
+   * Returns the total wall time it took to apply all plans, in nanoseconds.
+   *
+   * @return total wall time
+   */
+  public long getWallNanos() {
+    long total = 0;
+    for(SQLiteStepReport step : steps) {
+      total += step.getWallNanos();
+    }
+    return total;
+  }
+
+  /**
+   * Returns the total number of rows inserted, updated or deleted.
+   *
+   * @return total number of changed rows
+   */
+  public long getChanges() {
+    long total = 0;
+    for(SQLiteStepReport step : steps) {
+      total += step.getChanges();
+    }
+    return total;
+  }
+
+  /**
+   * Returns the total number of pages put into use by all plans.
+   *
+   * @return total number of pages put into use
+   * @see SQLiteStepReport#getPagesUsed()
+   */
+  public long getPagesUsed() {
+    long total = 0;
+    for(SQLiteStepReport step : steps) {
+      total += step.getPagesUsed();
+    }
+    return total;
+  }
+
+  /**
+   * Returns the report of the plan which took the longest to apply.
+   *
+   * @return slowest step, or NULL if no plans were applied
+   */
+  public SQLiteStepReport getSlowestStep() {
+    SQLiteStepReport slowest = null;
+    for(SQLiteStepReport step : steps) {
+      if(null == slowest || slowest.getWallNanos() < step.getWallNanos()) {
+        slowest = step;
+      }
+    }
+    return slowest;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      Locale.US,
+      "'%s' V%d -> V%d: %d plan(s), %.3f ms, %d change(s), %d page(s) used",
+      fileName,
+      oldVersion,
+      newVersion,
+      steps.size(),
+      getWallNanos() / 1e6,
+      getChanges(),
+      getPagesUsed()
+    );
+  }
+}
@@ -0,0 +1,551 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.aux.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Migrates many databases, such as one database per account, to the same
+ * version concurrently. All databases share the plans of a single
+ * {@link SQLitePlanRegistry}, and at most {@link #getParallelism()} of them
+ * are migrated at the same time, on the background threads of
+ * {@link SQLiteManager}.
+ *
+ * Databases are migrated in the order they were added, except those which are
+ * prioritized, such as the database of the active account, which are migrated
+ * next; {@link #getDatabase(String)} prioritizes a database and waits for it.
+ *
+ * A database is never migrated twice: paths are deduplicated once normalized,
+ * and a database which is being migrated by another migrator is waited for
+ * instead. Files which don't exist are skipped.
+ *
+ * Callbacks of all runners go to a single {@link SQLitePlanRunner.Handler},
+ * one at a time, so it doesn't have to be thread-safe; the database passed to
+ * it tells which one is reporting. If it's also a
+ * {@link SQLitePlanRunner.ProgressHandler} or a
+ * {@link SQLitePlanRunner.ReportHandler}, progress and reports are forwarded
+ * as well.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#newMigrator(SQLitePlanRegistry, int)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteMigrator {
+
+  /**
+   * Default number of databases migrated at the same time.
+   */
+  public final static int DEFAULT_PARALLELISM = 2;
+
+  // Migrations in progress by all migrators, by normalized file path.
+  private final static ConcurrentHashMap<String, FutureTask<SQLiteMigrationReport>>
+    running = new ConcurrentHashMap();
+
+  private final SQLiteManager manager;
+  private final SQLitePlanRegistry registry;
+  private final int targetVersion;
+  private final LinkedHashMap<String, FutureTask<SQLiteMigrationReport>> tasks;
+  private final LinkedList<String> pending;
+  private final Map<String, Throwable> errors;
+  private final AtomicInteger completed = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+
+  private int parallelism = DEFAULT_PARALLELISM;
+  private boolean resumable;
+  private SQLiteOptions options;
+  private SQLitePlanRunner.Handler handler;
+  private boolean started;
+
+  SQLiteMigrator(
+    SQLiteManager manager,
+    SQLitePlanRegistry registry,
+    int targetVersion
+  ) {
+    if(1 > targetVersion) {
+      throw new IllegalArgumentException(
+        "Version must be equal or greater than 1.");
+    }
+    assert null != registry;
+
+    this.manager = manager;
+    this.registry = registry;
+    this.targetVersion = targetVersion;
+    this.tasks = new LinkedHashMap();
+    this.pending = new LinkedList();
+    this.errors = new ConcurrentHashMap();
+  }
+
+  /**
+   * Returns the maximum number of databases migrated at the same time.
+   *
+   * @return parallelism
+   */
+  public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Defines the maximum number of databases migrated at the same time. Must
+   * be called before {@link #start()}.
+   *
+   * @param parallelism maximum number of concurrent migrations
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator setParallelism(int parallelism) {
+    if(1 > parallelism) {
+      throw new IllegalArgumentException(
+        "Parallelism must be equal or greater than 1.");
+    }
+    ensureNotStarted();
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Defines whether each database is migrated by a resumable runner. Must be
+   * called before {@link #start()}.
+   *
+   * @param resumable TRUE to commit each plan separately
+   * @return this instance (suitable for chaining)
+   * @see SQLitePlanRunner#setResumable(boolean)
+   */
+  public synchronized SQLiteMigrator setResumable(boolean resumable) {
+    ensureNotStarted();
+    this.resumable = resumable;
+    return this;
+  }
+
+  /**
+   * Defines the options to apply when opening each database. Must be called
+   * before {@link #start()}.
+   *
+   * @param options to apply, may be NULL
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator setOptions(SQLiteOptions options) {
+    ensureNotStarted();
+    this.options = options;
+    return this;
+  }
+
+  /**
+   * Defines the handler receiving the callbacks of all runners. Must be
+   * called before {@link #start()}.
+   *
+   * @param handler to define, NULL for the runners' default handler
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator setHandler(
+    SQLitePlanRunner.Handler handler
+  ) {
+    ensureNotStarted();
+    this.handler = handler;
+    return this;
+  }
+
+  /**
+   * Adds the database at the specified file path to be migrated. Adding the
+   * same database again has no effect. Must be called before
+   * {@link #start()}.
+   *
+   * @param filePath file name/path of database file
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator add(String filePath) {
+    ensureNotStarted();
+
+    final String normalizedPath = manager.normalizeFilePath(filePath);
+    if(!tasks.containsKey(normalizedPath)) {
+      tasks.put(normalizedPath, newTask(normalizedPath));
+      pending.add(normalizedPath);
+    }
+    return this;
+  }
+
+  /**
+   * Adds the databases at the specified file paths to be migrated.
+   *
+   * @param filePaths file names/paths of database files
+   * @return this instance (suitable for chaining)
+   * @see #add(String)
+   */
+  public synchronized SQLiteMigrator addAll(Iterable<String> filePaths) {
+    for(String filePath : filePaths) {
+      add(filePath);
+    }
+    return this;
+  }
+
+  /**
+   * Moves the database at the specified file path ahead of all databases
+   * which are still waiting to be migrated. Has no effect if its migration
+   * has already started.
+   *
+   * @param filePath file name/path of database file
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator prioritize(String filePath) {
+    final String normalizedPath = manager.normalizeFilePath(filePath);
+    if(pending.remove(normalizedPath)) {
+      pending.addFirst(normalizedPath);
+    }
+    return this;
+  }
+
+  /**
+   * Starts migrating the added databases in the background, and returns
+   * immediately.
+   *
+   * @return this instance (suitable for chaining)
+   */
+  public synchronized SQLiteMigrator start() {
+    ensureNotStarted();
+    started = true;
+
+    final int workers = Math.min(parallelism, pending.size());
+    for(int index = 0; index < workers; index++) {
+      manager.getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          FutureTask<SQLiteMigrationReport> task;
+          while(null != (task = next())) {
+            task.run();
+          }
+        }
+      });
+    }
+    return this;
+  }
+
+  /**
+   * Prioritizes the database at the specified file path, waits for it to be
+   * migrated and returns it. Errors which occurred while opening or migrating
+   * the database are rethrown.
+   *
+   * @param filePath file name/path of an added database file
+   * @return {@link SQLiteDatabase} instance
+   * @throws IllegalArgumentException if the database wasn't added
+   * @throws IllegalStateException if the migrator hasn't been started
+   */
+  public SQLiteDatabase getDatabase(String filePath) {
+    final String normalizedPath = manager.normalizeFilePath(filePath);
+    final FutureTask<SQLiteMigrationReport> task;
+    synchronized(this) {
+      // Nothing would ever run the task, so waiting for it would never end.
+      if(!started) {
+        throw new IllegalStateException("Migrator hasn't been started.");
+      }
+      task = tasks.get(normalizedPath);
+      if(null == task) {
+        throw new IllegalArgumentException(
+          "Database wasn't added to this migrator: " + normalizedPath);
+      }
+      prioritize(normalizedPath);
+    }
+    Util.getUninterruptibly(task);
+    return manager.openDatabase(normalizedPath, targetVersion, null, options);
+  }
+
+  /**
+   * Waits for all databases to be migrated, and returns their reports.
+   * Databases which failed are left out; see {@link #getErrors()}.
+   *
+   * @return reports of migrated databases, in the order they were added
+   */
+  public List<SQLiteMigrationReport> await() {
+    final List<FutureTask<SQLiteMigrationReport>> all;
+    synchronized(this) {
+      if(!started) {
+        throw new IllegalStateException("Migrator hasn't been started.");
+      }
+      all = new ArrayList(tasks.values());
+    }
+
+    final List<SQLiteMigrationReport> reports = new ArrayList(all.size());
+    for(FutureTask<SQLiteMigrationReport> task : all) {
+      try {
+        final SQLiteMigrationReport report = Util.getUninterruptibly(task);
+        if(null != report) {
+          reports.add(report);
+        }
+      } catch(RuntimeException ignored) {
+        // Already recorded as an error of this migrator.
+      }
+    }
+    return Collections.unmodifiableList(reports);
+  }
+
+  /**
+   * Returns the number of added databases.
+   *
+   * @return number of databases
+   */
+  public synchronized int getTotalCount() {
+    return tasks.size();
+  }
+
+  /**
+   * Returns the number of databases which were migrated successfully so far,
+   * including those which were already up-to-date.
+   *
+   * @return number of migrated databases
+   */
+  public int getCompletedCount() {
+    return completed.get();
+  }
+
+  /**
+   * Returns the number of databases which were skipped since their files
+   * don't exist.
+   *
+   * @return number of skipped databases
+   */
+  public int getSkippedCount() {
+    return skipped.get();
+  }
+
+  /**
+   * Returns the number of databases which failed to migrate so far.
+   *
+   * @return number of failed databases
+   */
+  public int getFailedCount() {
+    return errors.size();
+  }
+
+  /**
+   * Returns the errors of databases which failed to migrate so far, by their
+   * normalized file paths.
+   *
+   * @return errors by file path
+   */
+  public Map<String, Throwable> getErrors() {
+    return Collections.unmodifiableMap(errors);
+  }
+
+  /**
+   * Checks whether all databases are done, successfully or not.
+   *
+   * @return TRUE if done, FALSE otherwise
+   */
+  public boolean isDone() {
+    return getTotalCount() ==
+      completed.get() + skipped.get() + errors.size();
+  }
+
+  private synchronized FutureTask<SQLiteMigrationReport> next() {
+    final String filePath = pending.poll();
+    return null == filePath ? null : tasks.get(filePath);
+  }
+
+  private void ensureNotStarted() {
+    if(started) {
+      throw new IllegalStateException("Migrator has already been started.");
+    }
+  }
+
+  private FutureTask<SQLiteMigrationReport> newTask(final String filePath) {
+    return new FutureTask<SQLiteMigrationReport>(
+      new Callable<SQLiteMigrationReport>() {
+        @Override
+        public SQLiteMigrationReport call() throws Exception {
+          try {
+            final SQLiteMigrationReport report = migrateOnce(filePath);
+            if(null == report) {
+              skipped.incrementAndGet();
+            } else {
+              completed.incrementAndGet();
+            }
+            return report;
+          } catch(Exception error) {
+            errors.put(filePath, error);
+            throw error;
+          } catch(Error error) {
+            errors.put(filePath, error);
+            throw error;
+          }
+        }
+      }
+    );
+  }
+
+  /**
+   * Migrates the database at the specified normalized file path, unless
+   * another migrator is already doing so, in which case its result is
+   * waited for.
+   *
+   * @param filePath normalized file path of database file
+   * @return report of the migration, or NULL if the file doesn't exist
+   */
+  private SQLiteMigrationReport migrateOnce(final String filePath) {
+    final FutureTask<SQLiteMigrationReport> task =
+      new FutureTask<SQLiteMigrationReport>(
+        new Callable<SQLiteMigrationReport>() {
+          @Override
+          public SQLiteMigrationReport call() {
+            return migrate(filePath);
+          }
+        }
+      );
+
+    FutureTask<SQLiteMigrationReport> runningTask =
+      running.putIfAbsent(filePath, task);
+
+    // No other migrator is migrating this database, so do it in this thread.
+    if(null == runningTask) {
+      try {
+        task.run();
+      } finally {
+        running.remove(filePath, task);
+      }
+      runningTask = task;
+    }
+
+    return Util.getUninterruptibly(runningTask);
+  }
+
+  private SQLiteMigrationReport migrate(String filePath) {
+    if(!new File(filePath).isFile()) {
+      return null;
+    }
+
+    // Keep the database from being evicted while it's migrated.
+    final SQLiteDatabase db;
+    try {
+      db = manager.acquireDatabase(filePath, targetVersion, null, options);
+    } catch(RuntimeException error) {
+      if(null != handler) {
+        synchronized(handler) {
+          handler.onError(null, error);
+        }
+      }
+      throw error;
+    }
+
+    try {
+      final SQLitePlanRunner runner = SQLitePlanRunner.For(db, targetVersion)
+        .setRegistry(registry)
+        .setResumable(resumable);
+      if(null != handler) {
+        runner.setHandler(new SerialHandler(handler));
+      }
+      runner.run();
+      return runner.getReport();
+    } finally {
+      manager.releaseDatabase(filePath);
+    }
+  }
+
+  /**
+   * Forwards callbacks to a shared handler one at a time.
+   */
+  private static class SerialHandler implements
+    SQLitePlanRunner.ProgressHandler,
+    SQLitePlanRunner.ReportHandler
+  {
+
+    private final SQLitePlanRunner.Handler handler;
+
+    SerialHandler(SQLitePlanRunner.Handler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void onChange(SQLiteDatabase db, int oldVersion, int newVersion) {
+      synchronized(handler) {
+        handler.onChange(db, oldVersion, newVersion);
+      }
+    }
+
+    @Override
+    public void onChangeComplete(SQLiteDatabase db, int version) {
+      synchronized(handler) {
+        handler.onChangeComplete(db, version);
+      }
+    }
+
+    @Override
+    public void onError(SQLiteDatabase db, Throwable error) {
+      synchronized(handler) {
+        handler.onError(db, error);
+      }
+    }
+
+    @Override
+    public void onProgress(
+      SQLiteDatabase db,
+      int oldVersion,
+      int newVersion,
+      long rowsDone,
+      long rowsRemaining
+    ) {
+      if(handler instanceof SQLitePlanRunner.ProgressHandler) {
+        synchronized(handler) {
+          ((SQLitePlanRunner.ProgressHandler)handler).onProgress(
+            db,
+            oldVersion,
+            newVersion,
+            rowsDone,
+            rowsRemaining
+          );
+        }
+      }
+    }
+
+    @Override
+    public void onStepReport(SQLiteDatabase db, SQLiteStepReport report) {
+      if(handler instanceof SQLitePlanRunner.ReportHandler) {
+        synchronized(handler) {
+          ((SQLitePlanRunner.ReportHandler)handler).onStepReport(db, report);
+        }
+      }
+    }
+
+    @Override
+    public void onReport(SQLiteDatabase db, SQLiteMigrationReport report) {
+      if(handler instanceof SQLitePlanRunner.ReportHandler) {
+        synchronized(handler) {
+          ((SQLitePlanRunner.ReportHandler)handler).onReport(db, report);
+        }
+      }
+    }
+  }
+}
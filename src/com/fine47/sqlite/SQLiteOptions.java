@@ -0,0 +1,553 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import com.fine47.sqlite.aux.Util;
+
+/**
+ * Tuning options applied to a {@link SQLiteDatabase} when it's first opened by
+ * {@link SQLiteManager}. Options left undefined keep the platform defaults.
+ *
+ * Ready-made profiles are available through {@link #forProfile(String)}, or
+ * through {@link #readHeavy()}, {@link #writeHeavy()} and {@link #lowMemory()};
+ * they can be further customized since every call returns a fresh instance.
+ *
+ * Note that {@link #setPageSize(Integer)} and {@link #setAutoVacuum(Integer)}
+ * only take effect for brand new databases. Connection-level settings (cache
+ * size, memory-mapped I/O and temporary storage) only reach the connections
+ * this library opens itself: the primary connection of the database and the
+ * readers of a {@link SQLitePool}. Android opens additional connections on
+ * its own once write-ahead logging is enabled, and those keep the defaults;
+ * use a {@link SQLitePool} for concurrent reads that need these settings.
+ *
+ * @see <a href="https://www.sqlite.org/pragma.html">SQLite PRAGMA statements</a>
+ * @since 1.4
+ */
+public class SQLiteOptions {
+
+  /**
+   * Name of the read-heavy profile.
+   */
+  public final static String PROFILE_READ_HEAVY = "read-heavy";
+
+  /**
+   * Name of the write-heavy profile.
+   */
+  public final static String PROFILE_WRITE_HEAVY = "write-heavy";
+
+  /**
+   * Name of the low-memory profile.
+   */
+  public final static String PROFILE_LOW_MEMORY = "low-memory";
+
+  /**
+   * No syncing at all; fastest, but a power loss may corrupt the database.
+   */
+  public final static int SYNCHRONOUS_OFF = 0;
+
+  /**
+   * Sync at critical moments only; safe in write-ahead logging mode.
+   */
+  public final static int SYNCHRONOUS_NORMAL = 1;
+
+  /**
+   * Sync after every transaction.
+   */
+  public final static int SYNCHRONOUS_FULL = 2;
+
+  /**
+   * Temporary tables and indices use the compile-time default storage.
+   */
+  public final static int TEMP_STORE_DEFAULT = 0;
+
+  /**
+   * Temporary tables and indices are stored in files.
+   */
+  public final static int TEMP_STORE_FILE = 1;
+
+  /**
+   * Temporary tables and indices are stored in memory.
+   */
+  public final static int TEMP_STORE_MEMORY = 2;
+
+  /**
+   * Freed pages are kept in the database file until it's vacuumed.
+   */
+  public final static int AUTO_VACUUM_NONE = 0;
+
+  /**
+   * Freed pages are returned to the file system at every commit.
+   */
+  public final static int AUTO_VACUUM_FULL = 1;
+
+  /**
+   * Freed pages are returned to the file system in steps, by running
+   * incremental_vacuum; see {@link SQLiteMaintenance}.
+   */
+  public final static int AUTO_VACUUM_INCREMENTAL = 2;
+
+  private final String profile;
+
+  private Boolean writeAheadLogging;
+  private Integer pageSize;
+  private Integer cacheSize;
+  private Long mmapSize;
+  private Integer synchronous;
+  private Integer tempStore;
+  private Integer autoVacuum;
+  private Integer walAutoCheckpoint;
+
+  /**
+   * Constructs a new, empty instance; all settings keep platform defaults.
+   */
+  public SQLiteOptions() {
+    this((String)null);
+  }
+
+  private SQLiteOptions(String profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * Constructs a new instance which is a copy of the specified options.
+   *
+   * @param options to copy
+   */
+  public SQLiteOptions(SQLiteOptions options) {
+    this(options.profile);
+    writeAheadLogging = options.writeAheadLogging;
+    pageSize = options.pageSize;
+    cacheSize = options.cacheSize;
+    mmapSize = options.mmapSize;
+    synchronous = options.synchronous;
+    tempStore = options.tempStore;
+    autoVacuum = options.autoVacuum;
+    walAutoCheckpoint = options.walAutoCheckpoint;
+  }
+
+  /**
+   * Returns a new instance for the profile with the specified name.
+   *
+   * @param profile name of the profile
+   * @return new instance
+   * @see #PROFILE_READ_HEAVY
+   * @see #PROFILE_WRITE_HEAVY
+   * @see #PROFILE_LOW_MEMORY
+   */
+  public static SQLiteOptions forProfile(String profile) {
+    if(PROFILE_READ_HEAVY.equals(profile)) {
+      return readHeavy();
+    }
+    if(PROFILE_WRITE_HEAVY.equals(profile)) {
+      return writeHeavy();
+    }
+    if(PROFILE_LOW_MEMORY.equals(profile)) {
+      return lowMemory();
+    }
+    throw new IllegalArgumentException("Unknown profile: " + profile);
+  }
+
+  /**
+   * Returns a new instance tuned for databases which are mostly read: WAL mode,
+   * a large page cache, memory-mapped reads and incremental vacuuming.
+   *
+   * @return new instance
+   */
+  public static SQLiteOptions readHeavy() {
+    return new SQLiteOptions(PROFILE_READ_HEAVY)
+      .setWriteAheadLogging(true)
+      .setPageSize(4096)
+      .setCacheSize(-8192)
+      .setMmapSize(64L * 1024 * 1024)
+      .setSynchronous(SYNCHRONOUS_NORMAL)
+      .setTempStore(TEMP_STORE_MEMORY)
+      .setAutoVacuum(AUTO_VACUUM_INCREMENTAL);
+  }
+
+  /**
+   * Returns a new instance tuned for databases with frequent writes: WAL mode
+   * with relaxed syncing, less frequent checkpoints, a moderate page cache and
+   * incremental vacuuming.
+   *
+   * @return new instance
+   */
+  public static SQLiteOptions writeHeavy() {
+    return new SQLiteOptions(PROFILE_WRITE_HEAVY)
+      .setWriteAheadLogging(true)
+      .setPageSize(4096)
+      .setCacheSize(-4096)
+      .setMmapSize(16L * 1024 * 1024)
+      .setSynchronous(SYNCHRONOUS_NORMAL)
+      .setTempStore(TEMP_STORE_MEMORY)
+      .setAutoVacuum(AUTO_VACUUM_INCREMENTAL)
+      .setWalAutoCheckpoint(2000);
+  }
+
+  /**
+   * Returns a new instance for memory-constrained devices: a small page cache,
+   * no memory-mapped I/O and file-based temporary storage.
+   *
+   * @return new instance
+   */
+  public static SQLiteOptions lowMemory() {
+    return new SQLiteOptions(PROFILE_LOW_MEMORY)
+      .setCacheSize(-512)
+      .setMmapSize(0L)
+      .setTempStore(TEMP_STORE_FILE);
+  }
+
+  /**
+   * Returns the name of the profile these options were created from.
+   *
+   * @return profile name, or NULL for custom options
+   */
+  public String getProfile() {
+    return profile;
+  }
+
+  /**
+   * Returns whether write-ahead logging should be enabled.
+   *
+   * @return TRUE/FALSE, or NULL to keep the default
+   */
+  public Boolean getWriteAheadLogging() {
+    return writeAheadLogging;
+  }
+
+  /**
+   * Defines whether write-ahead logging should be enabled.
+   *
+   * @param writeAheadLogging TRUE/FALSE, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteOptions setWriteAheadLogging(Boolean writeAheadLogging) {
+    this.writeAheadLogging = writeAheadLogging;
+    return this;
+  }
+
+  /**
+   * Returns the page size, in bytes, for brand new databases.
+   *
+   * @return page size, or NULL to keep the default
+   */
+  public Integer getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Defines the page size, in bytes, for brand new databases. Must be a power
+   * of two between 512 and 65536.
+   *
+   * @param pageSize page size, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteOptions setPageSize(Integer pageSize) {
+    if(null != pageSize && (
+      512 > pageSize || 65536 < pageSize || 0 != (pageSize & (pageSize - 1))
+    )) {
+      throw new IllegalArgumentException(
+        "Page size must be a power of two between 512 and 65536.");
+    }
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * Returns the page cache size. Positive values are in pages, negative values
+   * are in KiB.
+   *
+   * @return cache size, or NULL to keep the default
+   */
+  public Integer getCacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * Defines the page cache size. Positive values are in pages, negative values
+   * are in KiB.
+   *
+   * @param cacheSize cache size, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteOptions setCacheSize(Integer cacheSize) {
+    this.cacheSize = cacheSize;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of bytes used for memory-mapped I/O.
+   *
+   * @return memory-mapped I/O size, or NULL to keep the default
+   */
+  public Long getMmapSize() {
+    return mmapSize;
+  }
+
+  /**
+   * Defines the maximum number of bytes used for memory-mapped I/O; zero
+   * disables memory-mapped I/O.
+   *
+   * @param mmapSize memory-mapped I/O size, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteOptions setMmapSize(Long mmapSize) {
+    if(null != mmapSize && 0 > mmapSize) {
+      throw new IllegalArgumentException(
+        "Memory-mapped I/O size must be equal or greater than 0.");
+    }
+    this.mmapSize = mmapSize;
+    return this;
+  }
+
+  /**
+   * Returns the synchronous mode.
+   *
+   * @return synchronous mode, or NULL to keep the default
+   */
+  public Integer getSynchronous() {
+    return synchronous;
+  }
+
+  /**
+   * Defines the synchronous mode.
+   *
+   * @param synchronous mode, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   * @see #SYNCHRONOUS_OFF
+   * @see #SYNCHRONOUS_NORMAL
+   * @see #SYNCHRONOUS_FULL
+   */
+  public SQLiteOptions setSynchronous(Integer synchronous) {
+    if(null != synchronous && (
+      SYNCHRONOUS_OFF > synchronous || SYNCHRONOUS_FULL < synchronous
+    )) {
+      throw new IllegalArgumentException(
+        "Unknown synchronous mode: " + synchronous);
+    }
+    this.synchronous = synchronous;
+    return this;
+  }
+
+  /**
+   * Returns where temporary tables and indices are stored.
+   *
+   * @return temporary storage, or NULL to keep the default
+   */
+  public Integer getTempStore() {
+    return tempStore;
+  }
+
+  /**
+   * Defines where temporary tables and indices are stored.
+   *
+   * @param tempStore temporary storage, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   * @see #TEMP_STORE_DEFAULT
+   * @see #TEMP_STORE_FILE
+   * @see #TEMP_STORE_MEMORY
+   */
+  public SQLiteOptions setTempStore(Integer tempStore) {
+    if(null != tempStore && (
+      TEMP_STORE_DEFAULT > tempStore || TEMP_STORE_MEMORY < tempStore
+    )) {
+      throw new IllegalArgumentException(
+        "Unknown temporary storage: " + tempStore);
+    }
+    this.tempStore = tempStore;
+    return this;
+  }
+
+  /**
+   * Returns the auto-vacuum mode for brand new databases.
+   *
+   * @return auto-vacuum mode, or NULL to keep the default
+   */
+  public Integer getAutoVacuum() {
+    return autoVacuum;
+  }
+
+  /**
+   * Defines the auto-vacuum mode for brand new databases.
+   *
+   * @param autoVacuum mode, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   * @see #AUTO_VACUUM_NONE
+   * @see #AUTO_VACUUM_FULL
+   * @see #AUTO_VACUUM_INCREMENTAL
+   */
+  public SQLiteOptions setAutoVacuum(Integer autoVacuum) {
+    if(null != autoVacuum && (
+      AUTO_VACUUM_NONE > autoVacuum || AUTO_VACUUM_INCREMENTAL < autoVacuum
+    )) {
+      throw new IllegalArgumentException(
+        "Unknown auto-vacuum mode: " + autoVacuum);
+    }
+    this.autoVacuum = autoVacuum;
+    return this;
+  }
+
+  /**
+   * Returns the number of pages in the write-ahead log which triggers an
+   * automatic checkpoint.
+   *
+   * @return checkpoint threshold, or NULL to keep the default
+   */
+  public Integer getWalAutoCheckpoint() {
+    return walAutoCheckpoint;
+  }
+
+  /**
+   * Defines the number of pages in the write-ahead log which triggers an
+   * automatic checkpoint; zero disables automatic checkpoints.
+   *
+   * @param walAutoCheckpoint checkpoint threshold, or NULL to keep the default
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteOptions setWalAutoCheckpoint(Integer walAutoCheckpoint) {
+    if(null != walAutoCheckpoint && 0 > walAutoCheckpoint) {
+      throw new IllegalArgumentException(
+        "Checkpoint threshold must be equal or greater than 0.");
+    }
+    this.walAutoCheckpoint = walAutoCheckpoint;
+    return this;
+  }
+
+  /**
+   * Applies these options to a database which has just been opened. The page
+   * size and auto-vacuum mode are only applied if the database is brand new,
+   * in which case it's rebuilt to take them into account before anything
+   * else.
+   *
+   * @param db to apply the options to
+   * @param created whether the database has just been created
+   * @return effective options, as reported by the database afterwards
+   */
+  SQLiteOptions apply(SQLiteDatabase db, boolean created) {
+    // Page size and auto-vacuum must be set before the database is populated;
+    // since the platform may have already created its own metadata table,
+    // rebuild the (practically empty) database with the new settings.
+    if(created) {
+      boolean rebuild = false;
+      if(null != pageSize &&
+        pageSize != Util.pragmaForLong(db, "page_size")
+      ) {
+        Util.pragma(db, "page_size=" + pageSize);
+        rebuild = true;
+      }
+      if(null != autoVacuum &&
+        autoVacuum != Util.pragmaForLong(db, "auto_vacuum")
+      ) {
+        Util.pragma(db, "auto_vacuum=" + autoVacuum);
+        rebuild = true;
+      }
+      if(rebuild) {
+        db.execSQL("VACUUM");
+      }
+    }
+
+    if(null != writeAheadLogging) {
+      if(writeAheadLogging) {
+        db.enableWriteAheadLogging();
+      } else if(
+        Build.VERSION_CODES.JELLY_BEAN <= Build.VERSION.SDK_INT &&
+        Util.isWriteAheadLoggingEnabled(db)
+      ) {
+        db.disableWriteAheadLogging();
+      }
+    }
+
+    if(null != synchronous) {
+      Util.pragma(db, "synchronous=" + synchronous);
+    }
+
+    if(null != walAutoCheckpoint) {
+      Util.pragma(db, "wal_autocheckpoint=" + walAutoCheckpoint);
+    }
+
+    applyConnection(db);
+
+    return readFrom(db, profile);
+  }
+
+  /**
+   * Applies the connection-level subset of these options to the specified
+   * connection: page cache size, memory-mapped I/O and temporary storage.
+   * These settings aren't persisted, so every connection needs them.
+   *
+   * @param db to apply the options to
+   */
+  void applyConnection(SQLiteDatabase db) {
+    if(null != cacheSize) {
+      Util.pragma(db, "cache_size=" + cacheSize);
+    }
+    if(null != mmapSize) {
+      Util.pragma(db, "mmap_size=" + mmapSize);
+    }
+    if(null != tempStore) {
+      Util.pragma(db, "temp_store=" + tempStore);
+    }
+  }
+
+  /**
+   * Reads the current options of the specified database.
+   *
+   * @param db to read options of
+   * @param profile name of the profile, if any
+   * @return current options of the database
+   */
+  static SQLiteOptions readFrom(SQLiteDatabase db, String profile) {
+    final SQLiteOptions options = new SQLiteOptions(profile);
+    options.writeAheadLogging = Util.isWriteAheadLoggingEnabled(db);
+    options.pageSize = (int)Util.pragmaForLong(db, "page_size");
+    options.cacheSize = (int)Util.pragmaForLong(db, "cache_size");
+    options.mmapSize = Util.pragmaForLong(db, "mmap_size");
+    options.synchronous = (int)Util.pragmaForLong(db, "synchronous");
+    options.tempStore = (int)Util.pragmaForLong(db, "temp_store");
+    options.autoVacuum = (int)Util.pragmaForLong(db, "auto_vacuum");
+    options.walAutoCheckpoint =
+      (int)Util.pragmaForLong(db, "wal_autocheckpoint");
+    return options;
+  }
+
+  @Override
+  public String toString() {
+    return "SQLiteOptions{" +
+      "profile=" + profile +
+      ", writeAheadLogging=" + writeAheadLogging +
+      ", pageSize=" + pageSize +
+      ", cacheSize=" + cacheSize +
+      ", mmapSize=" + mmapSize +
+      ", synchronous=" + synchronous +
+      ", tempStore=" + tempStore +
+      ", autoVacuum=" + autoVacuum +
+      ", walAutoCheckpoint=" + walAutoCheckpoint +
+      '}';
+  }
+}
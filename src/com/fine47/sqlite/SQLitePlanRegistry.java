@@ -0,0 +1,404 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sparse, version-keyed registry of {@link SQLitePlan} classes.
+ *
+ * Single-step plans are registered by {@link #addPlan(int, Class)}: the plan of
+ * version N upgrades a database from VN to VN+1, and downgrades it from VN to
+ * VN-1. In addition, upgrade shortcuts spanning several versions can be
+ * registered by {@link #addShortcut(int, int, Class)}; for example, a baseline
+ * plan creating the current schema from V0 to V120 in one go, or a plan
+ * squashing V40 to V90.
+ *
+ * {@link #findPath(int, int)} picks the cheapest sequence of plans to bring a
+ * database from its current version to a target version. By default each plan
+ * costs 1, so the path running the fewest plans wins. Downgrades always go
+ * through the single-step plans.
+ *
+ * A registry may be shared by several {@link SQLitePlanRunner} instances, but
+ * must not be modified while it's being used.
+ *
+ * @since 1.4
+ */
+public class SQLitePlanRegistry {
+
+  /**
+   * Cost of a plan when none is specified.
+   */
+  public final static int DEFAULT_COST = 1;
+
+  private final Map<Integer, Class<? extends SQLitePlan>> plans;
+  private final TreeMap<Integer, List<Step>> upgrades;
+
+  /**
+   * Constructs a new, empty registry.
+   */
+  public SQLitePlanRegistry() {
+    plans = new HashMap();
+    upgrades = new TreeMap();
+  }
+
+  /**
+   * Adds a single-step upgrade/downgrade {@link SQLitePlan} for the specified
+   * version, replacing any plan previously added for it. Versions must start
+   * from 1 (inclusive).
+   *
+   * @param version of this {@link SQLitePlan}
+   * @param planClass implementing {@link SQLitePlan} interface
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePlanRegistry addPlan(
+    int version,
+    Class<? extends SQLitePlan> planClass
+  ) {
+    if(1 > version) {
+      throw new IllegalArgumentException(
+        "Version must be equal or greater than 1.");
+    }
+    assert null != planClass;
+
+    plans.put(version, planClass);
+    putUpgrade(new Step(version, version + 1, planClass, DEFAULT_COST));
+    return this;
+  }
+
+  /**
+   * Adds an upgrade shortcut which brings a database from one version to a
+   * newer one in a single {@link SQLitePlan}, with the default cost.
+   *
+   * @param fromVersion version the plan upgrades from, 0 or greater
+   * @param toVersion version the plan upgrades to
+   * @param planClass implementing {@link SQLitePlan} interface
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePlanRegistry addShortcut(
+    int fromVersion,
+    int toVersion,
+    Class<? extends SQLitePlan> planClass
+  ) {
+    return addShortcut(fromVersion, toVersion, planClass, DEFAULT_COST);
+  }
+
+  /**
+   * Adds an upgrade shortcut which brings a database from one version to a
+   * newer one in a single {@link SQLitePlan}, with the specified cost relative
+   * to a single-step plan.
+   *
+   * @param fromVersion version the plan upgrades from, 0 or greater
+   * @param toVersion version the plan upgrades to
+   * @param planClass implementing {@link SQLitePlan} interface
+   * @param cost of running the plan, 0 or greater
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePlanRegistry addShortcut(
+    int fromVersion,
+    int toVersion,
+    Class<? extends SQLitePlan> planClass,
+    int cost
+  ) {
+    if(0 > fromVersion) {
+      throw new IllegalArgumentException(
+        "Version must be equal or greater than 0.");
+    }
+    if(fromVersion >= toVersion) {
+      throw new IllegalArgumentException(
+        "Shortcuts must upgrade to a newer version.");
+    }
+    if(0 > cost) {
+      throw new IllegalArgumentException(
+        "Cost must be equal or greater than 0.");
+    }
+    assert null != planClass;
+
+    putUpgrade(new Step(fromVersion, toVersion, planClass, cost));
+    return this;
+  }
+
+  /**
+   * Adds a single-step upgrade which runs the SQL script at the specified path
+   * to bring a database from the specified version to the next one, replacing
+   * any upgrade previously added for it. Scripts can't downgrade a database.
+   *
+   * @param version the script upgrades from, 1 or greater
+   * @param scriptPath path of the script on the classpath or in the assets
+   * @return this instance (suitable for chaining)
+   * @see SQLiteScriptPlan
+   */
+  public SQLitePlanRegistry addScript(int version, String scriptPath) {
+    if(1 > version) {
+      throw new IllegalArgumentException(
+        "Version must be equal or greater than 1.");
+    }
+    return addScript(version, version + 1, scriptPath);
+  }
+
+  /**
+   * Adds an upgrade which runs the SQL script at the specified path to bring a
+   * database from one version to a newer one in a single step, with the
+   * default cost.
+   *
+   * @param fromVersion version the script upgrades from, 0 or greater
+   * @param toVersion version the script upgrades to
+   * @param scriptPath path of the script on the classpath or in the assets
+   * @return this instance (suitable for chaining)
+   * @see SQLiteScriptPlan
+   */
+  public SQLitePlanRegistry addScript(
+    int fromVersion,
+    int toVersion,
+    String scriptPath
+  ) {
+    if(0 > fromVersion) {
+      throw new IllegalArgumentException(
+        "Version must be equal or greater than 0.");
+    }
+    if(fromVersion >= toVersion) {
+      throw new IllegalArgumentException(
+        "Scripts must upgrade to a newer version.");
+    }
+    assert null != scriptPath;
+
+    putUpgrade(new Step(
+      fromVersion,
+      toVersion,
+      SQLiteScriptPlan.class,
+      scriptPath,
+      DEFAULT_COST
+    ));
+    return this;
+  }
+
+  /**
+   * Returns the single-step {@link SQLitePlan} for the specified version.
+   *
+   * @param version to get {@link SQLitePlan} for
+   * @return requested plan if defined, NULL otherwise
+   */
+  public Class<? extends SQLitePlan> getPlan(int version) {
+    return plans.get(version);
+  }
+
+  /**
+   * Finds the cheapest sequence of plans which brings a database from one
+   * version to another.
+   *
+   * @param fromVersion current version of the database
+   * @param toVersion target version of the database
+   * @return steps to apply in order, empty if versions are the same
+   * @throws IllegalStateException if no sequence of plans exists
+   */
+  public List<Step> findPath(int fromVersion, int toVersion) {
+    if(fromVersion == toVersion) {
+      return Collections.emptyList();
+    }
+    return fromVersion < toVersion
+      ? findUpgradePath(fromVersion, toVersion)
+      : findDowngradePath(fromVersion, toVersion);
+  }
+
+  private void putUpgrade(Step step) {
+    List<Step> steps = upgrades.get(step.fromVersion);
+    if(null == steps) {
+      steps = new ArrayList(1);
+      upgrades.put(step.fromVersion, steps);
+    }
+
+    // A newer registration for the same edge replaces the old one.
+    for(int index = 0; index < steps.size(); index++) {
+      if(step.toVersion == steps.get(index).toVersion) {
+        steps.set(index, step);
+        return;
+      }
+    }
+    steps.add(step);
+  }
+
+  private List<Step> findUpgradePath(int fromVersion, int toVersion) {
+    // All upgrade steps lead to newer versions, so the graph is acyclic and
+    // visiting versions in ascending order settles each one before it's used.
+    final Map<Integer, Step> bestSteps = new HashMap();
+    final Map<Integer, Long> bestCosts = new HashMap();
+    bestCosts.put(fromVersion, 0L);
+
+    for(Map.Entry<Integer, List<Step>> entry :
+      upgrades.subMap(fromVersion, toVersion).entrySet()
+    ) {
+      final int version = entry.getKey();
+      final Long cost = bestCosts.get(version);
+      if(null == cost) {
+        // Unreachable version.
+        continue;
+      }
+
+      for(Step step : entry.getValue()) {
+        if(step.toVersion > toVersion) {
+          continue;
+        }
+        final Long known = bestCosts.get(step.toVersion);
+        final long candidate = cost + step.cost;
+        if(null == known || candidate < known) {
+          bestCosts.put(step.toVersion, candidate);
+          bestSteps.put(step.toVersion, step);
+        }
+      }
+    }
+
+    if(null == bestSteps.get(toVersion)) {
+      throw new IllegalStateException(
+        "No schema plans lead from V" + fromVersion + " to V" + toVersion + ".");
+    }
+
+    // Walk back from the target version.
+    final ArrayList<Step> path = new ArrayList();
+    for(int version = toVersion; version != fromVersion;) {
+      final Step step = bestSteps.get(version);
+      path.add(step);
+      version = step.fromVersion;
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  private List<Step> findDowngradePath(int fromVersion, int toVersion) {
+    final ArrayList<Step> path = new ArrayList(fromVersion - toVersion);
+    for(int version = fromVersion; version > toVersion; version--) {
+      final Class<? extends SQLitePlan> planClass = plans.get(version);
+      if(null == planClass) {
+        throw new IllegalStateException(
+          "Version " + version + " has no defined schema plan.");
+      }
+      path.add(new Step(version, version - 1, planClass, DEFAULT_COST));
+    }
+    return path;
+  }
+
+  /**
+   * A single step of a migration path: a plan which brings a database from
+   * one version to another.
+   */
+  public static class Step {
+
+    private final int fromVersion;
+    private final int toVersion;
+    private final Class<? extends SQLitePlan> planClass;
+    private final String scriptPath;
+    private final int cost;
+
+    Step(
+      int fromVersion,
+      int toVersion,
+      Class<? extends SQLitePlan> planClass,
+      int cost
+    ) {
+      this(fromVersion, toVersion, planClass, null, cost);
+    }
+
+    Step(
+      int fromVersion,
+      int toVersion,
+      Class<? extends SQLitePlan> planClass,
+      String scriptPath,
+      int cost
+    ) {
+      this.fromVersion = fromVersion;
+      this.toVersion = toVersion;
+      this.planClass = planClass;
+      this.scriptPath = scriptPath;
+      this.cost = cost;
+    }
+
+    /**
+     * Returns the version this step starts from.
+     *
+     * @return old version
+     */
+    public int getFromVersion() {
+      return fromVersion;
+    }
+
+    /**
+     * Returns the version this step brings the database to.
+     *
+     * @return new version
+     */
+    public int getToVersion() {
+      return toVersion;
+    }
+
+    /**
+     * Checks whether this step is an upgrade.
+     *
+     * @return TRUE if upgrade, FALSE if downgrade
+     */
+    public boolean isUpgrade() {
+      return fromVersion < toVersion;
+    }
+
+    /**
+     * Returns the plan applied by this step.
+     *
+     * @return plan class
+     */
+    public Class<? extends SQLitePlan> getPlanClass() {
+      return planClass;
+    }
+
+    /**
+     * Returns the path of the SQL script run by this step.
+     *
+     * @return script path, or NULL if this step doesn't run a script
+     */
+    public String getScriptPath() {
+      return scriptPath;
+    }
+
+    /**
+     * Returns the cost of this step.
+     *
+     * @return cost
+     */
+    public int getCost() {
+      return cost;
+    }
+
+    @Override
+    public String toString() {
+      return "V" + fromVersion + " -> V" + toVersion + ": " +
+        (null == scriptPath ? planClass.getName() : scriptPath);
+    }
+  }
+}
@@ -27,13 +27,23 @@ package com.fine47.sqlite;
 
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
-import android.util.Log;
-import com.fine47.sqlite.aux.ElasticArrayList;
-import com.fine47.sqlite.aux.Util;
+import com.fine47.sqlite.aux.Logger;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Orchestrates a {@link SQLiteDatabase}'s upgrade/downgrade process by
- * defining plans and executing them inside a transaction.
+ * defining plans and executing them inside a transaction, or inside a
+ * transaction each when resumable.
+ *
+ * The runner works on a {@link SQLiteConnection}, so it also runs on a plain
+ * JVM using {@link com.fine47.sqlite.backend.SQLiteJdbcBackend}, provided all
+ * plans extend {@link SQLiteConnectionPlan}.
  *
  * @see SQLitePlan
  * @since 1.0
@@ -42,26 +52,42 @@ public class SQLitePlanRunner implements Runnable {
 
   private final static String LOG_TAG = "SQLitePlanRunner";
 
+  /**
+   * Name of the table recording the plan in progress in resumable mode.
+   *
+   * @see #setResumable(boolean)
+   */
+  public final static String PROGRESS_TABLE = "_sqlite_manager_progress";
+
+  private final SQLiteConnection connection;
   private final SQLiteDatabase db;
-  private final ElasticArrayList<Class<? extends SQLitePlan>> plans;
   private final int targetVersion;
 
+  private SQLitePlanRegistry plans;
   private Handler handler;
   private int dbVersion;
+  private boolean resumable;
+  private ArrayList<SQLiteStepReport> stepReports;
+  private SQLiteMigrationReport report;
 
-  private SQLitePlanRunner(SQLiteDatabase db, int targetVersion) {
+  private SQLitePlanRunner(
+    SQLiteConnection connection,
+    SQLiteDatabase db,
+    int targetVersion
+  ) {
     if(1 > targetVersion) {
       throw new IllegalArgumentException(
         "Version must be equal or greater than 1.");
     }
 
-    assert null != db;
-    assert db.isOpen();
-    assert !db.isReadOnly();
+    assert null != connection;
+    assert connection.isOpen();
+    assert !connection.isReadOnly();
 
+    this.connection = connection;
     this.db = db;
     this.targetVersion = targetVersion;
-    this.plans = new ElasticArrayList();
+    this.plans = new SQLitePlanRegistry();
     this.handler = new DefaultHandler();
   }
 
@@ -74,7 +100,44 @@ public class SQLitePlanRunner implements Runnable {
    * @return new instance
    */
   public static SQLitePlanRunner For(SQLiteDatabase db, int targetVersion) {
-    return new SQLitePlanRunner(db, targetVersion);
+    assert null != db;
+    return new SQLitePlanRunner(
+      SQLiteAndroidBackend.wrap(db),
+      db,
+      targetVersion
+    );
+  }
+
+  /**
+   * Prepares a new {@link SQLitePlanRunner} instance for the specified
+   * {@link SQLiteConnection} and target version.
+   *
+   * Unless the connection was opened by {@link SQLiteAndroidBackend}, all
+   * plans must extend {@link SQLiteConnectionPlan}, and the database passed
+   * to the {@link Handler} is NULL; use {@link #getConnection()} instead.
+   *
+   * @param connection to define plans for
+   * @param targetVersion for the plans
+   * @return new instance
+   */
+  public static SQLitePlanRunner For(
+    SQLiteConnection connection,
+    int targetVersion
+  ) {
+    return new SQLitePlanRunner(
+      connection,
+      SQLiteAndroidBackend.unwrap(connection),
+      targetVersion
+    );
+  }
+
+  /**
+   * Returns the connection to the database of this runner.
+   *
+   * @return database connection
+   */
+  public SQLiteConnection getConnection() {
+    return connection;
   }
 
   /**
@@ -97,6 +160,28 @@ public class SQLitePlanRunner implements Runnable {
     return this;
   }
 
+  /**
+   * Returns the {@link SQLitePlanRegistry} holding the plans of this runner.
+   *
+   * @return plan registry
+   */
+  public SQLitePlanRegistry getRegistry() {
+    return plans;
+  }
+
+  /**
+   * Replaces the plans of this runner with the specified
+   * {@link SQLitePlanRegistry}, which may be shared with other runners.
+   *
+   * @param registry to use
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePlanRunner setRegistry(SQLitePlanRegistry registry) {
+    assert null != registry;
+    this.plans = registry;
+    return this;
+  }
+
   /**
    * Adds a new upgrade/downgrade {@link SQLitePlan} to this database. Versions must
    * start from 1 (inclusive) and advance sequentially.
@@ -109,11 +194,60 @@ public class SQLitePlanRunner implements Runnable {
     int version,
     Class<? extends SQLitePlan> planClass
   ) {
-    if(1 > version) {
-      throw new IllegalArgumentException(
-        "Version must be equal or greater than 1.");
-    }
-    plans.add(version, planClass);
+    plans.addPlan(version, planClass);
+    return this;
+  }
+
+  /**
+   * Adds an upgrade {@link SQLitePlan} which brings this database from one
+   * version to a newer one in a single step, skipping the plans in between.
+   * The runner picks the cheapest path to the target version.
+   *
+   * @param fromVersion version the plan upgrades from, 0 or greater
+   * @param toVersion version the plan upgrades to
+   * @param planClass implementing {@link SQLitePlan} interface
+   * @return this instance (suitable for chaining)
+   * @see SQLitePlanRegistry#addShortcut(int, int, Class, int)
+   */
+  public SQLitePlanRunner addShortcut(
+    int fromVersion,
+    int toVersion,
+    Class<? extends SQLitePlan> planClass
+  ) {
+    plans.addShortcut(fromVersion, toVersion, planClass);
+    return this;
+  }
+
+  /**
+   * Adds an upgrade which runs the SQL script at the specified path to bring
+   * this database from the specified version to the next one.
+   *
+   * @param version the script upgrades from, 1 or greater
+   * @param scriptPath path of the script on the classpath or in the assets
+   * @return this instance (suitable for chaining)
+   * @see SQLiteScriptPlan
+   */
+  public SQLitePlanRunner addScript(int version, String scriptPath) {
+    plans.addScript(version, scriptPath);
+    return this;
+  }
+
+  /**
+   * Adds an upgrade which runs the SQL script at the specified path to bring
+   * this database from one version to a newer one in a single step.
+   *
+   * @param fromVersion version the script upgrades from, 0 or greater
+   * @param toVersion version the script upgrades to
+   * @param scriptPath path of the script on the classpath or in the assets
+   * @return this instance (suitable for chaining)
+   * @see SQLiteScriptPlan
+   */
+  public SQLitePlanRunner addScript(
+    int fromVersion,
+    int toVersion,
+    String scriptPath
+  ) {
+    plans.addScript(fromVersion, toVersion, scriptPath);
     return this;
   }
 
@@ -128,94 +262,638 @@ public class SQLitePlanRunner implements Runnable {
       throw new IllegalArgumentException(
         "Version must be equal or greater than 1.");
     }
-    return plans.get(version);
+    return plans.getPlan(version);
+  }
+
+  /**
+   * Checks whether this runner commits each plan separately.
+   *
+   * @return TRUE if resumable, FALSE otherwise
+   * @see #setResumable(boolean)
+   */
+  public boolean isResumable() {
+    return resumable;
+  }
+
+  /**
+   * Defines whether this runner commits each plan separately instead of
+   * wrapping all of them in a single transaction.
+   *
+   * In resumable mode, each plan runs in its own transaction, which also
+   * updates the database's version; once a plan is committed, it's never
+   * applied again even if the process is killed later on. A marker for the
+   * plan in progress is recorded in the {@link #PROGRESS_TABLE} table before
+   * the plan starts, and removed when it's committed, so a run following a
+   * crash knows which plan was interrupted and continues from the last
+   * committed version. {@link Handler#onChange(SQLiteDatabase, int, int)} is
+   * called once per plan, after it has been committed.
+   *
+   * Upgrade plans which are both a {@link SQLiteChunkedPlan} and a
+   * {@link SQLiteBulkPlan} aren't supported in resumable mode, since their
+   * chunks would commit while the indexes and triggers are dropped.
+   *
+   * @param resumable TRUE to commit each plan separately
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePlanRunner setResumable(boolean resumable) {
+    this.resumable = resumable;
+    return this;
   }
 
   /**
    * Executes all plans and performs the upgrade/downgrade operation.
    *
    * @throws SQLiteException when errors occur during upgrade or downgrade
+   * @see #setResumable(boolean)
    */
   @Override
   public void run() throws SQLiteException {
     // Get database version.
-    dbVersion = db.getVersion();
+    dbVersion = connection.getVersion();
 
-    // Begin a transaction for all changes.
-    db.beginTransaction();
+    // Measurements of this run.
+    final int oldVersion = dbVersion;
+    stepReports = new ArrayList();
 
     try {
-      // While version of database is different than target version.
-      while(dbVersion != targetVersion) {
-        // Get the plan at this database version.
-        final Class<? extends SQLitePlan> planClass = plans.get(dbVersion);
-        if(null == planClass) {
-          throw new IllegalStateException(
-            "Version " + dbVersion + " has no defined schema plan.");
-        }
-
-        // Instantiate this plan.
-        final SQLitePlan plan = planClass.newInstance();
-
-        // Database version before schema change.
-        final int oldVersion = dbVersion;
-
-        // Determine whether an upgrade or a downgrade is necessary.
-        if(dbVersion < targetVersion) {
-          // Database version is older than target -- upgrade's necessary.
-          plan.applyUpgrade(db);
-
-          // Advance to next version.
-          dbVersion++;
-        } else {
-          // Database version is newer than target -- downgrade necessary.
-          plan.applyDowngrade(db);
-
-          // Retract to previous version.
-          dbVersion--;
-        }
-
-        // Schema change for this version succeeded, update database's version.
-        db.setVersion(dbVersion);
-
-        // Notify conductor about the change.
-        handler.onChange(db, oldVersion, dbVersion);
+      if(resumable) {
+        runResumable();
+      } else {
+        runAtomic();
       }
-
-      // All plans succeeded.
-      db.setTransactionSuccessful();
     } catch(InstantiationException error) {
-      Log.e(
+      Logger.e(
         LOG_TAG,
         "Unable to instantiate a new plan for version " + dbVersion,
         error
       );
       handler.onError(db, error);
-      throw new SQLiteException(error.getMessage());
+      throw connection.newException(error.getMessage());
     } catch(IllegalAccessException error) {
-      Log.e(
+      Logger.e(
         LOG_TAG,
         "Access denied when instantiating a new plan for version " + dbVersion,
         error
       );
       handler.onError(db, error);
-      throw new SQLiteException(error.getMessage());
-    } catch(SQLiteException error) {
-      Log.e(
+      throw connection.newException(error.getMessage());
+    } catch(RuntimeException error) {
+      Logger.e(
         LOG_TAG,
-        "SQL error when execution plan for version " + dbVersion,
+        "Error when executing plan for version " + dbVersion,
         error
       );
       handler.onError(db, error);
       throw error;
     } finally {
-      db.endTransaction();
+      report = new SQLiteMigrationReport(
+        getFileName(),
+        oldVersion,
+        dbVersion,
+        stepReports
+      );
+
+      // Mirrored tables and cached results may have changed along with the
+      // schema.
+      if(null != db && oldVersion != dbVersion) {
+        SQLiteManager.invalidateQueryCache(db.getPath());
+        SQLiteManager.reloadHotTables(db.getPath());
+      }
+    }
+
+    // Report measurements of this run.
+    if(handler instanceof ReportHandler) {
+      ((ReportHandler)handler).onReport(db, report);
     }
 
     // Fire callback when all changes are complete.
     handler.onChangeComplete(db, dbVersion);
   }
 
+  /**
+   * Returns the measurements of the last run of this runner. If the last run
+   * failed, only plans applied before the failure are reported; unless the
+   * runner is resumable, their changes have been rolled back.
+   *
+   * @return report of the last run, or NULL if this runner never ran
+   */
+  public SQLiteMigrationReport getReport() {
+    return report;
+  }
+
+  /**
+   * Applies all plans inside a single transaction.
+   */
+  private void runAtomic()
+    throws InstantiationException, IllegalAccessException
+  {
+    // Find the cheapest path to the target version.
+    final List<SQLitePlanRegistry.Step> path =
+      plans.findPath(dbVersion, targetVersion);
+
+    // Begin a transaction for all changes.
+    connection.beginTransaction();
+
+    try {
+      // Apply each plan along the path.
+      for(SQLitePlanRegistry.Step step : path) {
+        // Database version before schema change.
+        final int oldVersion = dbVersion;
+
+        // Apply the plan and advance to its version.
+        final SQLitePlan plan = newPlan(step);
+        final long[] before = measure();
+        final long changes = getTotalChanges();
+        dbVersion = applyPlan(plan, step);
+        final SQLiteStepReport stepReport = addStepReport(
+          step,
+          before,
+          getTotalChanges() - changes
+        );
+
+        // Notify conductor about the change.
+        handler.onChange(db, oldVersion, dbVersion);
+        notifyStepReport(stepReport);
+      }
+
+      // All plans succeeded.
+      connection.setTransactionSuccessful();
+    } finally {
+      connection.endTransaction();
+    }
+  }
+
+  /**
+   * Applies each plan inside its own transaction, recording a marker for the
+   * plan in progress.
+   */
+  private void runResumable()
+    throws InstantiationException, IllegalAccessException
+  {
+    // Make sure the progress table exists.
+    connection.execSQL(
+      "CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + " (" +
+        "id INTEGER PRIMARY KEY CHECK (0 = id), " +
+        "from_version INTEGER NOT NULL, " +
+        "to_version INTEGER NOT NULL, " +
+        "started_at INTEGER NOT NULL, " +
+        "chunks_started INTEGER NOT NULL DEFAULT 0, " +
+        "last_key" +
+      ")"
+    );
+
+    // Report a plan which was interrupted during a previous run; its changes
+    // have been rolled back, and the version reflects the last committed plan.
+    // Chunked plans continue after their last committed chunk.
+    boolean chunksStarted = false;
+    int chunksToVersion = -1;
+    Object lastKey = null;
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT from_version, to_version, chunks_started, last_key FROM " +
+        PROGRESS_TABLE
+    );
+    try {
+      if(cursor.moveToNext()) {
+        Logger.w(
+          LOG_TAG,
+          String.format(
+            "Plan from V%d to V%d was interrupted, resuming from V%d: %s",
+            cursor.getInt(0),
+            cursor.getInt(1),
+            dbVersion,
+            getFileName()
+          )
+        );
+        if(dbVersion == cursor.getInt(0)) {
+          chunksStarted = 0 != cursor.getInt(2);
+          chunksToVersion = cursor.getInt(1);
+          lastKey = cursor.getValue(3);
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+
+    // Find the cheapest path to the target version.
+    final List<SQLitePlanRegistry.Step> path =
+      plans.findPath(dbVersion, targetVersion);
+
+    // Chunks commit separately, so other threads would write to the tables
+    // of a bulk plan while its indexes and triggers are dropped.
+    for(SQLitePlanRegistry.Step step : path) {
+      final Class<? extends SQLitePlan> planClass = step.getPlanClass();
+      if(step.isUpgrade() && null != planClass &&
+        SQLiteChunkedPlan.class.isAssignableFrom(planClass) &&
+        SQLiteBulkPlan.class.isAssignableFrom(planClass)
+      ) {
+        throw new IllegalArgumentException(
+          "Chunked bulk plans can't run in resumable mode: " +
+          planClass.getName());
+      }
+    }
+
+    // Apply each plan along the path.
+    for(SQLitePlanRegistry.Step step : path) {
+      // Database version before schema change.
+      final int oldVersion = dbVersion;
+      final int newVersion = step.getToVersion();
+
+      // Instantiate the plan of this step.
+      final SQLitePlan plan = newPlan(step);
+
+      // Chunks can only be resumed by the very same step.
+      chunksStarted = chunksStarted && chunksToVersion == newVersion;
+
+      // Measure from here until the plan has been committed; changed rows are
+      // counted inside the plan's own transactions, without the marker.
+      final long[] before = measure();
+      long changes = 0;
+
+      if(!chunksStarted) {
+        // Record the plan in progress; committed on its own.
+        connection.execSQL(
+          "INSERT OR REPLACE INTO " + PROGRESS_TABLE +
+            " (id, from_version, to_version, started_at) VALUES (0, ?, ?, ?)",
+          new Object[] {oldVersion, newVersion, System.currentTimeMillis()}
+        );
+      }
+
+      if(plan instanceof SQLiteChunkedPlan && step.isUpgrade()) {
+        changes += applyChunks(
+          (SQLiteChunkedPlan)plan,
+          oldVersion,
+          newVersion,
+          chunksStarted,
+          lastKey
+        );
+      }
+
+      // Apply the plan, update the version and clear the marker atomically.
+      connection.beginTransaction();
+      try {
+        final long totalChanges = getTotalChanges();
+        if(plan instanceof SQLiteChunkedPlan && step.isUpgrade()) {
+          ((SQLiteChunkedPlan)plan).afterChunks(requireDatabase(plan));
+          connection.setVersion(newVersion);
+        } else {
+          applyPlan(plan, step);
+        }
+        changes += getTotalChanges() - totalChanges;
+        connection.execSQL("DELETE FROM " + PROGRESS_TABLE);
+        connection.setTransactionSuccessful();
+      } finally {
+        connection.endTransaction();
+      }
+
+      // The plan has been committed.
+      dbVersion = newVersion;
+      chunksStarted = false;
+      lastKey = null;
+      final SQLiteStepReport stepReport =
+        addStepReport(step, before, changes);
+
+      // Notify conductor about the change.
+      handler.onChange(db, oldVersion, dbVersion);
+      notifyStepReport(stepReport);
+    }
+  }
+
+  /**
+   * Applies the chunks of the specified plan, each in its own transaction
+   * along with an update of the progress marker. The plan's
+   * {@link SQLiteChunkedPlan#afterChunks(SQLiteDatabase)} is left to the
+   * caller.
+   *
+   * @param plan to apply chunks of
+   * @param oldVersion current database version
+   * @param newVersion version of the database after the plan
+   * @param resume whether a previous run already started the chunks
+   * @param lastKey last key committed by a previous run
+   * @return number of rows changed by the plan, without the marker updates
+   */
+  private long applyChunks(
+    SQLiteChunkedPlan plan,
+    int oldVersion,
+    int newVersion,
+    boolean resume,
+    Object lastKey
+  ) {
+    final SQLiteDatabase db = requireDatabase(plan);
+    long changes = 0;
+
+    if(resume) {
+      plan.resumeAfter(lastKey);
+    } else {
+      connection.beginTransaction();
+      try {
+        final long totalChanges = getTotalChanges();
+        plan.beforeChunks(db);
+        changes += getTotalChanges() - totalChanges;
+        connection.execSQL(
+          "UPDATE " + PROGRESS_TABLE + " SET chunks_started = 1");
+        connection.setTransactionSuccessful();
+      } finally {
+        connection.endTransaction();
+      }
+    }
+
+    long rowsDone = 0;
+    long rowsRemaining = plan.countRemaining(db);
+    notifyProgress(oldVersion, newVersion, rowsDone, rowsRemaining);
+
+    while(true) {
+      int count;
+      connection.beginTransaction();
+      try {
+        final long totalChanges = getTotalChanges();
+        count = plan.applyNextChunk(db);
+        changes += getTotalChanges() - totalChanges;
+        if(0 < count) {
+          connection.execSQL(
+            "UPDATE " + PROGRESS_TABLE + " SET last_key = ?",
+            new Object[] {plan.getLastKey()}
+          );
+        }
+        connection.setTransactionSuccessful();
+      } finally {
+        connection.endTransaction();
+      }
+
+      if(0 == count) {
+        return changes;
+      }
+
+      rowsDone += count;
+      rowsRemaining = Math.max(0, rowsRemaining - count);
+      notifyProgress(oldVersion, newVersion, rowsDone, rowsRemaining);
+
+      // Let other threads have the database for a while.
+      final long throttleDelay = plan.getThrottleDelay();
+      if(0 < throttleDelay) {
+        sleep(throttleDelay);
+      }
+    }
+  }
+
+  /**
+   * Instantiates the plan of the specified step.
+   *
+   * @param step to instantiate plan of
+   * @return new plan instance
+   */
+  private SQLitePlan newPlan(SQLitePlanRegistry.Step step)
+    throws InstantiationException, IllegalAccessException
+  {
+    if(null != step.getScriptPath()) {
+      return new SQLiteScriptPlan(step.getScriptPath());
+    }
+    return step.getPlanClass().newInstance();
+  }
+
+  /**
+   * Applies the specified plan, and updates the database's version
+   * accordingly. Must be called inside a transaction.
+   *
+   * @param plan to apply
+   * @param step of the plan
+   * @return new database version
+   */
+  private int applyPlan(SQLitePlan plan, SQLitePlanRegistry.Step step) {
+    // Bulk plans run without the indexes and triggers of their tables.
+    final List<SQLiteSchema.Entry> deferred = plan instanceof SQLiteBulkPlan
+      ? beginBulk((SQLiteBulkPlan)plan)
+      : null;
+
+    // Determine whether an upgrade or a downgrade is necessary.
+    if(step.isUpgrade()) {
+      // Database version is older than target -- upgrade's necessary.
+      if(plan instanceof SQLiteChunkedPlan) {
+        applyChunks(
+          (SQLiteChunkedPlan)plan,
+          step.getFromVersion(),
+          step.getToVersion()
+        );
+      } else if(plan instanceof SQLiteConnectionPlan) {
+        ((SQLiteConnectionPlan)plan).applyUpgrade(connection);
+      } else {
+        plan.applyUpgrade(requireDatabase(plan));
+      }
+    } else if(plan instanceof SQLiteConnectionPlan) {
+      // Database version is newer than target -- downgrade necessary.
+      ((SQLiteConnectionPlan)plan).applyDowngrade(connection);
+    } else {
+      plan.applyDowngrade(requireDatabase(plan));
+    }
+
+    if(null != deferred) {
+      endBulk((SQLiteBulkPlan)plan, deferred);
+    }
+
+    // Schema change for this step succeeded, update database's version.
+    connection.setVersion(step.getToVersion());
+
+    return step.getToVersion();
+  }
+
+  /**
+   * Drops the indexes and triggers of the tables of a bulk plan, and defers
+   * foreign key checks until the end of the transaction.
+   *
+   * @param plan about to be applied
+   * @return dropped indexes and triggers
+   */
+  private List<SQLiteSchema.Entry> beginBulk(SQLiteBulkPlan plan) {
+    final List<SQLiteSchema.Entry> deferred = new ArrayList();
+    for(String table : plan.getBulkTables()) {
+      deferred.addAll(SQLiteSchema.getIndexesAndTriggers(connection, table));
+    }
+    SQLiteSchema.drop(connection, deferred);
+    connection.execSQL("PRAGMA defer_foreign_keys = ON");
+    return deferred;
+  }
+
+  /**
+   * Creates the indexes and triggers dropped by
+   * {@link #beginBulk(SQLiteBulkPlan)} again, and checks the foreign keys of
+   * the tables of the plan. Any error rolls back the plan.
+   *
+   * @param plan which was applied
+   * @param deferred indexes and triggers to create again
+   */
+  private void endBulk(SQLiteBulkPlan plan, List<SQLiteSchema.Entry> deferred) {
+    final long startTime = System.nanoTime();
+    SQLiteSchema.create(connection, deferred);
+
+    for(String table : plan.getBulkTables()) {
+      SQLiteSchema.checkForeignKeys(connection, table);
+    }
+    connection.execSQL("PRAGMA defer_foreign_keys = OFF");
+
+    Logger.i(
+      LOG_TAG,
+      String.format(
+        Locale.US,
+        "Rebuilt %d index(es) and trigger(s) in %.3f ms: %s",
+        deferred.size(),
+        (System.nanoTime() - startTime) / 1e6,
+        getFileName()
+      )
+    );
+  }
+
+  /**
+   * Applies all chunks of the specified plan inside the current transaction,
+   * reporting progress along the way. The plan's throttle delay is ignored,
+   * since pausing would only hold the write lock longer.
+   *
+   * @param plan to apply
+   * @param oldVersion current database version
+   * @param newVersion version of the database after the plan
+   */
+  private void applyChunks(SQLiteChunkedPlan plan, int oldVersion, int newVersion) {
+    final SQLiteDatabase db = requireDatabase(plan);
+    if(0 < plan.getThrottleDelay()) {
+      Logger.w(
+        LOG_TAG,
+        "Ignoring throttle delay of " + plan.getClass().getName() +
+        " in a single transaction, the runner isn't resumable: " +
+        getFileName()
+      );
+    }
+    plan.beforeChunks(db);
+
+    long rowsDone = 0;
+    long rowsRemaining = plan.countRemaining(db);
+    notifyProgress(oldVersion, newVersion, rowsDone, rowsRemaining);
+
+    int count;
+    while(0 < (count = plan.applyNextChunk(db))) {
+      rowsDone += count;
+      rowsRemaining = Math.max(0, rowsRemaining - count);
+      notifyProgress(oldVersion, newVersion, rowsDone, rowsRemaining);
+    }
+
+    plan.afterChunks(db);
+  }
+
+  /**
+   * Takes measurements of the database: current time, page count and free
+   * list count.
+   *
+   * @return measurements
+   */
+  private long[] measure() {
+    return new long[] {
+      System.nanoTime(),
+      longForQuery("PRAGMA page_count"),
+      longForQuery("PRAGMA freelist_count")
+    };
+  }
+
+  /**
+   * Returns the number of rows changed through the connection so far. The
+   * count is kept per connection, and Android may run statements outside of
+   * a transaction on any of its connections, so this must be called inside
+   * the transaction whose changes are being counted.
+   *
+   * @return total number of changed rows
+   */
+  private long getTotalChanges() {
+    return longForQuery("SELECT total_changes()");
+  }
+
+  private long longForQuery(String sql) {
+    final SQLiteBackendCursor cursor = connection.query(sql);
+    try {
+      return cursor.moveToNext() ? cursor.getLong(0) : 0;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Returns the Android database of this runner, which plans that don't
+   * extend {@link SQLiteConnectionPlan} need.
+   *
+   * @param plan which needs the database
+   * @return database instance
+   * @throws IllegalStateException if the connection isn't an Android one
+   */
+  private SQLiteDatabase requireDatabase(SQLitePlan plan) {
+    if(null == db) {
+      throw new IllegalStateException(
+        plan.getClass().getName() + " must extend SQLiteConnectionPlan " +
+        "to run on this backend.");
+    }
+    return db;
+  }
+
+  private String getFileName() {
+    return new File(connection.getFilePath()).getName();
+  }
+
+  /**
+   * Waits for the specified time, ignoring interruptions; the thread's
+   * interrupted status is restored afterwards.
+   *
+   * @param delay time to wait, in milliseconds
+   */
+  private static void sleep(long delay) {
+    final long end = System.nanoTime() + delay * 1000000L;
+    boolean interrupted = false;
+    long remaining = delay;
+    while(0 < remaining) {
+      try {
+        Thread.sleep(remaining);
+      } catch(InterruptedException error) {
+        interrupted = true;
+      }
+      remaining = (end - System.nanoTime()) / 1000000L;
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private SQLiteStepReport addStepReport(
+    SQLitePlanRegistry.Step step,
+    long[] before,
+    long changes
+  ) {
+    final SQLiteStepReport stepReport = new SQLiteStepReport(
+      step,
+      connection.getPageSize(),
+      changes,
+      before,
+      measure()
+    );
+    stepReports.add(stepReport);
+    return stepReport;
+  }
+
+  private void notifyStepReport(SQLiteStepReport stepReport) {
+    if(handler instanceof ReportHandler) {
+      ((ReportHandler)handler).onStepReport(db, stepReport);
+    }
+  }
+
+  private void notifyProgress(
+    int oldVersion,
+    int newVersion,
+    long rowsDone,
+    long rowsRemaining
+  ) {
+    if(handler instanceof ProgressHandler) {
+      ((ProgressHandler)handler).onProgress(
+        db,
+        oldVersion,
+        newVersion,
+        rowsDone,
+        rowsRemaining
+      );
+    }
+  }
+
   /**
    * A handler interface as the upgrade/downgrade is being performed.
    */
@@ -258,18 +936,86 @@ public class SQLitePlanRunner implements Runnable {
     public void onError(final SQLiteDatabase db, Throwable error);
   }
 
+  /**
+   * A handler which is also notified about the progress of
+   * {@link SQLiteChunkedPlan} plans.
+   */
+  public static interface ProgressHandler extends Handler {
+
+    /**
+     * Notifies implementation about the progress of a chunked plan migrating
+     * the specified database from oldVersion to newVersion. Called once before
+     * the first chunk, and after every chunk.
+     *
+     * @param db database being affected
+     * @param oldVersion old schema version
+     * @param newVersion new schema version
+     * @param rowsDone number of rows migrated so far by this run
+     * @param rowsRemaining estimated number of rows still to migrate
+     */
+    public void onProgress(
+      final SQLiteDatabase db,
+      int oldVersion,
+      int newVersion,
+      long rowsDone,
+      long rowsRemaining
+    );
+  }
+
+  /**
+   * A handler which is also notified about the measurements taken while
+   * applying each plan, and about the aggregate measurements of a run.
+   */
+  public static interface ReportHandler extends Handler {
+
+    /**
+     * Notifies implementation about the measurements taken while applying a
+     * single plan. Called right after
+     * {@link #onChange(SQLiteDatabase, int, int)}.
+     *
+     * @param db database being affected
+     * @param report measurements of the plan
+     */
+    public void onStepReport(final SQLiteDatabase db, SQLiteStepReport report);
+
+    /**
+     * Notifies implementation about the aggregate measurements of a run.
+     * Called right before {@link #onChangeComplete(SQLiteDatabase, int)}.
+     *
+     * @param db database being affected
+     * @param report measurements of the run
+     */
+    public void onReport(final SQLiteDatabase db, SQLiteMigrationReport report);
+  }
+
+  /**
+   * Defines the plans and handler of a {@link SQLitePlanRunner} on behalf of
+   * code which doesn't have access to the database yet, such as
+   * {@link SQLiteManager#openDatabaseAsync(String, int, Preparer)}.
+   */
+  public static interface Preparer {
+
+    /**
+     * Prepares the specified runner by adding plans and, optionally, setting a
+     * handler. The runner will be executed afterwards if necessary.
+     *
+     * @param runner to prepare
+     */
+    public void prepare(final SQLitePlanRunner runner);
+  }
+
   /**
    * Default handler just shows a debug trace of what's happening.
    */
-  private static class DefaultHandler implements Handler {
+  private class DefaultHandler implements ReportHandler {
 
     @Override
     public void onChange(SQLiteDatabase db, int oldVersion, int newVersion) {
-      Log.i(
+      Logger.i(
         LOG_TAG,
         String.format(
           "onSchemaChange('%s') from V%d to V%d",
-          Util.getFileName(db),
+          getFileName(),
           oldVersion,
           newVersion
         )
@@ -278,11 +1024,11 @@ public class SQLitePlanRunner implements Runnable {
 
     @Override
     public void onChangeComplete(SQLiteDatabase db, int version) {
-      Log.i(
+      Logger.i(
         LOG_TAG,
         String.format(
           "onSchemaChangeComplete('%s') to V%d",
-          Util.getFileName(db),
+          getFileName(),
           version
         )
       );
@@ -290,11 +1036,24 @@ public class SQLitePlanRunner implements Runnable {
 
     @Override
     public void onError(SQLiteDatabase db, Throwable error) {
-      Log.e(
+      Logger.e(
         LOG_TAG,
-        String.format("onError('%s')", Util.getFileName(db)),
+        String.format("onError('%s')", getFileName()),
         error
       );
     }
+
+    @Override
+    public void onStepReport(SQLiteDatabase db, SQLiteStepReport report) {
+      Logger.i(
+        LOG_TAG,
+        String.format("onStepReport('%s') %s", getFileName(), report)
+      );
+    }
+
+    @Override
+    public void onReport(SQLiteDatabase db, SQLiteMigrationReport report) {
+      Logger.i(LOG_TAG, String.format("onReport(%s)", report));
+    }
   }
 }
@@ -0,0 +1,407 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.util.Log;
+import com.fine47.sqlite.aux.Util;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of connections to a single database file running in write-ahead
+ * logging (WAL) mode. The pool consists of one writer connection, which is the
+ * same {@link SQLiteDatabase} instance returned by
+ * {@link SQLiteManager#openDatabase(String)}, and a fixed number of read-only
+ * connections. Since WAL allows readers to proceed while a write is in
+ * progress, reads routed through {@link #read(Reader)} never queue behind
+ * writes and scale with the number of readers.
+ *
+ * Idle readers may be closed to save memory by {@link #closeIdleReaders()};
+ * they're opened again on demand, up to the reader count of the pool.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#openPool(String, int)}.
+ *
+ * @see SQLiteManager#openPool(String, int)
+ * @since 1.4
+ */
+public class SQLitePool {
+
+  private final static String LOG_TAG = "SQLitePool";
+
+  private final SQLiteDatabase writer;
+  private final int readerCount;
+  private final CursorFactory cursor;
+  private final SQLiteOptions options;
+  private final LinkedBlockingDeque<SQLiteDatabase> idleReaders;
+
+  // Number of readers which are currently open, idle or in use.
+  private int openReaders;
+
+  private volatile boolean closed;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  SQLitePool(
+    SQLiteDatabase writer,
+    int readerCount,
+    CursorFactory cursor,
+    SQLiteOptions options
+  ) {
+    if(1 > readerCount) {
+      throw new IllegalArgumentException(
+        "Reader count must be equal or greater than 1.");
+    }
+
+    // Switch the writer to WAL mode; this is persisted in the database file so
+    // readers opened afterwards will use WAL as well.
+    if(!Util.isWriteAheadLoggingEnabled(writer) &&
+      !writer.enableWriteAheadLogging()
+    ) {
+      throw new SQLiteException(
+        "Unable to enable write-ahead logging for: " + writer.getPath());
+    }
+
+    this.writer = writer;
+    this.readerCount = readerCount;
+    this.cursor = cursor;
+    this.options = options;
+    this.idleReaders = new LinkedBlockingDeque();
+
+    try {
+      while(reserveReader()) {
+        idleReaders.add(openReader());
+      }
+    } catch(SQLiteException error) {
+      closeReaders();
+      throw error;
+    }
+
+    Log.i(
+      LOG_TAG,
+      "Opened pool with " + readerCount + " reader(s): " + writer.getPath()
+    );
+  }
+
+  /**
+   * Returns the writer connection of this pool. All writes must go through
+   * this connection.
+   *
+   * @return writer connection
+   */
+  public SQLiteDatabase getWriter() {
+    return writer;
+  }
+
+  /**
+   * Returns the number of read-only connections in this pool.
+   *
+   * @return number of readers
+   */
+  public int getReaderCount() {
+    return readerCount;
+  }
+
+  /**
+   * Returns the number of read-only connections which are currently open,
+   * whether idle or in use.
+   *
+   * @return number of open readers
+   */
+  public synchronized int getOpenReaderCount() {
+    return openReaders;
+  }
+
+  /**
+   * Returns the number of read-only connections which are currently not in
+   * use.
+   *
+   * @return number of idle readers
+   */
+  public int getIdleReaderCount() {
+    return idleReaders.size();
+  }
+
+  /**
+   * Checks whether this pool is still open. A pool is closed either explicitly
+   * or when its writer connection is closed.
+   *
+   * @return TRUE if pool is open, FALSE otherwise
+   */
+  public boolean isOpen() {
+    return !closed && writer.isOpen();
+  }
+
+  /**
+   * Returns the time this pool was last used, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * Acquires a free read-only connection, waiting for one to become free if
+   * necessary. The connection must be returned by calling
+   * {@link #releaseReader(SQLiteDatabase)} when done.
+   *
+   * @return read-only connection
+   */
+  public SQLiteDatabase acquireReader() {
+    boolean interrupted = false;
+    try {
+      while(true) {
+        try {
+          final SQLiteDatabase reader = acquireReader(1, TimeUnit.SECONDS);
+          if(null != reader) {
+            return reader;
+          }
+        } catch(InterruptedException ignored) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if(interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Acquires a free read-only connection, waiting up to the specified time for
+   * one to become free. The connection must be returned by calling
+   * {@link #releaseReader(SQLiteDatabase)} when done.
+   *
+   * @param timeout how long to wait for a free reader
+   * @param unit of the timeout
+   * @return read-only connection, or NULL if none became free in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public SQLiteDatabase acquireReader(long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    ensureOpen();
+    lastUsed = SystemClock.elapsedRealtime();
+
+    // Most recently used readers first, their page caches are warmer.
+    SQLiteDatabase reader = idleReaders.pollFirst();
+    if(null == reader) {
+      // Reopen a reader which was closed while idle, or wait for one.
+      reader = reserveReader() ? openReader() : null;
+      if(null == reader) {
+        reader = idleReaders.pollFirst(timeout, unit);
+      }
+    }
+    if(null != reader && closed) {
+      // The pool was closed while waiting, and its idle readers are drained
+      // already, so this one wouldn't be closed by anyone else.
+      closeReader(reader);
+      ensureOpen();
+    }
+    return reader;
+  }
+
+  /**
+   * Returns a read-only connection to this pool, previously acquired by calling
+   * {@link #acquireReader()}.
+   *
+   * @param reader to return
+   */
+  public void releaseReader(SQLiteDatabase reader) {
+    assert null != reader;
+    if(closed) {
+      closeReader(reader);
+    } else {
+      idleReaders.offerFirst(reader);
+
+      // The pool may have been closed, and its idle readers drained, right
+      // before this one was returned; nobody else would close it then.
+      if(closed) {
+        closeReaders();
+      }
+    }
+  }
+
+  /**
+   * Runs the specified {@link Reader} on whichever read-only connection is
+   * free, and returns its result.
+   *
+   * @param <T> result type of the reader
+   * @param reader to run
+   * @return result of the reader
+   */
+  public <T> T read(Reader<T> reader) {
+    final SQLiteDatabase db = acquireReader();
+    try {
+      return reader.read(db);
+    } finally {
+      releaseReader(db);
+    }
+  }
+
+  /**
+   * Closes all read-only connections of this pool. Readers which are in use
+   * are closed as soon as they're released. The writer connection is owned by
+   * {@link SQLiteManager} and is left open.
+   */
+  public void close() {
+    if(!closed) {
+      closed = true;
+      closeReaders();
+      Log.i(LOG_TAG, "Closed pool: " + Util.getFileName(writer));
+    }
+  }
+
+  /**
+   * Shrinks the page cache of the idle read-only connections, releasing as
+   * much memory as possible without closing them.
+   */
+  public void shrinkMemory() {
+    SQLiteDatabase reader;
+    final int count = idleReaders.size();
+    for(int index = 0; index < count; index++) {
+      if(null == (reader = idleReaders.pollLast())) {
+        break;
+      }
+      try {
+        Util.pragma(reader, "shrink_memory");
+      } finally {
+        releaseReader(reader);
+      }
+    }
+  }
+
+  /**
+   * Closes the read-only connections which are currently not in use. They're
+   * opened again when needed by {@link #acquireReader()}.
+   *
+   * @return number of closed readers
+   */
+  public int closeIdleReaders() {
+    final int count = closeReaders();
+    if(0 < count) {
+      Log.i(
+        LOG_TAG,
+        "Closed " + count + " idle reader(s): " + Util.getFileName(writer)
+      );
+    }
+    return count;
+  }
+
+  private int closeReaders() {
+    int count = 0;
+    SQLiteDatabase reader;
+    while(null != (reader = idleReaders.poll())) {
+      closeReader(reader);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Reserves a slot for a new reader if fewer readers than the reader count
+   * are open.
+   *
+   * @return TRUE if a slot was reserved, FALSE otherwise
+   */
+  private synchronized boolean reserveReader() {
+    if(openReaders < readerCount) {
+      openReaders++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Opens a new reader in a slot reserved by {@link #reserveReader()}. The
+   * slot is released if the reader can't be opened.
+   *
+   * @return new read-only connection
+   */
+  private SQLiteDatabase openReader() {
+    final SQLiteDatabase reader;
+    try {
+      reader = SQLiteDatabase.openDatabase(
+        writer.getPath(),
+        cursor,
+        SQLiteDatabase.OPEN_READONLY
+      );
+    } catch(RuntimeException error) {
+      synchronized(this) {
+        openReaders--;
+      }
+      throw error;
+    }
+
+    if(null != options) {
+      try {
+        options.applyConnection(reader);
+      } catch(RuntimeException error) {
+        closeReader(reader);
+        throw error;
+      }
+    }
+    return reader;
+  }
+
+  private void closeReader(SQLiteDatabase reader) {
+    reader.close();
+    synchronized(this) {
+      openReaders--;
+    }
+  }
+
+  private void ensureOpen() {
+    if(!isOpen()) {
+      throw new IllegalStateException(
+        "Pool has been closed: " + Util.getFileName(writer));
+    }
+  }
+
+  /**
+   * A unit of read-only work to execute on a pooled connection.
+   *
+   * @param <T> result type of the read
+   */
+  public static interface Reader<T> {
+
+    /**
+     * Reads from the specified read-only connection. Cursors obtained from the
+     * connection must be fully consumed and closed before returning.
+     *
+     * @param db read-only connection
+     * @return result of the read
+     */
+    public T read(final SQLiteDatabase db);
+  }
+}
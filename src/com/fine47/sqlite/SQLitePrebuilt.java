@@ -0,0 +1,268 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.database.sqlite.SQLiteException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * A prebuilt database image, shipped in the APK's assets or stored in a local
+ * file, which is installed in place of a brand new, empty database.
+ *
+ * The image is copied channel-to-channel into a temporary file next to the
+ * database, synced to disk, optionally verified against its SHA-256 checksum
+ * and then renamed into place, so a database file is either missing or
+ * complete. The version of the installed database is the one stored in the
+ * image, so only plans after it are applied.
+ *
+ * @see SQLiteManager#setPrebuilt(String, SQLitePrebuilt)
+ * @since 1.4
+ */
+public class SQLitePrebuilt {
+
+  // Suffix of the temporary file an image is copied to.
+  private final static String TEMP_SUFFIX = ".prebuilt";
+
+  // Size of the buffer used when computing checksums.
+  private final static int BUFFER_SIZE = 64 * 1024;
+
+  private final String assetPath;
+  private final File file;
+  private String sha256;
+
+  private SQLitePrebuilt(String assetPath, File file) {
+    this.assetPath = assetPath;
+    this.file = file;
+  }
+
+  /**
+   * Returns a prebuilt image stored in the APK's assets. Images stored
+   * uncompressed are copied without going through the Java heap; compressed
+   * images are streamed.
+   *
+   * @param assetPath path of the image inside the assets directory
+   * @return {@link SQLitePrebuilt} instance
+   */
+  public static SQLitePrebuilt fromAsset(String assetPath) {
+    assert null != assetPath;
+    return new SQLitePrebuilt(assetPath, null);
+  }
+
+  /**
+   * Returns a prebuilt image stored in a local file, such as one downloaded
+   * beforehand. The file is copied, not moved.
+   *
+   * @param file of the image
+   * @return {@link SQLitePrebuilt} instance
+   */
+  public static SQLitePrebuilt fromFile(File file) {
+    assert null != file;
+    return new SQLitePrebuilt(null, file);
+  }
+
+  /**
+   * Defines the expected SHA-256 checksum of the image, as a hexadecimal
+   * string. Installation fails if the copied image doesn't match it.
+   *
+   * @param sha256 expected checksum, NULL to skip verification
+   * @return this instance (suitable for chaining)
+   */
+  public SQLitePrebuilt setSha256(String sha256) {
+    this.sha256 = null == sha256 ? null : sha256.toLowerCase(Locale.US);
+    return this;
+  }
+
+  /**
+   * Returns the expected SHA-256 checksum of the image.
+   *
+   * @return expected checksum, or NULL if not verified
+   */
+  public String getSha256() {
+    return sha256;
+  }
+
+  @Override
+  public String toString() {
+    return null == file ? "asset:" + assetPath : file.getPath();
+  }
+
+  /**
+   * Installs this image at the specified normalized file path, which must not
+   * exist yet.
+   *
+   * @param ctx execution context
+   * @param filePath normalized file path of database file
+   * @return size of the installed image, in bytes
+   */
+  long install(Context ctx, String filePath) {
+    final File tempFile = new File(filePath + TEMP_SUFFIX);
+    try {
+      final long size;
+      final FileChannel out = new FileOutputStream(tempFile).getChannel();
+      try {
+        size = null == file ? copyAsset(ctx.getAssets(), out) : copyFile(out);
+        out.force(true);
+      } finally {
+        out.close();
+      }
+
+      if(null != sha256) {
+        final String actual = digest(tempFile);
+        if(!sha256.equals(actual)) {
+          throw new IOException(
+            "Checksum mismatch, expected " + sha256 + " but got " + actual);
+        }
+      }
+
+      // Journals left over from a previous database would be replayed into
+      // the image.
+      new File(filePath + "-journal").delete();
+      new File(filePath + "-wal").delete();
+      new File(filePath + "-shm").delete();
+
+      if(!tempFile.renameTo(new File(filePath))) {
+        throw new IOException("Unable to rename " + tempFile);
+      }
+      return size;
+    } catch(IOException error) {
+      tempFile.delete();
+      final SQLiteException wrapped = new SQLiteException(
+        "Unable to install prebuilt database " + this + ": " +
+        error.getMessage());
+      wrapped.initCause(error);
+      throw wrapped;
+    }
+  }
+
+  private long copyAsset(AssetManager assets, FileChannel out)
+    throws IOException
+  {
+    final AssetFileDescriptor descriptor;
+    try {
+      descriptor = assets.openFd(assetPath);
+    } catch(FileNotFoundException compressed) {
+      // Compressed assets have no file descriptor of their own.
+      final ReadableByteChannel in = Channels.newChannel(assets.open(assetPath));
+      try {
+        long size = 0;
+        long transferred;
+        while(0 < (transferred = out.transferFrom(in, size, BUFFER_SIZE))) {
+          size += transferred;
+        }
+        return size;
+      } finally {
+        in.close();
+      }
+    }
+
+    try {
+      final FileChannel in = descriptor.createInputStream().getChannel();
+      try {
+        return transfer(
+          in,
+          descriptor.getStartOffset(),
+          descriptor.getLength(),
+          out
+        );
+      } finally {
+        in.close();
+      }
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  private long copyFile(FileChannel out) throws IOException {
+    final FileChannel in = new FileInputStream(file).getChannel();
+    try {
+      return transfer(in, 0, in.size(), out);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long transfer(
+    FileChannel in,
+    long offset,
+    long length,
+    FileChannel out
+  ) throws IOException {
+    long size = 0;
+    while(size < length) {
+      final long transferred =
+        in.transferTo(offset + size, length - size, out);
+      if(0 >= transferred) {
+        throw new IOException(
+          "Image truncated after " + size + " of " + length + " bytes");
+      }
+      size += transferred;
+    }
+    return size;
+  }
+
+  private static String digest(File file) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch(NoSuchAlgorithmException error) {
+      throw new IOException(error.getMessage());
+    }
+
+    final FileChannel in = new FileInputStream(file).getChannel();
+    try {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      while(0 <= in.read(buffer)) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    } finally {
+      in.close();
+    }
+
+    final StringBuilder hex = new StringBuilder(64);
+    for(byte b : digest.digest()) {
+      hex.append(String.format(Locale.US, "%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+}
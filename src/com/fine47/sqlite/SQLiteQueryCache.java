@@ -0,0 +1,674 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+import com.fine47.sqlite.aux.Util;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of query results for a single {@link SQLiteDatabase}, keyed
+ * by SQL text and bind arguments. Each result records the tables it was read
+ * from, found by looking at the program SQLite compiles for the query, along
+ * with a generation number for each of them.
+ *
+ * Writes applied by the database's {@link SQLiteWriteQueue} bump the
+ * generation of the tables they write to, which invalidates only the results
+ * read from them. Writes made by other means aren't noticed, so they must be
+ * followed by a call to {@link #invalidate(String...)} or
+ * {@link #invalidateAll()}.
+ *
+ * Results are kept in memory up to a budget, in bytes, evicting the least
+ * recently used ones. Only deterministic queries should be cached: results of
+ * queries using functions such as random() or date('now') are reused as-is.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#getQueryCache(String)}, and are closed along with
+ * their database by {@link SQLiteManager#closeDatabase(String)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteQueryCache {
+
+  private final static String LOG_TAG = "SQLiteQueryCache";
+
+  /**
+   * Default memory budget of a cache, in bytes.
+   */
+  public final static long DEFAULT_BUDGET = 1024 * 1024;
+
+  // Rough sizes, in bytes, used to estimate the memory held by results.
+  private final static int OBJECT_OVERHEAD = 16;
+  private final static int REFERENCE_SIZE = 4;
+
+  // Marks queries whose tables can't be tracked, and writes which may have
+  // changed any table.
+  private final static Set<String> UNKNOWN = new HashSet();
+
+  // Marks writes which changed the schema.
+  private final static Set<String> SCHEMA = new HashSet();
+
+  private final SQLiteDatabase db;
+  private final SQLiteConnection connection;
+  private final long budget;
+  private final LinkedHashMap<Key, Result> results;
+  private final HashMap<String, Long> generations;
+  private final HashMap<String, Set<String>> readTables;
+  private final HashMap<String, Set<String>> writtenTables;
+  private HashMap<Long, String> rootPages;
+
+  private long epoch;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long invalidations;
+  private long evictions;
+  private boolean closed;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  SQLiteQueryCache(SQLiteDatabase db, long budget) {
+    if(1 > budget) {
+      throw new IllegalArgumentException(
+        "Budget must be equal or greater than 1.");
+    }
+
+    this.db = db;
+    this.connection = SQLiteAndroidBackend.wrap(db);
+    this.budget = budget;
+    this.results = new LinkedHashMap(16, 0.75f, true);
+    this.generations = new HashMap();
+    this.readTables = new HashMap();
+    this.writtenTables = new HashMap();
+  }
+
+  /**
+   * Returns the database this cache holds query results of.
+   *
+   * @return database instance
+   */
+  public SQLiteDatabase getDatabase() {
+    return db;
+  }
+
+  /**
+   * Returns the maximum memory held by the results in this cache.
+   *
+   * @return budget, in bytes
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Returns the estimated memory held by the results in this cache.
+   *
+   * @return memory used, in bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of results currently kept in this cache.
+   *
+   * @return cache size
+   */
+  public synchronized int size() {
+    return results.size();
+  }
+
+  /**
+   * Returns the number of times a valid result was found in this cache.
+   *
+   * @return number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of times a query had to be run.
+   *
+   * @return number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of results found in this cache which were discarded
+   * since their tables had been written to.
+   *
+   * @return number of invalidated results
+   */
+  public synchronized long getInvalidations() {
+    return invalidations;
+  }
+
+  /**
+   * Returns the number of results discarded to stay within budget.
+   *
+   * @return number of evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns the ratio of queries answered by this cache.
+   *
+   * @return hit rate, between 0 and 1
+   */
+  public synchronized double getHitRate() {
+    final long lookups = hits + misses;
+    return 0 == lookups ? 0 : (double)hits / lookups;
+  }
+
+  /**
+   * Checks whether this cache is still usable; a cache is closed either
+   * explicitly or when its database is closed.
+   *
+   * @return TRUE if cache is open, FALSE otherwise
+   */
+  public synchronized boolean isOpen() {
+    return !closed && db.isOpen();
+  }
+
+  /**
+   * Returns the time this cache was last used, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * Runs the specified query, or returns its cached result if none of the
+   * tables it reads has been written to since. The returned cursor is a copy
+   * of the result and must be closed by the caller.
+   *
+   * @param sql of the query
+   * @param args to bind to the query
+   * @return cursor over the result
+   */
+  public Cursor query(String sql, Object... args) {
+    lastUsed = SystemClock.elapsedRealtime();
+    final Key key = new Key(sql, null == args ? new Object[0] : args);
+
+    final Set<String> tables;
+    final long queryEpoch;
+    final long[] queryGenerations;
+    synchronized(this) {
+      ensureOpen();
+      final Result result = results.get(key);
+      if(null != result) {
+        if(isValid(result)) {
+          hits++;
+          return result.newCursor();
+        }
+        invalidations++;
+        remove(key);
+      }
+      misses++;
+      tables = readTables.get(sql);
+      queryEpoch = epoch;
+      queryGenerations = null == tables ? null : getGenerations(tables);
+    }
+
+    // Generations are taken before running the query, so writes committed
+    // while it runs invalidate its result.
+    final Result result = run(key, tables, queryEpoch, queryGenerations);
+
+    synchronized(this) {
+      if(!closed && null != result.tables && result.bytes <= budget) {
+        final Result previous = results.put(key, result);
+        if(null != previous) {
+          bytes -= previous.bytes;
+        }
+        bytes += result.bytes;
+        trimToBudget();
+      }
+    }
+    return result.newCursor();
+  }
+
+  /**
+   * Discards the results read from the specified tables.
+   *
+   * @param tables names of tables which were written to
+   */
+  public synchronized void invalidate(String... tables) {
+    for(String table : tables) {
+      final String name = table.toLowerCase(Locale.US);
+      final Long generation = generations.get(name);
+      generations.put(name, null == generation ? 1 : 1 + generation);
+    }
+  }
+
+  /**
+   * Discards all results, for example after writes to unknown tables.
+   */
+  public synchronized void invalidateAll() {
+    epoch++;
+  }
+
+  /**
+   * Discards all results and frees their memory.
+   *
+   * @return estimated memory freed, in bytes
+   */
+  public synchronized long clear() {
+    final long freed = bytes;
+    results.clear();
+    bytes = 0;
+    return freed;
+  }
+
+  /**
+   * Discards all results; this cache can't be used afterwards.
+   */
+  public void close() {
+    synchronized(this) {
+      if(closed) {
+        return;
+      }
+      closed = true;
+      clear();
+    }
+
+    Log.i(
+      LOG_TAG,
+      String.format(
+        Locale.US,
+        "Closed cache for '%s': %d hit(s), %d miss(es), %d invalidation(s), " +
+          "%d eviction(s), hit rate %.2f",
+        Util.getFileName(db),
+        getHits(),
+        getMisses(),
+        getInvalidations(),
+        getEvictions(),
+        getHitRate()
+      )
+    );
+  }
+
+  /**
+   * Discards all results, along with the root pages and analyses of
+   * statements, which are stale after a schema change.
+   */
+  synchronized void invalidateSchema() {
+    rootPages = null;
+    readTables.clear();
+    writtenTables.clear();
+    invalidateAll();
+  }
+
+  /**
+   * Invalidates the results read from the tables written to by the specified
+   * statements, which have just been committed.
+   *
+   * @param sqls of the committed statements
+   */
+  void invalidateWrites(Collection<String> sqls) {
+    final Set<String> tables = new HashSet();
+    for(String sql : sqls) {
+      Set<String> written;
+      synchronized(this) {
+        written = writtenTables.get(sql);
+      }
+      if(null == written) {
+        written = explainWrite(sql);
+        synchronized(this) {
+          if(SCHEMA == written) {
+            invalidateSchema();
+          } else {
+            writtenTables.put(sql, written);
+          }
+        }
+      }
+      if(UNKNOWN == written || SCHEMA == written) {
+        invalidateAll();
+        return;
+      }
+      tables.addAll(written);
+    }
+    invalidate(tables.toArray(new String[tables.size()]));
+  }
+
+  private Result run(
+    Key key,
+    Set<String> tables,
+    long queryEpoch,
+    long[] queryGenerations
+  ) {
+    // Find out which tables the query reads the first time it's run.
+    Set<String> queryTables = tables;
+    long[] generationsBefore = queryGenerations;
+    if(null == queryTables) {
+      queryTables = explainRead(key.sql);
+      synchronized(this) {
+        readTables.put(key.sql, queryTables);
+        generationsBefore = getGenerations(queryTables);
+        if(queryEpoch != epoch) {
+          queryTables = UNKNOWN;
+        }
+      }
+    }
+
+    final ArrayList<Object[]> rows = new ArrayList();
+    final String[] columns;
+    long resultBytes = OBJECT_OVERHEAD + 2 * key.sql.length();
+    final SQLiteBackendCursor cursor = connection.query(key.sql, key.args);
+    try {
+      columns = new String[cursor.getColumnCount()];
+      for(int index = 0; index < columns.length; index++) {
+        columns[index] = cursor.getColumnName(index);
+        resultBytes += sizeOf(columns[index]);
+      }
+      while(cursor.moveToNext()) {
+        final Object[] row = new Object[columns.length];
+        resultBytes += OBJECT_OVERHEAD + REFERENCE_SIZE * row.length;
+        for(int index = 0; index < row.length; index++) {
+          row[index] = cursor.getValue(index);
+          resultBytes += sizeOf(row[index]);
+        }
+        rows.add(row);
+      }
+    } finally {
+      cursor.close();
+    }
+
+    return new Result(
+      columns,
+      rows,
+      UNKNOWN == queryTables ? null : queryTables.toArray(
+        new String[queryTables.size()]),
+      queryEpoch,
+      generationsBefore,
+      resultBytes
+    );
+  }
+
+  private boolean isValid(Result result) {
+    if(result.epoch != epoch) {
+      return false;
+    }
+    for(int index = 0; index < result.tables.length; index++) {
+      if(result.generations[index] != getGeneration(result.tables[index])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long getGeneration(String table) {
+    final Long generation = generations.get(table);
+    return null == generation ? 0 : generation;
+  }
+
+  private long[] getGenerations(Set<String> tables) {
+    final long[] values = new long[tables.size()];
+    int index = 0;
+    for(String table : tables) {
+      values[index++] = getGeneration(table);
+    }
+    return values;
+  }
+
+  private void remove(Key key) {
+    final Result result = results.remove(key);
+    if(null != result) {
+      bytes -= result.bytes;
+    }
+  }
+
+  private void trimToBudget() {
+    final Iterator<Result> iterator = results.values().iterator();
+    while(budget < bytes && iterator.hasNext()) {
+      bytes -= iterator.next().bytes;
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private void ensureOpen() {
+    if(!isOpen()) {
+      throw new IllegalStateException(
+        "Query cache has been closed: " + Util.getFileName(db));
+    }
+  }
+
+  /**
+   * Returns the tables read by the specified query, or {@link #UNKNOWN} if
+   * they can't be tracked: the query reads attached or virtual tables, or
+   * writes to the database.
+   */
+  private Set<String> explainRead(String sql) {
+    final Set<String> tables = new HashSet();
+    final SQLiteBackendCursor cursor = connection.query("EXPLAIN " + sql);
+    try {
+      while(cursor.moveToNext()) {
+        final String opcode = cursor.getString(1);
+        if("OpenRead".equals(opcode) || "ReopenIdx".equals(opcode)) {
+          final String table = 0 == cursor.getLong(4)
+            ? getTable(cursor.getLong(3))
+            : null;
+          if(null == table) {
+            return UNKNOWN;
+          }
+          tables.add(table);
+        } else if("OpenWrite".equals(opcode) || "VOpen".equals(opcode)) {
+          return UNKNOWN;
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+    return tables;
+  }
+
+  /**
+   * Returns the tables written to by the specified statement, {@link #SCHEMA}
+   * if it changes the schema, or {@link #UNKNOWN} if any table may have been
+   * written to: the statement fires triggers or foreign key actions, or it
+   * can't be analyzed.
+   */
+  private Set<String> explainWrite(String sql) {
+    final Set<String> tables = new HashSet();
+    try {
+      final SQLiteBackendCursor cursor = connection.query("EXPLAIN " + sql);
+      try {
+        while(cursor.moveToNext()) {
+          final String opcode = cursor.getString(1);
+          long rootPage = -1;
+          if("OpenWrite".equals(opcode)) {
+            if(0 != cursor.getLong(4)) {
+              return UNKNOWN;
+            }
+            rootPage = cursor.getLong(3);
+          } else if("Clear".equals(opcode)) {
+            if(0 != cursor.getLong(3)) {
+              return UNKNOWN;
+            }
+            rootPage = cursor.getLong(2);
+          } else if("Destroy".equals(opcode) || "CreateBtree".equals(opcode) ||
+            "ParseSchema".equals(opcode)
+          ) {
+            return SCHEMA;
+          } else if("Program".equals(opcode) || "VUpdate".equals(opcode)) {
+            return UNKNOWN;
+          }
+
+          if(0 <= rootPage) {
+            if(1 == rootPage) {
+              return SCHEMA;
+            }
+            final String table = getTable(rootPage);
+            if(null == table) {
+              return UNKNOWN;
+            }
+            tables.add(table);
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    } catch(RuntimeException error) {
+      Log.w(LOG_TAG, "Unable to analyze write: " + sql, error);
+      return UNKNOWN;
+    }
+    return tables;
+  }
+
+  /**
+   * Returns the name of the table stored at the specified root page; for an
+   * index, the name of its table.
+   */
+  private String getTable(long rootPage) {
+    HashMap<Long, String> pages;
+    synchronized(this) {
+      pages = rootPages;
+    }
+
+    if(null == pages) {
+      pages = new HashMap();
+      final SQLiteBackendCursor cursor = connection.query(
+        "SELECT rootpage, tbl_name FROM sqlite_master WHERE rootpage > 0");
+      try {
+        while(cursor.moveToNext()) {
+          pages.put(
+            cursor.getLong(0),
+            cursor.getString(1).toLowerCase(Locale.US)
+          );
+        }
+      } finally {
+        cursor.close();
+      }
+      synchronized(this) {
+        rootPages = pages;
+      }
+    }
+    return pages.get(rootPage);
+  }
+
+  private static long sizeOf(Object value) {
+    if(value instanceof String) {
+      return OBJECT_OVERHEAD + 2 * ((String)value).length();
+    }
+    if(value instanceof byte[]) {
+      return OBJECT_OVERHEAD + ((byte[])value).length;
+    }
+    return null == value ? 0 : OBJECT_OVERHEAD;
+  }
+
+  /**
+   * Identifies a query by its SQL text and bind arguments.
+   */
+  private static class Key {
+
+    final String sql;
+    final Object[] args;
+    final int hashCode;
+
+    Key(String sql, Object[] args) {
+      this.sql = sql;
+      this.args = args.clone();
+      this.hashCode = 31 * sql.hashCode() + Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if(!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key)other;
+      return hashCode == key.hashCode && sql.equals(key.sql) &&
+        Arrays.deepEquals(args, key.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A query result along with the generations of the tables it was read from.
+   */
+  private static class Result {
+
+    final String[] columns;
+    final ArrayList<Object[]> rows;
+    final String[] tables;
+    final long epoch;
+    final long[] generations;
+    final long bytes;
+
+    Result(
+      String[] columns,
+      ArrayList<Object[]> rows,
+      String[] tables,
+      long epoch,
+      long[] generations,
+      long bytes
+    ) {
+      this.columns = columns;
+      this.rows = rows;
+      this.tables = tables;
+      this.epoch = epoch;
+      this.generations = generations;
+      this.bytes = bytes;
+    }
+
+    Cursor newCursor() {
+      final MatrixCursor cursor = new MatrixCursor(columns, rows.size());
+      for(Object[] row : rows) {
+        cursor.addRow(row);
+      }
+      return cursor;
+    }
+  }
+}
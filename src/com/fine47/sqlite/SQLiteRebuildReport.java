@@ -0,0 +1,159 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measurements taken by {@link SQLiteTableRebuild} while rebuilding a table:
+ * which columns changed, how many rows were copied and how fast.
+ *
+ * @since 1.4
+ */
+public class SQLiteRebuildReport {
+
+  private final String table;
+  private final boolean rebuilt;
+  private final List<String> addedColumns;
+  private final List<String> droppedColumns;
+  private final long rows;
+  private final int chunks;
+  private final long wallNanos;
+
+  SQLiteRebuildReport(
+    String table,
+    boolean rebuilt,
+    List<String> addedColumns,
+    List<String> droppedColumns,
+    long rows,
+    int chunks,
+    long wallNanos
+  ) {
+    this.table = table;
+    this.rebuilt = rebuilt;
+    this.addedColumns = Collections.unmodifiableList(addedColumns);
+    this.droppedColumns = Collections.unmodifiableList(droppedColumns);
+    this.rows = rows;
+    this.chunks = chunks;
+    this.wallNanos = wallNanos;
+  }
+
+  /**
+   * Returns the name of the rebuilt table.
+   *
+   * @return table name
+   */
+  public String getTable() {
+    return table;
+  }
+
+  /**
+   * Checks whether the table was rebuilt. A table whose live schema already
+   * matches the declared one is left alone.
+   *
+   * @return TRUE if rebuilt, FALSE otherwise
+   */
+  public boolean isRebuilt() {
+    return rebuilt;
+  }
+
+  /**
+   * Returns the columns which didn't exist in the live table.
+   *
+   * @return added column names
+   */
+  public List<String> getAddedColumns() {
+    return addedColumns;
+  }
+
+  /**
+   * Returns the live columns which don't exist in the declared table.
+   *
+   * @return dropped column names
+   */
+  public List<String> getDroppedColumns() {
+    return droppedColumns;
+  }
+
+  /**
+   * Returns the number of rows copied.
+   *
+   * @return number of rows
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * Returns the number of chunks the rows were copied in.
+   *
+   * @return number of chunks
+   */
+  public int getChunks() {
+    return chunks;
+  }
+
+  /**
+   * Returns the wall time it took to rebuild the table, including its indexes
+   * and triggers, in nanoseconds.
+   *
+   * @return wall time
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /**
+   * Returns the number of rows copied per second.
+   *
+   * @return throughput, 0 if nothing was copied
+   */
+  public double getRowsPerSecond() {
+    return 0 == wallNanos ? 0 : rows * 1e9 / wallNanos;
+  }
+
+  @Override
+  public String toString() {
+    if(!rebuilt) {
+      return table + ": unchanged";
+    }
+    return String.format(
+      Locale.US,
+      "%s: %d row(s) in %d chunk(s), %.3f ms, %.0f rows/s, added %s, dropped %s",
+      table,
+      rows,
+      chunks,
+      wallNanos / 1e6,
+      getRowsPerSecond(),
+      addedColumns,
+      droppedColumns
+    );
+  }
+}
@@ -0,0 +1,451 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers to inspect and rebuild the schema of a database through a
+ * {@link SQLiteConnection}, using the objects recorded in sqlite_master.
+ *
+ * @since 1.4
+ */
+public class SQLiteSchema {
+
+  private SQLiteSchema() {
+  }
+
+  /**
+   * Returns the indexes and triggers of the specified table, in the order they
+   * were created. Indexes created implicitly for PRIMARY KEY and UNIQUE
+   * constraints aren't included since they can't be dropped.
+   *
+   * @param connection to inspect
+   * @param table name of the table
+   * @return indexes and triggers of the table
+   */
+  public static List<Entry> getIndexesAndTriggers(
+    SQLiteConnection connection,
+    String table
+  ) {
+    final ArrayList<Entry> entries = new ArrayList();
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT type, name, tbl_name, sql FROM sqlite_master " +
+        "WHERE type IN ('index', 'trigger') AND sql IS NOT NULL " +
+        "AND tbl_name = ? COLLATE NOCASE ORDER BY rowid",
+      table
+    );
+    try {
+      while(cursor.moveToNext()) {
+        entries.add(new Entry(
+          cursor.getString(0),
+          cursor.getString(1),
+          cursor.getString(2),
+          cursor.getString(3)
+        ));
+      }
+    } finally {
+      cursor.close();
+    }
+    return entries;
+  }
+
+  /**
+   * Checks whether the specified table exists.
+   *
+   * @param connection to inspect
+   * @param table name of the table
+   * @return TRUE if the table exists, FALSE otherwise
+   */
+  public static boolean hasTable(SQLiteConnection connection, String table) {
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT 1 FROM sqlite_master WHERE type = 'table' " +
+        "AND name = ? COLLATE NOCASE",
+      table
+    );
+    try {
+      return cursor.moveToNext();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Returns the SQL statement which created the specified table.
+   *
+   * @param connection to inspect
+   * @param table name of the table
+   * @return CREATE TABLE statement, or NULL if the table doesn't exist
+   */
+  public static String getTableSql(SQLiteConnection connection, String table) {
+    final SQLiteBackendCursor cursor = connection.query(
+      "SELECT sql FROM sqlite_master WHERE type = 'table' " +
+        "AND name = ? COLLATE NOCASE",
+      table
+    );
+    try {
+      return cursor.moveToNext() ? cursor.getString(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Returns the columns of the specified table, in their declared order.
+   *
+   * @param connection to inspect
+   * @param table name of the table
+   * @return columns of the table, empty if it doesn't exist
+   */
+  public static List<Column> getColumns(
+    SQLiteConnection connection,
+    String table
+  ) {
+    final ArrayList<Column> columns = new ArrayList();
+    final SQLiteBackendCursor cursor =
+      connection.query("PRAGMA table_info(" + quote(table) + ")");
+    try {
+      while(cursor.moveToNext()) {
+        columns.add(new Column(
+          cursor.getString(1),
+          cursor.getString(2),
+          0 != cursor.getInt(3),
+          cursor.getString(4),
+          cursor.getInt(5)
+        ));
+      }
+    } finally {
+      cursor.close();
+    }
+    return columns;
+  }
+
+  /**
+   * Returns the names of the tables, other than the specified one, whose
+   * foreign keys reference the specified table.
+   *
+   * @param connection to inspect
+   * @param table name of the referenced table
+   * @return names of referencing tables
+   */
+  public static List<String> getReferencingTables(
+    SQLiteConnection connection,
+    String table
+  ) {
+    final ArrayList<String> tables = new ArrayList();
+    final ArrayList<String> names = new ArrayList();
+    SQLiteBackendCursor cursor = connection.query(
+      "SELECT name FROM sqlite_master WHERE type = 'table' " +
+        "AND name != ? COLLATE NOCASE",
+      table
+    );
+    try {
+      while(cursor.moveToNext()) {
+        names.add(cursor.getString(0));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    for(String name : names) {
+      cursor = connection.query("PRAGMA foreign_key_list(" + quote(name) + ")");
+      try {
+        while(cursor.moveToNext()) {
+          if(table.equalsIgnoreCase(cursor.getString(2))) {
+            tables.add(name);
+            break;
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Drops the specified indexes and triggers.
+   *
+   * @param connection to change
+   * @param entries to drop
+   */
+  public static void drop(SQLiteConnection connection, List<Entry> entries) {
+    for(Entry entry : entries) {
+      entry.drop(connection);
+    }
+  }
+
+  /**
+   * Creates the specified indexes and triggers again, from the SQL they were
+   * originally created with, and verifies they exist afterwards.
+   *
+   * @param connection to change
+   * @param entries to create
+   * @throws RuntimeException if an entry can't be created
+   */
+  public static void create(SQLiteConnection connection, List<Entry> entries) {
+    for(Entry entry : entries) {
+      entry.create(connection);
+    }
+  }
+
+  /**
+   * Checks the foreign keys of the specified table. Does nothing if foreign
+   * keys aren't enforced by the connection.
+   *
+   * @param connection to inspect
+   * @param table name of the table
+   * @throws RuntimeException if a foreign key is violated
+   */
+  public static void checkForeignKeys(
+    SQLiteConnection connection,
+    String table
+  ) {
+    SQLiteBackendCursor cursor = connection.query("PRAGMA foreign_keys");
+    try {
+      if(!cursor.moveToNext() || 0 == cursor.getInt(0)) {
+        return;
+      }
+    } finally {
+      cursor.close();
+    }
+
+    cursor = connection.query("PRAGMA foreign_key_check(" + quote(table) + ")");
+    try {
+      if(cursor.moveToNext()) {
+        throw connection.newException(
+          "Foreign key violation in " + cursor.getString(0) + " (rowid " +
+          cursor.getString(1) + ") referencing " + cursor.getString(2));
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Quotes the specified identifier so it can be used in SQL statements.
+   *
+   * @param identifier to quote
+   * @return quoted identifier
+   */
+  public static String quote(String identifier) {
+    return '"' + identifier.replace("\"", "\"\"") + '"';
+  }
+
+  /**
+   * A column of a table, as reported by PRAGMA table_info.
+   */
+  public static class Column {
+
+    private final String name;
+    private final String type;
+    private final boolean notNull;
+    private final String defaultValue;
+    private final int primaryKey;
+
+    Column(
+      String name,
+      String type,
+      boolean notNull,
+      String defaultValue,
+      int primaryKey
+    ) {
+      this.name = name;
+      this.type = type;
+      this.notNull = notNull;
+      this.defaultValue = defaultValue;
+      this.primaryKey = primaryKey;
+    }
+
+    /**
+     * Returns the name of this column.
+     *
+     * @return column name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the declared type of this column.
+     *
+     * @return declared type, empty if none
+     */
+    public String getType() {
+      return type;
+    }
+
+    /**
+     * Checks whether this column has a NOT NULL constraint.
+     *
+     * @return TRUE if NULLs aren't allowed, FALSE otherwise
+     */
+    public boolean isNotNull() {
+      return notNull;
+    }
+
+    /**
+     * Returns the default value of this column, as an SQL expression.
+     *
+     * @return default value, or NULL if none
+     */
+    public String getDefaultValue() {
+      return defaultValue;
+    }
+
+    /**
+     * Returns the position of this column in the primary key.
+     *
+     * @return 1-based position, 0 if not part of the primary key
+     */
+    public int getPrimaryKey() {
+      return primaryKey;
+    }
+
+    @Override
+    public String toString() {
+      return null == type || 0 == type.length() ? name : name + " " + type;
+    }
+  }
+
+  /**
+   * An index or a trigger, as recorded in sqlite_master.
+   */
+  public static class Entry {
+
+    private final String type;
+    private final String name;
+    private final String table;
+    private final String sql;
+
+    Entry(String type, String name, String table, String sql) {
+      this.type = type;
+      this.name = name;
+      this.table = table;
+      this.sql = sql;
+    }
+
+    /**
+     * Returns the type of this entry: "index" or "trigger".
+     *
+     * @return entry type
+     */
+    public String getType() {
+      return type;
+    }
+
+    /**
+     * Returns the name of this entry.
+     *
+     * @return entry name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the name of the table this entry belongs to.
+     *
+     * @return table name
+     */
+    public String getTable() {
+      return table;
+    }
+
+    /**
+     * Returns the SQL statement which created this entry.
+     *
+     * @return CREATE statement
+     */
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * Checks whether this entry is an index.
+     *
+     * @return TRUE if index, FALSE if trigger
+     */
+    public boolean isIndex() {
+      return "index".equals(type);
+    }
+
+    /**
+     * Drops this entry if it exists.
+     *
+     * @param connection to change
+     */
+    public void drop(SQLiteConnection connection) {
+      connection.execSQL(
+        "DROP " + (isIndex() ? "INDEX" : "TRIGGER") + " IF EXISTS " +
+        quote(name)
+      );
+    }
+
+    /**
+     * Creates this entry again, and verifies it exists afterwards.
+     *
+     * @param connection to change
+     * @throws RuntimeException if the entry can't be created
+     */
+    public void create(SQLiteConnection connection) {
+      connection.execSQL(sql);
+      if(!exists(connection)) {
+        throw connection.newException(
+          "Unable to create " + type + " " + name + " on " + table);
+      }
+    }
+
+    /**
+     * Checks whether this entry exists.
+     *
+     * @param connection to inspect
+     * @return TRUE if the entry exists, FALSE otherwise
+     */
+    public boolean exists(SQLiteConnection connection) {
+      final SQLiteBackendCursor cursor = connection.query(
+        "SELECT 1 FROM sqlite_master WHERE type = ? AND name = ?",
+        type,
+        name
+      );
+      try {
+        return cursor.moveToNext();
+      } finally {
+        cursor.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return type + " " + name + " on " + table;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import com.fine47.sqlite.backend.SQLiteBackendStatement;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A plan which runs the statements of a SQL script, read from the classpath
+ * or, on Android, from the APK's assets. The script is read one statement at
+ * a time, so large seed scripts don't need to fit in memory; statements of a
+ * seed script which only differ in their values reuse a compiled statement.
+ *
+ * Scripts are UTF-8 encoded, and must not contain transaction statements since
+ * the runner applies each plan within a transaction. Scripts are registered by
+ * {@link SQLitePlanRegistry#addScript(int, String)}, or by extending this class
+ * like any other plan.
+ *
+ * @since 1.4
+ */
+public class SQLiteScriptPlan extends SQLiteConnectionPlan {
+
+  // Maximum number of compiled statements kept while running a script.
+  private final static int MAX_STATEMENTS = 16;
+
+  private final static boolean ANDROID = isAndroid();
+
+  private final String scriptPath;
+
+  /**
+   * Constructs a plan running the script at the specified path.
+   *
+   * @param scriptPath path of the script on the classpath or in the assets
+   */
+  public SQLiteScriptPlan(String scriptPath) {
+    assert null != scriptPath;
+    this.scriptPath = scriptPath;
+  }
+
+  /**
+   * Returns the path of the script this plan runs.
+   *
+   * @return script path
+   */
+  public String getScriptPath() {
+    return scriptPath;
+  }
+
+  @Override
+  public void applyUpgrade(final SQLiteConnection connection) {
+    final InputStream in;
+    try {
+      in = openScript();
+    } catch(IOException error) {
+      throw newException(connection, "Unable to open script", 0, error);
+    }
+
+    final Map<String, SQLiteBackendStatement> statements =
+      new LinkedHashMap<String, SQLiteBackendStatement>(
+        MAX_STATEMENTS, 0.75f, true
+      ) {
+        @Override
+        protected boolean removeEldestEntry(
+          Map.Entry<String, SQLiteBackendStatement> eldest
+        ) {
+          if(MAX_STATEMENTS < size()) {
+            eldest.getValue().close();
+            return true;
+          }
+          return false;
+        }
+      };
+
+    final SQLiteScriptReader reader;
+    try {
+      reader = new SQLiteScriptReader(new InputStreamReader(in, "UTF-8"));
+    } catch(IOException error) {
+      closeQuietly(in);
+      throw newException(connection, "Unable to read script", 0, error);
+    }
+
+    try {
+      while(reader.next()) {
+        try {
+          execute(connection, statements, reader.getSql(), reader.getArgs());
+        } catch(RuntimeException error) {
+          throw newException(connection, "Error in script", reader.getLine(),
+            error);
+        }
+      }
+    } catch(IOException error) {
+      throw newException(connection, "Unable to read script", 0, error);
+    } finally {
+      for(SQLiteBackendStatement statement : statements.values()) {
+        statement.close();
+      }
+      try {
+        reader.close();
+      } catch(IOException ignored) {
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName() + "(" + scriptPath + ")";
+  }
+
+  private static void execute(
+    SQLiteConnection connection,
+    Map<String, SQLiteBackendStatement> statements,
+    String sql,
+    Object[] args
+  ) {
+    if(0 == args.length) {
+      connection.execSQL(sql);
+      return;
+    }
+
+    SQLiteBackendStatement statement = statements.get(sql);
+    if(null == statement) {
+      statement = connection.compileStatement(sql);
+      statements.put(sql, statement);
+    }
+    statement.bindAll(args);
+    statement.execute();
+  }
+
+  private InputStream openScript() throws IOException {
+    final InputStream in = SQLiteScriptPlan.class
+      .getClassLoader()
+      .getResourceAsStream(scriptPath);
+    if(null != in) {
+      return in;
+    }
+    if(ANDROID) {
+      return AndroidAssets.open(scriptPath);
+    }
+    throw new IOException("Script not found");
+  }
+
+  private RuntimeException newException(
+    SQLiteConnection connection,
+    String message,
+    int line,
+    Throwable cause
+  ) {
+    final RuntimeException error = connection.newException(
+      message + " " + scriptPath + (0 < line ? " at line " + line : "") +
+      ": " + cause.getMessage());
+    error.initCause(cause);
+    return error;
+  }
+
+  private static void closeQuietly(InputStream in) {
+    try {
+      in.close();
+    } catch(IOException ignored) {
+    }
+  }
+
+  private static boolean isAndroid() {
+    try {
+      Class.forName("android.content.res.AssetManager");
+      return true;
+    } catch(ClassNotFoundException error) {
+      return false;
+    }
+  }
+
+  /**
+   * Keeps references to Android's assets in a class of its own, so it's only
+   * loaded when running on Android.
+   */
+  private static class AndroidAssets {
+
+    static InputStream open(String path) throws IOException {
+      return SQLiteManager.getInstance().getApplication().getAssets().open(path);
+    }
+  }
+}
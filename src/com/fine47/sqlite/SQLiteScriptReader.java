@@ -0,0 +1,429 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Reads a SQL script one statement at a time, without loading the whole
+ * script into memory. Statements are separated by semicolons, except those
+ * inside string literals, quoted identifiers, comments and the body of
+ * CREATE TRIGGER statements. Comments are dropped and whitespace is collapsed.
+ *
+ * The literal values of INSERT and REPLACE statements, such as those in a
+ * seed script, are turned into parameters; statements which differ only in
+ * their values then share the same SQL and can reuse a compiled statement.
+ * Statements which would need {@link #MAX_PARAMETERS} or more parameters are
+ * left unchanged instead, since older SQLite versions refuse that many.
+ *
+ * @since 1.4
+ */
+class SQLiteScriptReader implements Closeable {
+
+  /**
+   * Number of parameters from which a statement is left unchanged; SQLite
+   * versions before 3.32 allow at most 999 of them.
+   */
+  final static int MAX_PARAMETERS = 999;
+
+  private final static int BUFFER_SIZE = 8 * 1024;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private int line = 1;
+
+  // State of the current statement.
+  private final StringBuilder sql = new StringBuilder();
+  private final ArrayList<Object> args = new ArrayList();
+
+  // The statement with its literals as written, used instead when it has too
+  // many parameters.
+  private final StringBuilder literalSql = new StringBuilder();
+  private int statementLine;
+  private int tokenLine;
+  private int words;
+  private String firstWord;
+  private boolean trigger;
+  private boolean values;
+  private int depth;
+  private boolean space;
+
+  SQLiteScriptReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads the next statement of the script.
+   *
+   * @return TRUE if a statement was read, FALSE at the end of the script
+   * @throws IOException if the script can't be read or is malformed
+   */
+  boolean next() throws IOException {
+    reset();
+
+    int c;
+    while(-1 != (c = read())) {
+      tokenLine = line;
+      if(';' == c && 0 == depth) {
+        if(0 < sql.length()) {
+          finish();
+          return true;
+        }
+        // Empty statement.
+        reset();
+      } else if(Character.isWhitespace(c)) {
+        space = true;
+      } else if('-' == c && '-' == peek()) {
+        skipLineComment();
+      } else if('/' == c && '*' == peek()) {
+        skipBlockComment();
+      } else if('\'' == c) {
+        readString();
+      } else if('"' == c || '`' == c) {
+        appendToken(readQuoted((char)c, (char)c, null));
+      } else if('[' == c) {
+        appendToken(readQuoted('[', ']', null));
+      } else if(Character.isLetter(c) || '_' == c) {
+        readWord((char)c);
+      } else if(isDigit(c) || ('.' == c && isDigit(peek()))) {
+        readNumber((char)c);
+      } else {
+        appendToken(String.valueOf((char)c));
+      }
+    }
+
+    if(0 < depth) {
+      throw new IOException(
+        "Unterminated trigger starting at line " + statementLine);
+    }
+    finish();
+    return 0 < sql.length();
+  }
+
+  /**
+   * Returns the SQL of the statement last read, without its semicolon.
+   *
+   * @return SQL statement
+   */
+  String getSql() {
+    return sql.toString();
+  }
+
+  /**
+   * Returns the values of the parameters of the statement last read.
+   *
+   * @return parameter values, empty if none
+   */
+  Object[] getArgs() {
+    return args.toArray();
+  }
+
+  /**
+   * Returns the line of the script the statement last read starts at.
+   *
+   * @return line number, starting at 1
+   */
+  int getLine() {
+    return statementLine;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private void reset() {
+    sql.setLength(0);
+    args.clear();
+    literalSql.setLength(0);
+    statementLine = line;
+    words = 0;
+    firstWord = null;
+    trigger = false;
+    values = false;
+    depth = 0;
+    space = false;
+  }
+
+  /**
+   * Falls back to the statement as written if it has too many parameters.
+   */
+  private void finish() {
+    if(MAX_PARAMETERS <= args.size()) {
+      sql.setLength(0);
+      sql.append(literalSql);
+      args.clear();
+    }
+  }
+
+  private void appendToken(CharSequence token) {
+    appendToken(token, token);
+  }
+
+  private void appendToken(CharSequence token, CharSequence literal) {
+    if(0 == sql.length()) {
+      statementLine = tokenLine;
+    } else if(space) {
+      sql.append(' ');
+      literalSql.append(' ');
+    }
+    space = false;
+    sql.append(token);
+    literalSql.append(literal);
+  }
+
+  private void appendParameter(Object value, CharSequence literal) {
+    appendToken("?", literal);
+    args.add(value);
+  }
+
+  private void readWord(char first) throws IOException {
+    final StringBuilder word = new StringBuilder();
+    word.append(first);
+    while(isWordPart(peek())) {
+      word.append((char)read());
+    }
+
+    // A blob literal, such as X'CAFE'.
+    if(1 == word.length() && ('x' == first || 'X' == first) &&
+      '\'' == peek()
+    ) {
+      read();
+      final StringBuilder hex = new StringBuilder();
+      final String literal = readQuoted('\'', '\'', hex);
+      word.append(literal);
+      if(values) {
+        appendParameter(decodeHex(hex), word);
+      } else {
+        appendToken(word);
+      }
+      return;
+    }
+
+    final String keyword = word.toString().toUpperCase(Locale.US);
+    if(0 == words++) {
+      firstWord = keyword;
+    }
+
+    if(trigger) {
+      // Semicolons only end a trigger once its body is complete.
+      if("BEGIN".equals(keyword) || "CASE".equals(keyword)) {
+        depth++;
+      } else if("END".equals(keyword) && 0 < depth) {
+        depth--;
+      }
+    } else if("TRIGGER".equals(keyword) && 3 >= words &&
+      "CREATE".equals(firstWord)
+    ) {
+      trigger = true;
+    } else if("VALUES".equals(keyword) &&
+      ("INSERT".equals(firstWord) || "REPLACE".equals(firstWord))
+    ) {
+      values = true;
+    }
+
+    appendToken(word);
+  }
+
+  private void readNumber(char first) throws IOException {
+    final StringBuilder number = new StringBuilder();
+    number.append(first);
+
+    // Hexadecimal integers are kept as-is.
+    if('0' == first && ('x' == peek() || 'X' == peek())) {
+      while(isWordPart(peek())) {
+        number.append((char)read());
+      }
+      appendToken(number);
+      return;
+    }
+
+    boolean real = '.' == first;
+    while(isDigit(peek())) {
+      number.append((char)read());
+    }
+    if(!real && '.' == peek()) {
+      real = true;
+      number.append((char)read());
+      while(isDigit(peek())) {
+        number.append((char)read());
+      }
+    }
+    if('e' == peek() || 'E' == peek()) {
+      real = true;
+      number.append((char)read());
+      if('+' == peek() || '-' == peek()) {
+        number.append((char)read());
+      }
+      while(isDigit(peek())) {
+        number.append((char)read());
+      }
+    }
+
+    if(!values) {
+      appendToken(number);
+      return;
+    }
+
+    final String text = number.toString();
+    Object value;
+    try {
+      value = real ? (Object)Double.valueOf(text) : (Object)Long.valueOf(text);
+    } catch(NumberFormatException overflow) {
+      // Integers too large for 64 bits are reals in SQLite too.
+      value = Double.valueOf(text);
+    }
+    appendParameter(value, text);
+  }
+
+  private void readString() throws IOException {
+    final StringBuilder value = new StringBuilder();
+    final String literal = readQuoted('\'', '\'', value);
+    if(values) {
+      appendParameter(value.toString(), literal);
+    } else {
+      appendToken(literal);
+    }
+  }
+
+  /**
+   * Reads a quoted literal or identifier whose opening character was already
+   * read. A doubled closing character stands for itself, except for
+   * brackets.
+   *
+   * @param open opening character
+   * @param close closing character
+   * @param value receives the unquoted value, may be NULL
+   * @return the literal as it appears in the script
+   */
+  private String readQuoted(char open, char close, StringBuilder value)
+    throws IOException
+  {
+    final int startLine = line;
+    final StringBuilder literal = new StringBuilder();
+    literal.append(open);
+
+    while(true) {
+      final int c = read();
+      if(-1 == c) {
+        throw new IOException(
+          "Unterminated literal starting at line " + startLine);
+      }
+      literal.append((char)c);
+      if(close == c) {
+        if(']' == close || close != peek()) {
+          return literal.toString();
+        }
+        literal.append((char)read());
+      }
+      if(null != value) {
+        value.append((char)c);
+      }
+    }
+  }
+
+  private void skipLineComment() throws IOException {
+    int c;
+    while(-1 != (c = read()) && '\n' != c) {
+      // Skip.
+    }
+    space = true;
+  }
+
+  private void skipBlockComment() throws IOException {
+    final int startLine = line;
+    read();
+
+    int previous = 0;
+    int c;
+    while(-1 != (c = read())) {
+      if('/' == c && '*' == previous) {
+        space = true;
+        return;
+      }
+      previous = c;
+    }
+    throw new IOException(
+      "Unterminated comment starting at line " + startLine);
+  }
+
+  private int read() throws IOException {
+    if(position == limit && !fill()) {
+      return -1;
+    }
+    final char c = buffer[position++];
+    if('\n' == c) {
+      line++;
+    }
+    return c;
+  }
+
+  private int peek() throws IOException {
+    if(position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position];
+  }
+
+  private boolean fill() throws IOException {
+    position = 0;
+    limit = Math.max(0, reader.read(buffer, 0, buffer.length));
+    return 0 < limit;
+  }
+
+  private static boolean isDigit(int c) {
+    return '0' <= c && '9' >= c;
+  }
+
+  private static boolean isWordPart(int c) {
+    return -1 != c &&
+      (Character.isLetterOrDigit(c) || '_' == c || '$' == c);
+  }
+
+  private static byte[] decodeHex(CharSequence hex) throws IOException {
+    if(0 != hex.length() % 2) {
+      throw new IOException("Malformed blob literal: X'" + hex + "'");
+    }
+    final byte[] bytes = new byte[hex.length() / 2];
+    for(int index = 0; index < bytes.length; index++) {
+      final int high = Character.digit(hex.charAt(2 * index), 16);
+      final int low = Character.digit(hex.charAt(2 * index + 1), 16);
+      if(0 > high || 0 > low) {
+        throw new IOException("Malformed blob literal: X'" + hex + "'");
+      }
+      bytes[index] = (byte)(high << 4 | low);
+    }
+    return bytes;
+  }
+}
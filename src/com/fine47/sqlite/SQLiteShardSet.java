@@ -0,0 +1,684 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.aux.Util;
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A logical database made up of several physical database files, the shards,
+ * which share the same schema. Rows are routed to a shard by a key, so writes
+ * to different shards never contend for the same lock, and each file stays
+ * small enough to VACUUM quickly.
+ *
+ * Reads which span all shards are fanned out by
+ * {@link #query(String, String[], String, int)}: the query runs on every
+ * shard in parallel, and the rows are merged as they're consumed, in order.
+ * Migrations are applied to every shard by
+ * {@link #migrate(int, SQLitePlanRunner.Preparer)}.
+ *
+ * Shards are regular databases of {@link SQLiteManager}, named after the
+ * logical database with the shard's index appended; for example, shards of
+ * "messages.db" are "messages-0.db", "messages-1.db" and so on. The number of
+ * shards can't change once rows have been routed, so it's recorded in the
+ * {@link #SHARDS_TABLE} table of the first shard, and opening the set with a
+ * different number fails.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#openShardSet(String, int)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteShardSet {
+
+  /**
+   * Name of the table, in the first shard, recording the number of shards.
+   */
+  public final static String SHARDS_TABLE = "_sqlite_manager_shards";
+
+  private final SQLiteManager manager;
+  private final String filePath;
+  private final String[] shardPaths;
+  private final int targetVersion;
+  private final SQLiteOptions options;
+
+  SQLiteShardSet(
+    SQLiteManager manager,
+    String filePath,
+    int shards,
+    int targetVersion,
+    SQLiteOptions options
+  ) {
+    if(1 > shards) {
+      throw new IllegalArgumentException(
+        "Shard count must be equal or greater than 1.");
+    }
+
+    this.manager = manager;
+    this.filePath = filePath;
+    this.shardPaths = new String[shards];
+    this.targetVersion = targetVersion;
+    this.options = options;
+
+    for(int index = 0; index < shards; index++) {
+      shardPaths[index] = getShardPath(filePath, index);
+    }
+  }
+
+  /**
+   * Returns the normalized file path of the logical database.
+   *
+   * @return file path of the logical database
+   */
+  public String getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return shard count
+   */
+  public int getShardCount() {
+    return shardPaths.length;
+  }
+
+  /**
+   * Returns the file path of the specified shard.
+   *
+   * @param index of the shard
+   * @return file path of the shard
+   */
+  public String getShardPath(int index) {
+    return shardPaths[index];
+  }
+
+  /**
+   * Returns the database of the specified shard, opening it if necessary.
+   *
+   * @param index of the shard
+   * @return {@link SQLiteDatabase} instance
+   */
+  public SQLiteDatabase getShard(int index) {
+    return manager.openDatabase(shardPaths[index], targetVersion, null, options);
+  }
+
+  /**
+   * Returns the database of the specified shard like {@link #getShard(int)},
+   * and keeps it from being evicted until {@link #releaseShard(int)} is
+   * called.
+   *
+   * @param index of the shard
+   * @return {@link SQLiteDatabase} instance
+   */
+  private SQLiteDatabase acquireShard(int index) {
+    return manager.acquireDatabase(
+      shardPaths[index], targetVersion, null, options);
+  }
+
+  /**
+   * Releases a shard acquired by calling {@link #acquireShard(int)}.
+   *
+   * @param index of the shard
+   */
+  private void releaseShard(int index) {
+    manager.releaseDatabase(shardPaths[index]);
+  }
+
+  /**
+   * Closes the specified cursors, one per shard, and releases their shards.
+   *
+   * @param cursors to close, may contain NULL elements
+   */
+  private void closeCursors(Cursor[] cursors) {
+    for(int index = 0; index < cursors.length; index++) {
+      if(null != cursors[index]) {
+        cursors[index].close();
+        releaseShard(index);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the shard holding rows of the specified key. Numbers
+   * are routed by their value, other keys by their hash code, so routing is
+   * stable across processes.
+   *
+   * @param key to route, may not be NULL
+   * @return index of the shard
+   */
+  public int getShardIndex(Object key) {
+    assert null != key;
+
+    final long hash;
+    if(key instanceof Number) {
+      hash = ((Number)key).longValue();
+    } else if(key instanceof byte[]) {
+      hash = Arrays.hashCode((byte[])key);
+    } else {
+      hash = key.toString().hashCode();
+    }
+
+    final int shards = shardPaths.length;
+    return (int)((hash % shards + shards) % shards);
+  }
+
+  /**
+   * Returns the database of the shard holding rows of the specified key.
+   *
+   * @param key to route, may not be NULL
+   * @return {@link SQLiteDatabase} instance
+   * @see #getShardIndex(Object)
+   */
+  public SQLiteDatabase getShardFor(Object key) {
+    return getShard(getShardIndex(key));
+  }
+
+  /**
+   * Returns the {@link SQLiteWriteQueue} of the shard holding rows of the
+   * specified key.
+   *
+   * @param key to route, may not be NULL
+   * @return {@link SQLiteWriteQueue} instance
+   * @see #getShardIndex(Object)
+   */
+  public SQLiteWriteQueue getWriteQueueFor(Object key) {
+    final int index = getShardIndex(key);
+    getShard(index);
+    return manager.getWriteQueue(shardPaths[index]);
+  }
+
+  /**
+   * Runs the specified query on all shards in parallel, and merges their rows
+   * as they're consumed.
+   *
+   * The ordering and limit are pushed down to each shard by appending ORDER BY
+   * and LIMIT clauses to the query, which mustn't have them. Rows are then
+   * merged in the same order; since each shard returns its rows in order, the
+   * merge only holds one row per shard at a time. Without an ordering, rows of
+   * one shard follow those of the previous one. Shards aren't evicted by the
+   * manager until the returned cursor is closed.
+   *
+   * @param sql query without ORDER BY and LIMIT clauses
+   * @param selectionArgs arguments of the query, may be NULL
+   * @param orderBy comma-separated result column names, each optionally
+   *   followed by ASC or DESC; NULL for no ordering. Rows are merged using
+   *   SQLite's BINARY collation, so COLLATE clauses are rejected
+   * @param limit maximum number of rows in total, 0 for no limit
+   * @return cursor over the merged rows, to be closed by the caller
+   */
+  public SQLiteBackendCursor query(
+    String sql,
+    final String[] selectionArgs,
+    String orderBy,
+    int limit
+  ) {
+    if(0 > limit) {
+      throw new IllegalArgumentException(
+        "Limit must be equal or greater than 0.");
+    }
+
+    final StringBuilder builder = new StringBuilder(sql);
+    if(null != orderBy) {
+      builder.append(" ORDER BY ").append(orderBy);
+    }
+    if(0 < limit) {
+      builder.append(" LIMIT ").append(limit);
+    }
+    final String shardSql = builder.toString();
+
+    // Run the query on all shards in parallel; each task positions its
+    // cursor on the first row, which executes the query. Shards stay acquired
+    // until their cursors are closed.
+    final List<FutureTask<Cursor>> tasks = new ArrayList(shardPaths.length);
+    for(int index = 0; index < shardPaths.length; index++) {
+      final int shard = index;
+      final FutureTask<Cursor> task = new FutureTask<Cursor>(
+        new Callable<Cursor>() {
+          @Override
+          public Cursor call() {
+            final SQLiteDatabase db = acquireShard(shard);
+            Cursor cursor = null;
+            try {
+              cursor = db.rawQuery(shardSql, selectionArgs);
+              cursor.moveToFirst();
+              return cursor;
+            } catch(RuntimeException error) {
+              if(null != cursor) {
+                cursor.close();
+              }
+              releaseShard(shard);
+              throw error;
+            }
+          }
+        }
+      );
+      tasks.add(task);
+      manager.getExecutor().execute(task);
+    }
+
+    final Cursor[] cursors = new Cursor[tasks.size()];
+    RuntimeException error = null;
+    for(int index = 0; index < cursors.length; index++) {
+      try {
+        cursors[index] = Util.getUninterruptibly(tasks.get(index));
+      } catch(RuntimeException shardError) {
+        if(null == error) {
+          error = shardError;
+        }
+      }
+    }
+
+    if(null != error) {
+      closeCursors(cursors);
+      throw error;
+    }
+
+    try {
+      return new MergedCursor(this, cursors, orderBy, limit);
+    } catch(RuntimeException orderError) {
+      closeCursors(cursors);
+      throw orderError;
+    }
+  }
+
+  /**
+   * Migrates all shards to the specified version in parallel, using a
+   * {@link SQLitePlanRunner} per shard prepared by the specified
+   * {@link SQLitePlanRunner.Preparer}. If any shard fails, the first error is
+   * rethrown once all shards are done; shards which succeeded stay migrated.
+   * Shards aren't evicted by the manager while they're migrated.
+   *
+   * @param targetVersion target version of the shards
+   * @param preparer to define the migration plans, may be NULL
+   * @return report of each shard, in shard order
+   */
+  public List<SQLiteMigrationReport> migrate(
+    final int targetVersion,
+    final SQLitePlanRunner.Preparer preparer
+  ) {
+    final List<FutureTask<SQLiteMigrationReport>> tasks =
+      new ArrayList(shardPaths.length);
+    for(int index = 0; index < shardPaths.length; index++) {
+      final int shard = index;
+      final FutureTask<SQLiteMigrationReport> task =
+        new FutureTask<SQLiteMigrationReport>(
+          new Callable<SQLiteMigrationReport>() {
+            @Override
+            public SQLiteMigrationReport call() {
+              // Keep the shard from being evicted while it's migrated.
+              final SQLiteDatabase db = acquireShard(shard);
+              try {
+                final SQLitePlanRunner runner =
+                  SQLitePlanRunner.For(db, targetVersion);
+                if(null != preparer) {
+                  preparer.prepare(runner);
+                }
+                runner.run();
+                return runner.getReport();
+              } finally {
+                releaseShard(shard);
+              }
+            }
+          }
+        );
+      tasks.add(task);
+      manager.getExecutor().execute(task);
+    }
+
+    final List<SQLiteMigrationReport> reports = new ArrayList(tasks.size());
+    RuntimeException error = null;
+    for(FutureTask<SQLiteMigrationReport> task : tasks) {
+      try {
+        reports.add(Util.getUninterruptibly(task));
+      } catch(RuntimeException shardError) {
+        if(null == error) {
+          error = shardError;
+        }
+      }
+    }
+
+    if(null != error) {
+      throw error;
+    }
+    return Collections.unmodifiableList(reports);
+  }
+
+  /**
+   * Records the number of shards in the first shard if it's brand new, or
+   * checks it against the recorded one otherwise.
+   *
+   * @throws IllegalStateException if the set was created with a different
+   *   number of shards
+   */
+  void verifyShardCount() {
+    final SQLiteDatabase db = getShard(0);
+    db.beginTransaction();
+    try {
+      db.execSQL(
+        "CREATE TABLE IF NOT EXISTS " + SHARDS_TABLE + " (" +
+          "id INTEGER PRIMARY KEY CHECK (0 = id), " +
+          "shard_count INTEGER NOT NULL" +
+        ")"
+      );
+
+      final Cursor cursor =
+        db.rawQuery("SELECT shard_count FROM " + SHARDS_TABLE, null);
+      final int shardCount;
+      try {
+        shardCount = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+      } finally {
+        cursor.close();
+      }
+
+      if(0 == shardCount) {
+        db.execSQL(
+          "INSERT INTO " + SHARDS_TABLE + " (id, shard_count) VALUES (0, ?)",
+          new Object[] {shardPaths.length}
+        );
+      } else if(shardPaths.length != shardCount) {
+        throw new IllegalStateException(
+          "Shard set was created with " + shardCount + " shard(s), unable " +
+          "to open it with " + shardPaths.length + ": " + filePath);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * Closes all shards.
+   */
+  void close() {
+    for(String shardPath : shardPaths) {
+      manager.closeDatabase(shardPath);
+    }
+  }
+
+  /**
+   * Returns the file path of the specified shard of a logical database; the
+   * index is inserted before the file's extension, if any.
+   *
+   * @param filePath file path of the logical database
+   * @param index of the shard
+   * @return file path of the shard
+   */
+  static String getShardPath(String filePath, int index) {
+    final int slashPos = filePath.lastIndexOf(File.separatorChar);
+    final int dotPos = filePath.lastIndexOf('.');
+    return dotPos > slashPos + 1
+      ? filePath.substring(0, dotPos) + '-' + index + filePath.substring(dotPos)
+      : filePath + '-' + index;
+  }
+
+  /**
+   * Compares two column values the way SQLite orders them: NULL first, then
+   * numbers, strings and finally blobs. Strings are compared like the BINARY
+   * collation does, byte by byte in UTF-8.
+   */
+  private static int compareValues(Object left, Object right) {
+    final int leftRank = getRank(left);
+    final int rightRank = getRank(right);
+    if(leftRank != rightRank) {
+      return leftRank < rightRank ? -1 : 1;
+    }
+
+    switch(leftRank) {
+      case 1:
+        if(left instanceof Long && right instanceof Long) {
+          final long leftLong = (Long)left;
+          final long rightLong = (Long)right;
+          return leftLong < rightLong ? -1 : (leftLong == rightLong ? 0 : 1);
+        }
+        return Double.compare(
+          ((Number)left).doubleValue(),
+          ((Number)right).doubleValue()
+        );
+      case 2:
+        return compareUtf8((String)left, (String)right);
+      case 3:
+        final byte[] leftBytes = (byte[])left;
+        final byte[] rightBytes = (byte[])right;
+        final int length = Math.min(leftBytes.length, rightBytes.length);
+        for(int index = 0; index < length; index++) {
+          final int diff =
+            (leftBytes[index] & 0xff) - (rightBytes[index] & 0xff);
+          if(0 != diff) {
+            return diff;
+          }
+        }
+        return leftBytes.length - rightBytes.length;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Compares two strings as if encoded in UTF-8, without encoding them: the
+   * order of UTF-8 bytes is the order of code points, which differs from
+   * {@link String#compareTo(String)} for characters outside the BMP.
+   */
+  private static int compareUtf8(String left, String right) {
+    final int leftLength = left.length();
+    final int rightLength = right.length();
+    int leftIndex = 0;
+    int rightIndex = 0;
+    while(leftIndex < leftLength && rightIndex < rightLength) {
+      final int leftCodePoint = left.codePointAt(leftIndex);
+      final int rightCodePoint = right.codePointAt(rightIndex);
+      if(leftCodePoint != rightCodePoint) {
+        return leftCodePoint < rightCodePoint ? -1 : 1;
+      }
+      leftIndex += Character.charCount(leftCodePoint);
+      rightIndex += Character.charCount(rightCodePoint);
+    }
+    return leftIndex < leftLength ? 1 : (rightIndex < rightLength ? -1 : 0);
+  }
+
+  private static int getRank(Object value) {
+    return null == value
+      ? 0
+      : value instanceof Number ? 1 : value instanceof String ? 2 : 3;
+  }
+
+  /**
+   * Merges the rows of several cursors, each ordered the same way, into one
+   * ordered stream.
+   */
+  private static class MergedCursor implements SQLiteBackendCursor {
+
+    private final SQLiteShardSet shardSet;
+    private final Cursor[] cursors;
+    private final PriorityQueue<Integer> heads;
+    private final int limit;
+
+    private int current = -1;
+    private int count;
+    private boolean closed;
+
+    MergedCursor(
+      SQLiteShardSet shardSet,
+      final Cursor[] cursors,
+      String orderBy,
+      int limit
+    ) {
+      this.shardSet = shardSet;
+      this.cursors = cursors;
+      this.limit = limit;
+
+      final int[] columns;
+      final boolean[] descending;
+      if(null == orderBy) {
+        columns = new int[0];
+        descending = new boolean[0];
+      } else {
+        final String[] terms = orderBy.split(",");
+        columns = new int[terms.length];
+        descending = new boolean[terms.length];
+        for(int index = 0; index < terms.length; index++) {
+          final String[] tokens = terms[index].trim().split("\\s+");
+          for(String token : tokens) {
+            if("COLLATE".equalsIgnoreCase(token)) {
+              throw new IllegalArgumentException(
+                "Collations aren't supported, rows are merged in BINARY " +
+                "order: " + terms[index]);
+            }
+          }
+          if(2 < tokens.length || (2 == tokens.length &&
+            !"ASC".equalsIgnoreCase(tokens[1]) &&
+            !"DESC".equalsIgnoreCase(tokens[1]))
+          ) {
+            throw new IllegalArgumentException(
+              "Unsupported ordering term: " + terms[index]);
+          }
+          descending[index] =
+            2 == tokens.length && "DESC".equalsIgnoreCase(tokens[1]);
+
+          // Result columns are named without their table's name.
+          final String column = tokens[0];
+          columns[index] = cursors[0].getColumnIndexOrThrow(
+            column.substring(1 + column.lastIndexOf('.')));
+        }
+      }
+
+      // Shards holding the same values are merged in shard order.
+      heads = new PriorityQueue<Integer>(
+        cursors.length,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer left, Integer right) {
+            for(int index = 0; index < columns.length; index++) {
+              final int result = compareValues(
+                Util.getValue(cursors[left], columns[index]),
+                Util.getValue(cursors[right], columns[index])
+              );
+              if(0 != result) {
+                return descending[index] ? -result : result;
+              }
+            }
+            return left.compareTo(right);
+          }
+        }
+      );
+
+      // Cursors have already been positioned on their first row.
+      for(int index = 0; index < cursors.length; index++) {
+        if(!cursors[index].isAfterLast()) {
+          heads.add(index);
+        }
+      }
+    }
+
+    @Override
+    public boolean moveToNext() {
+      if(0 <= current && cursors[current].moveToNext()) {
+        heads.add(current);
+      }
+      if((0 < limit && limit <= count) || heads.isEmpty()) {
+        current = -1;
+        return false;
+      }
+      current = heads.poll();
+      count++;
+      return true;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return cursors[0].getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return cursors[0].getColumnName(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+      return row().isNull(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+      return row().getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+      return row().getInt(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+      return row().getDouble(column);
+    }
+
+    @Override
+    public String getString(int column) {
+      return row().getString(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+      return row().getBlob(column);
+    }
+
+    @Override
+    public Object getValue(int column) {
+      return Util.getValue(row(), column);
+    }
+
+    @Override
+    public void close() {
+      // Shards are released only once.
+      if(!closed) {
+        closed = true;
+        shardSet.closeCursors(cursors);
+      }
+    }
+
+    private Cursor row() {
+      if(0 > current) {
+        throw new IllegalStateException("Cursor isn't positioned on a row.");
+      }
+      return cursors[current];
+    }
+  }
+}
@@ -0,0 +1,365 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+import com.fine47.sqlite.aux.Util;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compiled {@link SQLiteStatement} instances for a single
+ * {@link SQLiteDatabase}, keyed by their SQL text. When the cache is full, the
+ * least recently used statement is closed to make room for new ones.
+ *
+ * A compiled statement can't be shared by threads while it's being bound and
+ * executed, so statements are checked out of the cache by
+ * {@link #acquire(String)} and returned by
+ * {@link #release(String, SQLiteStatement)}. The execute methods do this
+ * automatically. If two threads need the same SQL at the same time, the second
+ * one gets a freshly compiled statement.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#getStatementCache(String)}, and are closed along with
+ * their database by {@link SQLiteManager#closeDatabase(String)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteStatementCache {
+
+  private final static String LOG_TAG = "SQLiteStatementCache";
+
+  /**
+   * Default number of statements to keep in a cache.
+   */
+  public final static int DEFAULT_CAPACITY = 32;
+
+  private final SQLiteDatabase db;
+  private final int capacity;
+  private final LinkedHashMap<String, SQLiteStatement> statements;
+
+  // Checked-out statements, mapped to the generation they were acquired in;
+  // clear() starts a new generation so older statements aren't cached again.
+  private final IdentityHashMap<SQLiteStatement, Object> checkedOut;
+  private Object generation = new Object();
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private boolean closed;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  SQLiteStatementCache(SQLiteDatabase db, int capacity) {
+    if(1 > capacity) {
+      throw new IllegalArgumentException(
+        "Capacity must be equal or greater than 1.");
+    }
+
+    this.db = db;
+    this.capacity = capacity;
+    this.statements = new LinkedHashMap(capacity, 0.75f, true);
+    this.checkedOut = new IdentityHashMap();
+  }
+
+  /**
+   * Returns the database this cache compiles statements for.
+   *
+   * @return database instance
+   */
+  public SQLiteDatabase getDatabase() {
+    return db;
+  }
+
+  /**
+   * Returns the maximum number of statements kept in this cache.
+   *
+   * @return cache capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of statements currently kept in this cache.
+   *
+   * @return cache size
+   */
+  public synchronized int size() {
+    return statements.size();
+  }
+
+  /**
+   * Returns the number of times a statement was found in this cache.
+   *
+   * @return number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of times a statement had to be compiled.
+   *
+   * @return number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of statements closed to make room for others.
+   *
+   * @return number of evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Checks whether this cache is still usable; a cache is closed either
+   * explicitly or when its database is closed.
+   *
+   * @return TRUE if cache is open, FALSE otherwise
+   */
+  public synchronized boolean isOpen() {
+    return !closed && db.isOpen();
+  }
+
+  /**
+   * Returns the time this cache was last used, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * Checks out the compiled statement for the specified SQL, compiling it if
+   * it's not cached. The statement must be returned by calling
+   * {@link #release(String, SQLiteStatement)} when done.
+   *
+   * @param sql of the statement
+   * @return compiled statement
+   */
+  public SQLiteStatement acquire(String sql) {
+    final Object acquiredGeneration;
+    synchronized(this) {
+      if(closed) {
+        throw new IllegalStateException(
+          "Statement cache has been closed: " + Util.getFileName(db));
+      }
+      lastUsed = SystemClock.elapsedRealtime();
+
+      final SQLiteStatement statement = statements.remove(sql);
+      if(null != statement) {
+        hits++;
+        checkedOut.put(statement, generation);
+        return statement;
+      }
+      misses++;
+      acquiredGeneration = generation;
+    }
+
+    // Compile outside of the lock, it may take a while.
+    final SQLiteStatement statement = db.compileStatement(sql);
+    synchronized(this) {
+      checkedOut.put(statement, acquiredGeneration);
+    }
+    return statement;
+  }
+
+  /**
+   * Returns a statement previously checked out by {@link #acquire(String)} to
+   * this cache. Its bindings are cleared, and the least recently used statement
+   * is closed if the cache is full. Statements checked out before the cache
+   * was last cleared are closed instead.
+   *
+   * @param sql of the statement
+   * @param statement to return
+   */
+  public void release(String sql, SQLiteStatement statement) {
+    statement.clearBindings();
+
+    SQLiteStatement discarded = statement;
+    synchronized(this) {
+      final Object acquiredGeneration = checkedOut.remove(statement);
+      if(!closed &&
+        (null == acquiredGeneration || generation == acquiredGeneration) &&
+        !statements.containsKey(sql)
+      ) {
+        statements.put(sql, statement);
+        discarded = null;
+
+        if(capacity < statements.size()) {
+          final Iterator<Map.Entry<String, SQLiteStatement>> iterator =
+            statements.entrySet().iterator();
+          discarded = iterator.next().getValue();
+          iterator.remove();
+          evictions++;
+        }
+      }
+    }
+
+    if(null != discarded) {
+      discarded.close();
+    }
+  }
+
+  /**
+   * Executes the specified SQL statement, which must not return any data.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   */
+  public void execute(String sql, Object... args) {
+    final SQLiteStatement statement = acquire(sql);
+    try {
+      Util.bindAll(statement, args);
+      statement.execute();
+    } finally {
+      release(sql, statement);
+    }
+  }
+
+  /**
+   * Executes the specified INSERT statement.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   * @return row ID of the inserted row, or -1 on failure
+   */
+  public long executeInsert(String sql, Object... args) {
+    final SQLiteStatement statement = acquire(sql);
+    try {
+      Util.bindAll(statement, args);
+      return statement.executeInsert();
+    } finally {
+      release(sql, statement);
+    }
+  }
+
+  /**
+   * Executes the specified UPDATE or DELETE statement.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   * @return number of rows affected
+   */
+  public int executeUpdateDelete(String sql, Object... args) {
+    final SQLiteStatement statement = acquire(sql);
+    try {
+      Util.bindAll(statement, args);
+      return statement.executeUpdateDelete();
+    } finally {
+      release(sql, statement);
+    }
+  }
+
+  /**
+   * Executes the specified query which returns a single row and column.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   * @return value of the first column of the first row
+   */
+  public long simpleQueryForLong(String sql, Object... args) {
+    final SQLiteStatement statement = acquire(sql);
+    try {
+      Util.bindAll(statement, args);
+      return statement.simpleQueryForLong();
+    } finally {
+      release(sql, statement);
+    }
+  }
+
+  /**
+   * Executes the specified query which returns a single row and column.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   * @return value of the first column of the first row
+   */
+  public String simpleQueryForString(String sql, Object... args) {
+    final SQLiteStatement statement = acquire(sql);
+    try {
+      Util.bindAll(statement, args);
+      return statement.simpleQueryForString();
+    } finally {
+      release(sql, statement);
+    }
+  }
+
+  /**
+   * Closes all cached statements and discards them. Statements which are
+   * checked out are closed as soon as they're returned.
+   */
+  public void clear() {
+    final SQLiteStatement[] discarded;
+    synchronized(this) {
+      discarded = statements.values().toArray(
+        new SQLiteStatement[statements.size()]);
+      statements.clear();
+      generation = new Object();
+    }
+
+    for(SQLiteStatement statement : discarded) {
+      statement.close();
+    }
+  }
+
+  /**
+   * Closes all cached statements; this cache can't be used afterwards.
+   */
+  public void close() {
+    synchronized(this) {
+      if(closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    clear();
+    Log.i(
+      LOG_TAG,
+      String.format(
+        "Closed cache for '%s': %d hit(s), %d miss(es), %d eviction(s)",
+        Util.getFileName(db),
+        getHits(),
+        getMisses(),
+        getEvictions()
+      )
+    );
+  }
+}
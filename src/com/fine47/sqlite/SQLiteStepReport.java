@@ -0,0 +1,191 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.Locale;
+
+/**
+ * Measurements taken by {@link SQLitePlanRunner} while applying a single
+ * {@link SQLitePlan}: wall time, number of rows changed, and how the size of
+ * the database file and its free list changed.
+ *
+ * @see SQLitePlanRunner.ReportHandler
+ * @since 1.4
+ */
+public class SQLiteStepReport {
+
+  private final int oldVersion;
+  private final int newVersion;
+  private final Class<? extends SQLitePlan> planClass;
+  private final long wallNanos;
+  private final long changes;
+  private final long pageSize;
+  private final long pageCountBefore;
+  private final long pageCountAfter;
+  private final long freelistCountBefore;
+  private final long freelistCountAfter;
+
+  SQLiteStepReport(
+    SQLitePlanRegistry.Step step,
+    long pageSize,
+    long changes,
+    long[] before,
+    long[] after
+  ) {
+    this.oldVersion = step.getFromVersion();
+    this.newVersion = step.getToVersion();
+    this.planClass = step.getPlanClass();
+    this.pageSize = pageSize;
+    this.wallNanos = after[0] - before[0];
+    this.changes = changes;
+    this.pageCountBefore = before[1];
+    this.pageCountAfter = after[1];
+    this.freelistCountBefore = before[2];
+    this.freelistCountAfter = after[2];
+  }
+
+  /**
+   * Returns the version of the database before the plan.
+   *
+   * @return old version
+   */
+  public int getOldVersion() {
+    return oldVersion;
+  }
+
+  /**
+   * Returns the version of the database after the plan.
+   *
+   * @return new version
+   */
+  public int getNewVersion() {
+    return newVersion;
+  }
+
+  /**
+   * Returns the plan which was applied.
+   *
+   * @return plan class
+   */
+  public Class<? extends SQLitePlan> getPlanClass() {
+    return planClass;
+  }
+
+  /**
+   * Returns the wall time it took to apply the plan, in nanoseconds.
+   *
+   * @return wall time
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /**
+   * Returns the number of rows inserted, updated or deleted by the plan. Rows
+   * written by the runner itself to track progress aren't counted.
+   *
+   * @return number of changed rows
+   */
+  public long getChanges() {
+    return changes;
+  }
+
+  /**
+   * Returns the page size of the database, in bytes.
+   *
+   * @return page size
+   */
+  public long getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Returns the number of pages in the database before the plan.
+   *
+   * @return page count
+   */
+  public long getPageCountBefore() {
+    return pageCountBefore;
+  }
+
+  /**
+   * Returns the number of pages in the database after the plan.
+   *
+   * @return page count
+   */
+  public long getPageCountAfter() {
+    return pageCountAfter;
+  }
+
+  /**
+   * Returns the number of unused pages in the database before the plan.
+   *
+   * @return free list count
+   */
+  public long getFreelistCountBefore() {
+    return freelistCountBefore;
+  }
+
+  /**
+   * Returns the number of unused pages in the database after the plan.
+   *
+   * @return free list count
+   */
+  public long getFreelistCountAfter() {
+    return freelistCountAfter;
+  }
+
+  /**
+   * Returns the number of pages put into use by the plan; that is, pages added
+   * to the database file plus pages taken from the free list. Negative if the
+   * plan freed more pages than it used.
+   *
+   * @return number of pages put into use
+   */
+  public long getPagesUsed() {
+    return (pageCountAfter - freelistCountAfter) -
+      (pageCountBefore - freelistCountBefore);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      Locale.US,
+      "V%d -> V%d (%s): %.3f ms, %d change(s), pages %d -> %d, free %d -> %d",
+      oldVersion,
+      newVersion,
+      planClass.getSimpleName(),
+      wallNanos / 1e6,
+      changes,
+      pageCountBefore,
+      pageCountAfter,
+      freelistCountBefore,
+      freelistCountAfter
+    );
+  }
+}
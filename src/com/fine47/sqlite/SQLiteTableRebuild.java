@@ -0,0 +1,467 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.aux.Logger;
+import com.fine47.sqlite.backend.SQLiteAndroidBackend;
+import com.fine47.sqlite.backend.SQLiteBackendCursor;
+import com.fine47.sqlite.backend.SQLiteBackendStatement;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Rebuilds a table to match a declared schema, for the changes ALTER TABLE
+ * can't make: dropping or retyping columns, changing constraints and so on.
+ * Meant to be used from within a plan:
+ *
+ * <pre>
+ * SQLiteTableRebuild
+ *   .For("messages", "id INTEGER PRIMARY KEY, body TEXT NOT NULL, " +
+ *     "sent_at INTEGER NOT NULL DEFAULT 0")
+ *   .map("sent_at", "created / 1000")
+ *   .run(db);
+ * </pre>
+ *
+ * The declared schema is compared with the live one, and the table is only
+ * rebuilt if they differ. A new table, named after the old one with a
+ * "_sqlite_manager_rebuild_" prefix, is created from the declared schema;
+ * the rebuild fails rather than replace an existing table of that name. Rows
+ * are copied to it in rowid order and in chunks, by INSERT ... SELECT
+ * statements; the old table is then dropped and the new one takes its name.
+ * Columns are copied by name unless mapped to another expression, and columns
+ * which are new get their default values. Indexes and triggers of the table are
+ * created again afterwards, and the number of copied rows is verified.
+ *
+ * The rebuild runs in the plan's transaction, or in a transaction of its own
+ * otherwise. Tables referenced by foreign keys of other tables can only be
+ * rebuilt while foreign keys aren't enforced, since dropping the old table
+ * would otherwise delete or nullify the referencing rows.
+ *
+ * @since 1.4
+ */
+public class SQLiteTableRebuild {
+
+  private final static String LOG_TAG = "SQLiteTableRebuild";
+
+  /**
+   * Default number of rows copied by a single statement.
+   */
+  public final static int DEFAULT_CHUNK_SIZE = 10000;
+
+  // Prefix of the name of the new table while it's being populated.
+  private final static String TEMP_PREFIX = "_sqlite_manager_rebuild_";
+
+  private final static Pattern WITHOUT_ROWID = Pattern.compile(
+    "\\)\\s*WITHOUT\\s+ROWID\\s*;?\\s*$",
+    Pattern.CASE_INSENSITIVE
+  );
+
+  private final String table;
+  private final String definitions;
+  private final Map<String, String> mappings;
+  private final Set<String> omitted;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private SQLiteTableRebuild(String table, String definitions) {
+    this.table = table;
+    this.definitions = definitions;
+    this.mappings = new LinkedHashMap();
+    this.omitted = new HashSet();
+  }
+
+  /**
+   * Returns a new rebuild of the specified table.
+   *
+   * @param table name of the table
+   * @param definitions of its columns and constraints, as they appear between
+   *   the parentheses of a CREATE TABLE statement
+   * @return {@link SQLiteTableRebuild} instance
+   */
+  public static SQLiteTableRebuild For(String table, String definitions) {
+    assert null != table;
+    assert null != definitions;
+    return new SQLiteTableRebuild(table, definitions);
+  }
+
+  /**
+   * Populates the specified column of the new table with the result of an SQL
+   * expression over the columns of the old table, instead of copying it by
+   * name.
+   *
+   * @param column of the new table
+   * @param expression over the columns of the old table
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteTableRebuild map(String column, String expression) {
+    mappings.put(column.toLowerCase(Locale.US), expression);
+    return this;
+  }
+
+  /**
+   * Drops the specified index or trigger along with the old table instead of
+   * creating it again, for example because it refers to a dropped column.
+   *
+   * @param name of the index or trigger
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteTableRebuild omit(String name) {
+    omitted.add(name.toLowerCase(Locale.US));
+    return this;
+  }
+
+  /**
+   * Defines the maximum number of rows copied by a single statement.
+   *
+   * @param chunkSize number of rows
+   * @return this instance (suitable for chaining)
+   */
+  public SQLiteTableRebuild setChunkSize(int chunkSize) {
+    if(1 > chunkSize) {
+      throw new IllegalArgumentException(
+        "Chunk size must be equal or greater than 1.");
+    }
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Rebuilds the table in the specified database, if needed.
+   *
+   * @param db to rebuild the table in
+   * @return report of the rebuild
+   */
+  public SQLiteRebuildReport run(SQLiteDatabase db) {
+    final SQLiteRebuildReport report = run(SQLiteAndroidBackend.wrap(db));
+
+    // Reload a mirror of the table and drop cached results once the rebuild
+    // is committed; migrations do that by themselves.
+    if(report.isRebuilt() && !db.inTransaction()) {
+      SQLiteManager.invalidateQueryCache(db.getPath());
+      SQLiteManager.reloadHotTables(db.getPath());
+    }
+    return report;
+  }
+
+  /**
+   * Rebuilds the table in the specified connection, if needed.
+   *
+   * @param connection to rebuild the table in
+   * @return report of the rebuild
+   */
+  public SQLiteRebuildReport run(SQLiteConnection connection) {
+    if(connection.inTransaction()) {
+      return rebuild(connection);
+    }
+
+    connection.beginTransaction();
+    try {
+      final SQLiteRebuildReport report = rebuild(connection);
+      connection.setTransactionSuccessful();
+      return report;
+    } finally {
+      connection.endTransaction();
+    }
+  }
+
+  private SQLiteRebuildReport rebuild(SQLiteConnection connection) {
+    final long startTime = System.nanoTime();
+
+    final String liveSql = SQLiteSchema.getTableSql(connection, table);
+    if(null == liveSql) {
+      throw connection.newException("No such table: " + table);
+    }
+    if(WITHOUT_ROWID.matcher(liveSql).find()) {
+      throw new IllegalStateException(
+        "Unable to rebuild a WITHOUT ROWID table: " + table);
+    }
+
+    // Nothing to do if the declared schema is the live one.
+    if(mappings.isEmpty() &&
+      normalize(definitions).equals(normalize(getDefinitions(liveSql)))
+    ) {
+      final List<String> none = Collections.emptyList();
+      return new SQLiteRebuildReport(
+        table,
+        false,
+        none,
+        none,
+        0,
+        0,
+        System.nanoTime() - startTime
+      );
+    }
+
+    // Dropping the old table would delete or nullify referencing rows.
+    if(0 != longForQuery(connection, "PRAGMA foreign_keys")) {
+      final List<String> referencing =
+        SQLiteSchema.getReferencingTables(connection, table);
+      if(!referencing.isEmpty()) {
+        throw new IllegalStateException(
+          "Unable to rebuild " + table + " while foreign keys of " +
+          referencing + " are enforced.");
+      }
+    }
+
+    final List<SQLiteSchema.Entry> entries = new ArrayList();
+    for(SQLiteSchema.Entry entry :
+      SQLiteSchema.getIndexesAndTriggers(connection, table)
+    ) {
+      if(!omitted.contains(entry.getName().toLowerCase(Locale.US))) {
+        entries.add(entry);
+      }
+    }
+    final long expectedRows =
+      longForQuery(connection, "SELECT count(*) FROM " + quote(table));
+
+    // Create the new table from the declared schema.
+    // A table of that name is never dropped, it may belong to the app.
+    final String tempTable = TEMP_PREFIX + table;
+    if(SQLiteSchema.hasTable(connection, tempTable)) {
+      throw new IllegalStateException(
+        "Unable to rebuild " + table + " while " + tempTable + " exists.");
+    }
+    connection.execSQL(
+      "CREATE TABLE " + quote(tempTable) + " (" + definitions + ")");
+
+    // Map each new column to an expression over the old columns.
+    final List<SQLiteSchema.Column> liveColumns =
+      SQLiteSchema.getColumns(connection, table);
+    final List<SQLiteSchema.Column> columns =
+      SQLiteSchema.getColumns(connection, tempTable);
+    final List<String> addedColumns = new ArrayList();
+    final List<String> droppedColumns = new ArrayList();
+    final StringBuilder targets = new StringBuilder();
+    final StringBuilder sources = new StringBuilder();
+    final Set<String> mapped = new HashSet();
+    boolean hasRowidAlias = false;
+
+    for(SQLiteSchema.Column column : columns) {
+      final String key = column.getName().toLowerCase(Locale.US);
+      final SQLiteSchema.Column liveColumn = find(liveColumns, key);
+      if(null == liveColumn) {
+        addedColumns.add(column.getName());
+      }
+
+      String expression = mappings.get(key);
+      if(null == expression) {
+        if(null == liveColumn) {
+          if(column.isNotNull() && null == column.getDefaultValue() &&
+            0 == column.getPrimaryKey()
+          ) {
+            throw new IllegalStateException(
+              "Column " + column.getName() + " of " + table +
+              " has neither a value to copy nor a default value.");
+          }
+          continue;
+        }
+        expression = quote(liveColumn.getName());
+      }
+      mapped.add(key);
+
+      hasRowidAlias = hasRowidAlias || isRowidAlias(column, columns);
+      if(0 < targets.length()) {
+        targets.append(", ");
+        sources.append(", ");
+      }
+      targets.append(quote(column.getName()));
+      sources.append(expression);
+    }
+
+    for(String key : mappings.keySet()) {
+      if(!mapped.contains(key)) {
+        throw new IllegalArgumentException(
+          "Mapped column " + key + " isn't declared in " + table + ".");
+      }
+    }
+    for(SQLiteSchema.Column liveColumn : liveColumns) {
+      if(null == find(columns, liveColumn.getName().toLowerCase(Locale.US))) {
+        droppedColumns.add(liveColumn.getName());
+      }
+    }
+
+    // Keep the rowids, unless a column of the new table stands for them.
+    if(!hasRowidAlias) {
+      targets.insert(0, 0 < targets.length() ? "rowid, " : "rowid");
+      sources.insert(0, 0 < sources.length() ? "rowid, " : "rowid");
+    }
+
+    // Copy the rows in chunks of consecutive rowids.
+    final String boundSql =
+      "SELECT max(rowid) FROM (SELECT rowid FROM " + quote(table) +
+      " WHERE rowid >= ? ORDER BY rowid LIMIT " + chunkSize + ")";
+    final SQLiteBackendStatement insert = connection.compileStatement(
+      "INSERT INTO " + quote(tempTable) + " (" + targets + ") SELECT " +
+      sources + " FROM " + quote(table) + " WHERE rowid BETWEEN ? AND ?"
+    );
+    long rows = 0;
+    int chunks = 0;
+    try {
+      long lowerBound = Long.MIN_VALUE;
+      while(true) {
+        final Long upperBound = nullableLongForQuery(
+          connection,
+          boundSql,
+          lowerBound
+        );
+        if(null == upperBound) {
+          break;
+        }
+
+        insert.bindAll(lowerBound, upperBound);
+        rows += insert.executeUpdateDelete();
+        chunks++;
+
+        if(Long.MAX_VALUE == upperBound) {
+          break;
+        }
+        lowerBound = upperBound + 1;
+      }
+    } finally {
+      insert.close();
+    }
+
+    if(expectedRows != rows) {
+      throw connection.newException(
+        "Copied " + rows + " of " + expectedRows + " rows of " + table);
+    }
+
+    // Replace the old table. In legacy mode, renaming doesn't try to fix
+    // references in views and triggers, which refer to the table by its name
+    // and would fail to parse while it's missing.
+    connection.execSQL("DROP TABLE " + quote(table));
+    connection.execSQL("PRAGMA legacy_alter_table = ON");
+    try {
+      connection.execSQL(
+        "ALTER TABLE " + quote(tempTable) + " RENAME TO " + quote(table));
+    } finally {
+      connection.execSQL("PRAGMA legacy_alter_table = OFF");
+    }
+
+    for(SQLiteSchema.Entry entry : entries) {
+      try {
+        entry.create(connection);
+      } catch(RuntimeException error) {
+        final RuntimeException wrapped = connection.newException(
+          "Unable to create " + entry + " again, omit it if it no longer " +
+          "applies: " + error.getMessage());
+        wrapped.initCause(error);
+        throw wrapped;
+      }
+    }
+    SQLiteSchema.checkForeignKeys(connection, table);
+
+    final SQLiteRebuildReport report = new SQLiteRebuildReport(
+      table,
+      true,
+      addedColumns,
+      droppedColumns,
+      rows,
+      chunks,
+      System.nanoTime() - startTime
+    );
+    Logger.i(LOG_TAG, "Rebuilt " + report);
+    return report;
+  }
+
+  private static SQLiteSchema.Column find(
+    List<SQLiteSchema.Column> columns,
+    String key
+  ) {
+    for(SQLiteSchema.Column column : columns) {
+      if(key.equals(column.getName().toLowerCase(Locale.US))) {
+        return column;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether the specified column is an alias of the rowid; that is, the
+   * only primary key column, declared as INTEGER.
+   */
+  private static boolean isRowidAlias(
+    SQLiteSchema.Column column,
+    List<SQLiteSchema.Column> columns
+  ) {
+    if(1 != column.getPrimaryKey() ||
+      !"INTEGER".equalsIgnoreCase(column.getType())
+    ) {
+      return false;
+    }
+    for(SQLiteSchema.Column other : columns) {
+      if(1 < other.getPrimaryKey()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String getDefinitions(String sql) {
+    final int start = sql.indexOf('(');
+    final int end = sql.lastIndexOf(')');
+    return 0 > start || end < start ? sql : sql.substring(1 + start, end);
+  }
+
+  private static String normalize(String sql) {
+    return sql
+      .replaceAll("\\s+", " ")
+      .replaceAll(" ?([(),]) ?", "$1")
+      .trim();
+  }
+
+  private static String quote(String identifier) {
+    return SQLiteSchema.quote(identifier);
+  }
+
+  private static long longForQuery(SQLiteConnection connection, String sql) {
+    final Long value = nullableLongForQuery(connection, sql);
+    return null == value ? 0 : value;
+  }
+
+  private static Long nullableLongForQuery(
+    SQLiteConnection connection,
+    String sql,
+    Object... args
+  ) {
+    final SQLiteBackendCursor cursor = connection.query(sql, args);
+    try {
+      return !cursor.moveToNext() || cursor.isNull(0) ? null : cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import java.util.Locale;
+
+/**
+ * Memory released by {@link SQLiteManager#trimMemory(int)}, broken down by
+ * tier. Tiers are applied in order, each one only when the trim level is at
+ * least as severe as its threshold:
+ *
+ * <ol>
+ *   <li>{@link #TIER_PAGE_CACHES}: page caches of all connections are shrunk.</li>
+ *   <li>{@link #TIER_STATEMENTS}: compiled statement caches and cached query
+ *   results are dropped.</li>
+ *   <li>{@link #TIER_READERS}: idle reader connections of pools are closed,
+ *   and rows of mirrored tables are dropped.</li>
+ *   <li>{@link #TIER_DATABASES}: databases which aren't in use are closed.</li>
+ * </ol>
+ *
+ * Memory is measured from the library's own accounting, that is the estimated
+ * Java heap held by the dropped query results and rows, plus the bytes
+ * {@link android.database.sqlite.SQLiteDatabase#releaseMemory()} reports
+ * after each tier. Memory SQLite frees by itself when closing statements and
+ * connections isn't visible to either, so the figures are lower bounds.
+ *
+ * @see SQLiteApplication#onTrimMemory(int)
+ * @since 1.4
+ */
+public class SQLiteTrimReport {
+
+  /**
+   * Tier which shrinks page caches of all connections.
+   */
+  public final static int TIER_PAGE_CACHES = 0;
+
+  /**
+   * Tier which drops compiled statement caches and cached query results.
+   */
+  public final static int TIER_STATEMENTS = 1;
+
+  /**
+   * Tier which closes idle reader connections of pools and drops rows of
+   * mirrored tables.
+   */
+  public final static int TIER_READERS = 2;
+
+  /**
+   * Tier which closes databases which aren't in use.
+   */
+  public final static int TIER_DATABASES = 3;
+
+  /**
+   * Number of tiers.
+   */
+  public final static int TIER_COUNT = 4;
+
+  private final static String[] TIER_NAMES = {
+    "page caches",
+    "statements",
+    "readers",
+    "databases"
+  };
+
+  private final int level;
+  private final int tiers;
+  private final long[] bytesFreed;
+
+  SQLiteTrimReport(int level, int tiers, long[] bytesFreed) {
+    this.level = level;
+    this.tiers = tiers;
+    this.bytesFreed = bytesFreed;
+  }
+
+  /**
+   * Returns the trim level which was handled, as passed to
+   * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+   *
+   * @return trim level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Returns the number of tiers which were applied, starting from
+   * {@link #TIER_PAGE_CACHES}.
+   *
+   * @return number of applied tiers
+   */
+  public int getTierCount() {
+    return tiers;
+  }
+
+  /**
+   * Returns the number of bytes released by the specified tier.
+   *
+   * @param tier one of the TIER_* constants
+   * @return number of bytes released, 0 if the tier wasn't applied
+   */
+  public long getBytesFreed(int tier) {
+    return bytesFreed[tier];
+  }
+
+  /**
+   * Returns the number of bytes released by all tiers.
+   *
+   * @return number of bytes released
+   */
+  public long getTotalBytesFreed() {
+    long total = 0;
+    for(long bytes : bytesFreed) {
+      total += bytes;
+    }
+    return total;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(
+      String.format(Locale.US, "level %d: %d byte(s)", level, getTotalBytesFreed())
+    );
+    for(int tier = 0; tier < tiers; tier++) {
+      builder
+        .append(0 == tier ? " (" : ", ")
+        .append(TIER_NAMES[tier])
+        .append(' ')
+        .append(bytesFreed[tier]);
+    }
+    if(0 < tiers) {
+      builder.append(')');
+    }
+    return builder.toString();
+  }
+}
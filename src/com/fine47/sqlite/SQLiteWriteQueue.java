@@ -0,0 +1,614 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+import com.fine47.sqlite.aux.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces small writes to a single {@link SQLiteDatabase} into grouped
+ * transactions. Writes may be submitted from any thread; they're applied in
+ * submission order on a dedicated writer thread, in batches wrapped by
+ * {@link SQLiteDatabase#beginTransactionNonExclusive()} and
+ * {@link SQLiteDatabase#setTransactionSuccessful()}. This way, thousands of
+ * tiny writes share a handful of commits instead of paying for one each.
+ *
+ * A batch is committed as soon as it holds the maximum number of writes, or
+ * when the flush interval has elapsed since its first write was taken. The
+ * {@link Future} returned for a write completes only after its batch has been
+ * committed. If a write fails, the batch is rolled back and its writes are
+ * retried one transaction each, so only the failing write reports an error.
+ *
+ * Instances are obtained by calling
+ * {@link SQLiteManager#getWriteQueue(String)}, and are closed along with
+ * their database by {@link SQLiteManager#closeDatabase(String)}.
+ *
+ * @since 1.4
+ */
+public class SQLiteWriteQueue {
+
+  private final static String LOG_TAG = "SQLiteWriteQueue";
+
+  /**
+   * Default maximum number of writes in a single batch.
+   */
+  public final static int DEFAULT_MAX_BATCH_SIZE = 256;
+
+  /**
+   * Default time, in milliseconds, a batch waits for more writes.
+   */
+  public final static long DEFAULT_FLUSH_INTERVAL = 20;
+
+  private final SQLiteDatabase db;
+  private final int maxBatchSize;
+  private final long flushInterval;
+  private final LinkedBlockingQueue<WriteTask<?>> queue;
+  private final Thread writerThread;
+
+  // Guards the closed flag together with additions to the queue, so no write
+  // can be queued behind the one which stops the writer thread.
+  private final Object lock = new Object();
+
+  private volatile boolean closed;
+  private volatile long batches;
+  private volatile long writes;
+  private volatile long lastUsed = SystemClock.elapsedRealtime();
+
+  SQLiteWriteQueue(SQLiteDatabase db, int maxBatchSize, long flushInterval) {
+    if(1 > maxBatchSize) {
+      throw new IllegalArgumentException(
+        "Maximum batch size must be equal or greater than 1.");
+    }
+    if(0 > flushInterval) {
+      throw new IllegalArgumentException(
+        "Flush interval must be equal or greater than 0.");
+    }
+
+    this.db = db;
+    this.maxBatchSize = maxBatchSize;
+    this.flushInterval = flushInterval;
+    this.queue = new LinkedBlockingQueue();
+    this.writerThread = new Thread(
+      new Runnable() {
+        @Override
+        public void run() {
+          android.os.Process.setThreadPriority(
+            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+          drain();
+        }
+      },
+      LOG_TAG + "-" + Util.getFileName(db)
+    );
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Returns the database this queue writes to.
+   *
+   * @return database instance
+   */
+  public SQLiteDatabase getDatabase() {
+    return db;
+  }
+
+  /**
+   * Returns the maximum number of writes in a single batch.
+   *
+   * @return maximum batch size
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the time, in milliseconds, a batch waits for more writes.
+   *
+   * @return flush interval
+   */
+  public long getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Returns the number of writes waiting to be applied.
+   *
+   * @return number of pending writes
+   */
+  public int getPendingCount() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the number of batches committed so far.
+   *
+   * @return number of batches
+   */
+  public long getBatchCount() {
+    return batches;
+  }
+
+  /**
+   * Returns the number of writes committed so far.
+   *
+   * @return number of writes
+   */
+  public long getWriteCount() {
+    return writes;
+  }
+
+  /**
+   * Checks whether this queue still accepts writes; a queue is closed either
+   * explicitly or when its database is closed.
+   *
+   * @return TRUE if queue is open, FALSE otherwise
+   */
+  public boolean isOpen() {
+    return !closed && db.isOpen();
+  }
+
+  /**
+   * Returns the time this queue was last used, in milliseconds since boot.
+   *
+   * @return time of last use
+   * @see SystemClock#elapsedRealtime()
+   */
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  /**
+   * Submits a write to this queue.
+   *
+   * @param <T> result type of the write
+   * @param write to apply
+   * @return future which completes when the write has been committed
+   */
+  public <T> Future<T> submit(Write<T> write) {
+    assert null != write;
+    final WriteTask<T> task = new WriteTask(write);
+    synchronized(lock) {
+      if(!isOpen()) {
+        throw new IllegalStateException(
+          "Write queue has been closed: " + Util.getFileName(db));
+      }
+      lastUsed = SystemClock.elapsedRealtime();
+      queue.add(task);
+    }
+    return task;
+  }
+
+  /**
+   * Submits a write to this queue, declaring the tables it writes to. Once
+   * committed, only the results of {@link SQLiteQueryCache} read from these
+   * tables are invalidated, instead of all of them.
+   *
+   * @param <T> result type of the write
+   * @param write to apply
+   * @param tables names of the tables the write changes
+   * @return future which completes when the write has been committed
+   */
+  public <T> Future<T> submit(Write<T> write, String... tables) {
+    assert null != tables;
+    return submit(new TableWrite<T>(write, tables));
+  }
+
+  /**
+   * Submits an SQL statement which doesn't return any data to this queue.
+   *
+   * @param sql of the statement
+   * @param args to bind to the statement
+   * @return future which completes when the write has been committed
+   */
+  public Future<Void> submit(String sql, Object... args) {
+    return submit(new SqlWrite(sql, null == args ? new Object[0] : args));
+  }
+
+  /**
+   * Stops accepting writes, and waits until all pending writes have been
+   * applied.
+   */
+  public void close() {
+    synchronized(lock) {
+      if(closed) {
+        return;
+      }
+      closed = true;
+
+      // Wake up the writer thread in case it's waiting for writes.
+      queue.add(new WriteTask<Void>(null));
+    }
+
+    boolean interrupted = false;
+    while(writerThread.isAlive()) {
+      try {
+        writerThread.join();
+      } catch(InterruptedException ignored) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Log.i(
+      LOG_TAG,
+      String.format(
+        "Closed queue for '%s': %d write(s) in %d batch(es)",
+        Util.getFileName(db),
+        writes,
+        batches
+      )
+    );
+  }
+
+  private void drain() {
+    final ArrayList<WriteTask<?>> batch = new ArrayList(maxBatchSize);
+    boolean stopping = false;
+
+    while(!stopping) {
+      try {
+        // Wait for the first write of the next batch.
+        final WriteTask<?> first = queue.take();
+        final long deadline = System.nanoTime() +
+          TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        WriteTask<?> task = first;
+
+        // Collect more writes until the batch is full or its time is up.
+        while(null != task) {
+          if(null == task.write) {
+            stopping = true;
+          } else if(!task.isCancelled()) {
+            batch.add(task);
+          }
+          if(stopping || maxBatchSize <= batch.size()) {
+            break;
+          }
+          task = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+      } catch(InterruptedException ignored) {
+        // Only the writer thread itself may be interrupted; keep going.
+      }
+
+      if(!batch.isEmpty()) {
+        apply(batch);
+        batch.clear();
+      }
+    }
+
+    // Nothing can be queued after the stop marker; should anything be left,
+    // fail it rather than leave its future pending forever.
+    WriteTask<?> task;
+    while(null != (task = queue.poll())) {
+      task.fail(new IllegalStateException(
+        "Write queue has been closed: " + Util.getFileName(db)));
+    }
+  }
+
+  private void apply(ArrayList<WriteTask<?>> batch) {
+    if(!db.isOpen()) {
+      final IllegalStateException error = new IllegalStateException(
+        "Database has been closed: " + Util.getFileName(db));
+      for(WriteTask<?> task : batch) {
+        task.fail(error);
+      }
+      return;
+    }
+
+    final Object[] results = new Object[batch.size()];
+    boolean committed = false;
+
+    try {
+      db.beginTransactionNonExclusive();
+      try {
+        for(int index = 0; index < results.length; index++) {
+          results[index] = batch.get(index).write.apply(db);
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+      committed = true;
+    } catch(RuntimeException error) {
+      Log.w(
+        LOG_TAG,
+        "Batch of " + batch.size() + " write(s) failed, retrying one by one",
+        error
+      );
+    }
+
+    if(committed) {
+      invalidateQueryCache(batch);
+      invalidateHotTables(batch);
+      for(int index = 0; index < results.length; index++) {
+        batch.get(index).succeed(results[index]);
+      }
+      writes += results.length;
+      batches++;
+      return;
+    }
+
+    // Isolate the failing write(s) by applying each in its own transaction.
+    for(WriteTask<?> task : batch) {
+      try {
+        Object result;
+        db.beginTransactionNonExclusive();
+        try {
+          result = task.write.apply(db);
+          db.setTransactionSuccessful();
+        } finally {
+          db.endTransaction();
+        }
+        final List<WriteTask<?>> tasks =
+          Collections.<WriteTask<?>>singletonList(task);
+        invalidateQueryCache(tasks);
+        invalidateHotTables(tasks);
+        task.succeed(result);
+        writes++;
+        batches++;
+      } catch(RuntimeException error) {
+        task.fail(error);
+      }
+    }
+  }
+
+  /**
+   * Invalidates the results of the database's {@link SQLiteQueryCache}, if
+   * any, which were read from the tables changed by the specified writes.
+   *
+   * @param tasks which have just been committed
+   */
+  private void invalidateQueryCache(List<WriteTask<?>> tasks) {
+    final SQLiteQueryCache cache = SQLiteManager.findQueryCache(db.getPath());
+    if(null == cache) {
+      return;
+    }
+
+    final ArrayList<String> sqls = new ArrayList();
+    final ArrayList<String> tables = new ArrayList();
+    for(WriteTask<?> task : tasks) {
+      if(task.write instanceof SqlWrite) {
+        sqls.add(((SqlWrite)task.write).sql);
+      } else if(task.write instanceof TableWrite) {
+        tables.addAll(Arrays.asList(((TableWrite<?>)task.write).tables));
+      } else {
+        // Tables written by arbitrary writes are unknown.
+        cache.invalidateAll();
+        return;
+      }
+    }
+    cache.invalidate(tables.toArray(new String[tables.size()]));
+    cache.invalidateWrites(sqls);
+  }
+
+  /**
+   * Marks the database's {@link SQLiteHotTable} mirrors, if any, which were
+   * changed by the specified writes for reloading.
+   *
+   * @param tasks which have just been committed
+   */
+  private void invalidateHotTables(List<WriteTask<?>> tasks) {
+    final Collection<SQLiteHotTable> hotTables =
+      SQLiteManager.findHotTables(db.getPath());
+    if(hotTables.isEmpty()) {
+      return;
+    }
+
+    final ArrayList<String> sqls = new ArrayList();
+    final HashSet<String> tables = new HashSet();
+    for(WriteTask<?> task : tasks) {
+      if(task.write instanceof SqlWrite) {
+        sqls.add(((SqlWrite)task.write).sql);
+      } else if(task.write instanceof TableWrite) {
+        for(String table : ((TableWrite<?>)task.write).tables) {
+          tables.add(table.toLowerCase(Locale.US));
+        }
+      } else {
+        // Tables written by arbitrary writes are unknown.
+        for(SQLiteHotTable hotTable : hotTables) {
+          hotTable.invalidate();
+        }
+        return;
+      }
+    }
+
+    for(SQLiteHotTable hotTable : hotTables) {
+      if(tables.contains(hotTable.getTable().toLowerCase(Locale.US))) {
+        hotTable.invalidate();
+      } else if(!sqls.isEmpty()) {
+        hotTable.invalidateWrites(sqls);
+      }
+    }
+  }
+
+  /**
+   * A write operation to apply on the writer thread, inside a transaction.
+   *
+   * @param <T> result type of the write
+   */
+  public static interface Write<T> {
+
+    /**
+     * Applies this write to the specified database. The write may be applied
+     * more than once if another write in its batch fails, so it must not have
+     * side effects outside of the database.
+     *
+     * @param db database to write to
+     * @return result of the write, passed on to its future
+     */
+    public T apply(final SQLiteDatabase db);
+  }
+
+  /**
+   * A write of a single SQL statement.
+   */
+  private static class SqlWrite implements Write<Void> {
+
+    final String sql;
+    final Object[] args;
+
+    SqlWrite(String sql, Object[] args) {
+      this.sql = sql;
+      this.args = args;
+    }
+
+    @Override
+    public Void apply(SQLiteDatabase db) {
+      db.execSQL(sql, args);
+      return null;
+    }
+  }
+
+  /**
+   * A write which declares the tables it changes.
+   *
+   * @param <T> result type of the write
+   */
+  private static class TableWrite<T> implements Write<T> {
+
+    final Write<T> write;
+    final String[] tables;
+
+    TableWrite(Write<T> write, String[] tables) {
+      this.write = write;
+      this.tables = tables;
+    }
+
+    @Override
+    public T apply(SQLiteDatabase db) {
+      return write.apply(db);
+    }
+  }
+
+  /**
+   * A future which is completed by the writer thread after commit.
+   */
+  private static class WriteTask<T> implements Future<T> {
+
+    private final static int PENDING = 0;
+    private final static int SUCCEEDED = 1;
+    private final static int FAILED = 2;
+    private final static int CANCELLED = 3;
+
+    final Write<T> write;
+
+    private int state = PENDING;
+    private Object result;
+
+    WriteTask(Write<T> write) {
+      this.write = write;
+    }
+
+    void succeed(Object result) {
+      complete(SUCCEEDED, result);
+    }
+
+    void fail(Throwable error) {
+      complete(FAILED, error);
+    }
+
+    private synchronized boolean complete(int state, Object result) {
+      if(PENDING != this.state) {
+        return false;
+      }
+      this.state = state;
+      this.result = result;
+      notifyAll();
+      return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      // Writes are applied in batches and can't be interrupted; a write which
+      // is cancelled in time is skipped, otherwise its result is dropped.
+      return complete(CANCELLED, null);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+      return CANCELLED == state;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+      return PENDING != state;
+    }
+
+    @Override
+    public synchronized T get()
+      throws InterruptedException, ExecutionException
+    {
+      while(PENDING == state) {
+        wait();
+      }
+      return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException
+    {
+      final long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while(PENDING == state) {
+        final long remaining = deadline - System.nanoTime();
+        if(0 >= remaining) {
+          throw new TimeoutException();
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      return report();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report() throws ExecutionException {
+      switch(state) {
+        case SUCCEEDED:
+          return (T)result;
+        case CANCELLED:
+          throw new CancellationException();
+        default:
+          throw new ExecutionException((Throwable)result);
+      }
+    }
+  }
+}
@@ -67,7 +67,8 @@ public class ElasticArrayList<E> extends ArrayList<E> {
   /**
    * Adds an entry at the specified index position. No exceptions are thrown if
    * the index is outside the array bounds, instead NULLs are inserted up to the
-   * index position.
+   * index position. If the index is within the array bounds, the existing entry
+   * is replaced instead of shifting the following entries.
    *
    * @param index at which to add the entry
    * @param entry to add
@@ -75,6 +76,10 @@ public class ElasticArrayList<E> extends ArrayList<E> {
   @Override
   public void add(int index, E entry) {
     if(-1 < index) {
+      if(size() > index) {
+        super.set(index, entry);
+        return;
+      }
       int delta = index - size();
       while(0 < delta--) {
         super.add(null);
@@ -0,0 +1,116 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.aux;
+
+import java.util.logging.Level;
+
+/**
+ * Logs messages to Android's log when running on Android, and to
+ * {@link java.util.logging} otherwise. Used by classes which also run on a
+ * plain JVM, such as {@link com.fine47.sqlite.SQLitePlanRunner}.
+ *
+ * @since 1.4
+ */
+public class Logger {
+
+  private final static boolean ANDROID = isAndroid();
+
+  private Logger() {
+  }
+
+  /**
+   * Logs an informational message.
+   *
+   * @param tag identifying the source of the message
+   * @param message to log
+   */
+  public static void i(String tag, String message) {
+    if(ANDROID) {
+      AndroidLog.i(tag, message);
+    } else {
+      java.util.logging.Logger.getLogger(tag).log(Level.INFO, message);
+    }
+  }
+
+  /**
+   * Logs a warning message.
+   *
+   * @param tag identifying the source of the message
+   * @param message to log
+   */
+  public static void w(String tag, String message) {
+    if(ANDROID) {
+      AndroidLog.w(tag, message);
+    } else {
+      java.util.logging.Logger.getLogger(tag).log(Level.WARNING, message);
+    }
+  }
+
+  /**
+   * Logs an error message along with its cause.
+   *
+   * @param tag identifying the source of the message
+   * @param message to log
+   * @param error cause of the error
+   */
+  public static void e(String tag, String message, Throwable error) {
+    if(ANDROID) {
+      AndroidLog.e(tag, message, error);
+    } else {
+      java.util.logging.Logger.getLogger(tag).log(Level.SEVERE, message, error);
+    }
+  }
+
+  private static boolean isAndroid() {
+    try {
+      Class.forName("android.util.Log");
+      return true;
+    } catch(ClassNotFoundException error) {
+      return false;
+    }
+  }
+
+  /**
+   * Keeps references to Android's log in a class of its own, so it's only
+   * loaded when running on Android.
+   */
+  private static class AndroidLog {
+
+    static void i(String tag, String message) {
+      android.util.Log.i(tag, message);
+    }
+
+    static void w(String tag, String message) {
+      android.util.Log.w(tag, message);
+    }
+
+    static void e(String tag, String message, Throwable error) {
+      android.util.Log.e(tag, message, error);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.aux;
+
+/**
+ * A hash map with primitive long keys, which avoids boxing keys and allocating
+ * an entry for each mapping. Keys are kept in open addressing tables with
+ * linear probing; NULL values aren't supported.
+ *
+ * This class isn't synchronized.
+ *
+ * @param <V> Value type of this map
+ * @since 1.4
+ */
+public class LongHashMap<V> {
+
+  private final static int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  private Object[] values;
+  private int size;
+
+  /**
+   * Default constructor.
+   */
+  public LongHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Constructs a new instance of {@link LongHashMap} which holds the specified
+   * number of mappings without growing.
+   *
+   * @param capacity expected number of mappings
+   */
+  public LongHashMap(int capacity) {
+    allocate(tableSizeFor(capacity));
+  }
+
+  /**
+   * Returns the number of mappings in this map.
+   *
+   * @return map size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value mapped to the specified key.
+   *
+   * @param key to look up
+   * @return value of the key, or NULL if not mapped
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    final int mask = keys.length - 1;
+    int index = indexOf(key, mask);
+    Object value;
+    while(null != (value = values[index])) {
+      if(key == keys[index]) {
+        return (V)value;
+      }
+      index = (index + 1) & mask;
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether the specified key is mapped.
+   *
+   * @param key to look up
+   * @return TRUE if the key is mapped, FALSE otherwise
+   */
+  public boolean containsKey(long key) {
+    return null != get(key);
+  }
+
+  /**
+   * Maps the specified key to the specified value.
+   *
+   * @param key to map
+   * @param value to map the key to, must not be NULL
+   * @return previous value of the key, or NULL if not mapped
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if(null == value) {
+      throw new IllegalArgumentException("Value must not be NULL.");
+    }
+
+    final int mask = keys.length - 1;
+    int index = indexOf(key, mask);
+    Object previous;
+    while(null != (previous = values[index])) {
+      if(key == keys[index]) {
+        values[index] = value;
+        return (V)previous;
+      }
+      index = (index + 1) & mask;
+    }
+
+    keys[index] = key;
+    values[index] = value;
+    if(keys.length < 2 * ++size) {
+      rehash(2 * keys.length);
+    }
+    return null;
+  }
+
+  /**
+   * Removes the mapping of the specified key.
+   *
+   * @param key to remove
+   * @return previous value of the key, or NULL if not mapped
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    final int mask = keys.length - 1;
+    int index = indexOf(key, mask);
+    Object previous;
+    while(null != (previous = values[index])) {
+      if(key == keys[index]) {
+        shiftBack(index, mask);
+        size--;
+        return (V)previous;
+      }
+      index = (index + 1) & mask;
+    }
+    return null;
+  }
+
+  /**
+   * Removes all mappings and shrinks this map to its minimum capacity.
+   */
+  public void clear() {
+    allocate(MIN_CAPACITY);
+    size = 0;
+  }
+
+  // Fills the slot of a removed key with the following keys of its run, so
+  // lookups don't stop early at the hole.
+  private void shiftBack(int hole, int mask) {
+    int index = hole;
+    while(true) {
+      index = (index + 1) & mask;
+      if(null == values[index]) {
+        break;
+      }
+      final int home = indexOf(keys[index], mask);
+      if(((index - home) & mask) >= ((index - hole) & mask)) {
+        keys[hole] = keys[index];
+        values[hole] = values[index];
+        hole = index;
+      }
+    }
+    values[hole] = null;
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = keys;
+    final Object[] oldValues = values;
+    allocate(capacity);
+
+    final int mask = capacity - 1;
+    for(int slot = 0; slot < oldKeys.length; slot++) {
+      if(null != oldValues[slot]) {
+        int index = indexOf(oldKeys[slot], mask);
+        while(null != values[index]) {
+          index = (index + 1) & mask;
+        }
+        keys[index] = oldKeys[slot];
+        values[index] = oldValues[slot];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+  }
+
+  private static int indexOf(long key, int mask) {
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32)) & mask;
+  }
+
+  // Tables are kept at most half full.
+  private static int tableSizeFor(int capacity) {
+    int size = MIN_CAPACITY;
+    while(size < 2 * capacity && 0 < size) {
+      size <<= 1;
+    }
+    return 0 < size ? size : 1 << 30;
+  }
+
+  @Override
+  public String toString() {
+    return "LongHashMap{size=" + size + ", capacity=" + keys.length + "}";
+  }
+}
@@ -29,8 +29,16 @@ package com.fine47.sqlite.aux;
 
 import android.app.Application;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /**
@@ -101,4 +109,176 @@ public class Util {
       ? absolutePath
       : absolutePath.substring(1 + lastSlashPos);
   }
+
+  /**
+   * Executes the specified PRAGMA statement and returns the first column of
+   * its first row, if any. The statement is specified without the "PRAGMA"
+   * keyword, for example "cache_size=-2000".
+   *
+   * PRAGMA statements are executed as queries since some of them return a
+   * result, which isn't allowed by {@link SQLiteDatabase#execSQL(String)}.
+   *
+   * @param db database instance
+   * @param pragma statement to execute
+   * @return first column of the first row, or NULL if no rows were returned
+   */
+  public static String pragma(SQLiteDatabase db, String pragma) {
+    final Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+    try {
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Executes the specified PRAGMA statement and returns the first column of
+   * its first row as a number.
+   *
+   * @param db database instance
+   * @param pragma statement to execute
+   * @return first column of the first row, or 0 if no rows were returned
+   */
+  public static long pragmaForLong(SQLiteDatabase db, String pragma) {
+    final String result = pragma(db, pragma);
+    return null == result ? 0 : Long.parseLong(result);
+  }
+
+  /**
+   * Checks whether the specified database is in write-ahead logging mode.
+   *
+   * @param db database instance
+   * @return TRUE if write-ahead logging is enabled, FALSE otherwise
+   */
+  public static boolean isWriteAheadLoggingEnabled(SQLiteDatabase db) {
+    return "wal".equalsIgnoreCase(pragma(db, "journal_mode"));
+  }
+
+  /**
+   * Binds the specified arguments to a compiled statement, in order and
+   * starting at index 1. Numbers, booleans, byte arrays and NULLs are bound
+   * natively; all other objects are bound as strings.
+   *
+   * @param program compiled statement
+   * @param args to bind
+   */
+  public static void bindAll(SQLiteProgram program, Object... args) {
+    if(null == args) {
+      return;
+    }
+    for(int index = 0; index < args.length; index++) {
+      final Object arg = args[index];
+      if(null == arg) {
+        program.bindNull(1 + index);
+      } else if(arg instanceof Double || arg instanceof Float) {
+        program.bindDouble(1 + index, ((Number)arg).doubleValue());
+      } else if(arg instanceof Number) {
+        program.bindLong(1 + index, ((Number)arg).longValue());
+      } else if(arg instanceof Boolean) {
+        program.bindLong(1 + index, (Boolean)arg ? 1 : 0);
+      } else if(arg instanceof byte[]) {
+        program.bindBlob(1 + index, (byte[])arg);
+      } else {
+        program.bindString(1 + index, arg.toString());
+      }
+    }
+  }
+
+  /**
+   * Runs the specified query, binding its arguments like
+   * {@link #bindAll(SQLiteProgram, Object...)} does. Unlike
+   * {@link SQLiteDatabase#rawQuery(String, String[])}, which binds everything
+   * as strings, numbers and byte arrays keep their storage class.
+   *
+   * @param db to query
+   * @param sql of the query
+   * @param args to bind to the query
+   * @return cursor over the result
+   */
+  public static Cursor rawQuery(
+    SQLiteDatabase db,
+    String sql,
+    final Object... args
+  ) {
+    return db.rawQueryWithFactory(
+      new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(
+          SQLiteDatabase db,
+          SQLiteCursorDriver driver,
+          String editTable,
+          SQLiteQuery query
+        ) {
+          bindAll(query, args);
+          return new SQLiteCursor(driver, editTable, query);
+        }
+      },
+      sql,
+      null,
+      null
+    );
+  }
+
+  /**
+   * Returns the value of the specified column in the current row of a cursor,
+   * using the most appropriate Java type for its storage class.
+   *
+   * @param cursor positioned on a row
+   * @param column index of the column
+   * @return a Long, Double, String or byte array; or NULL
+   */
+  public static Object getValue(Cursor cursor, int column) {
+    switch(cursor.getType(column)) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return cursor.getLong(column);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return cursor.getDouble(column);
+      case Cursor.FIELD_TYPE_STRING:
+        return cursor.getString(column);
+      case Cursor.FIELD_TYPE_BLOB:
+        return cursor.getBlob(column);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Waits for the specified {@link Future} to complete and returns its result.
+   * Interruptions are deferred until the result is available, and the thread's
+   * interrupted status is restored afterwards. Errors thrown by the computation
+   * are rethrown as-is if unchecked, or wrapped in {@link SQLiteException}
+   * otherwise.
+   *
+   * @param <T> result type of the future
+   * @param future to wait for
+   * @return result of the future
+   */
+  public static <T> T getUninterruptibly(Future<T> future) {
+    boolean interrupted = false;
+    try {
+      while(true) {
+        try {
+          return future.get();
+        } catch(InterruptedException ignored) {
+          interrupted = true;
+        } catch(ExecutionException error) {
+          final Throwable cause = error.getCause();
+          if(cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          }
+          if(cause instanceof Error) {
+            throw (Error)cause;
+          }
+          final SQLiteException wrapped = new SQLiteException(
+            null == cause ? error.getMessage() : cause.getMessage());
+          wrapped.initCause(cause);
+          throw wrapped;
+        }
+      }
+    } finally {
+      if(interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
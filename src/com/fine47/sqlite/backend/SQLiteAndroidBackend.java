@@ -0,0 +1,297 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import com.fine47.sqlite.aux.Util;
+import java.io.File;
+
+/**
+ * A {@link SQLiteBackend} backed by Android's own SQLite framework. Errors are
+ * reported as {@link SQLiteException} instances.
+ *
+ * @since 1.4
+ */
+public class SQLiteAndroidBackend implements SQLiteBackend {
+
+  @Override
+  public SQLiteConnection open(String filePath, boolean readOnly) {
+    assert null != filePath;
+
+    if(readOnly) {
+      return wrap(
+        SQLiteDatabase.openDatabase(filePath, null, SQLiteDatabase.OPEN_READONLY)
+      );
+    }
+
+    // Make sure that the parent directory exists.
+    new File(Util.getParentPath(filePath)).mkdirs();
+
+    return wrap(
+      SQLiteDatabase.openDatabase(
+        filePath,
+        null,
+        SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY
+      )
+    );
+  }
+
+  /**
+   * Wraps an already opened {@link SQLiteDatabase} in a connection. Closing
+   * the connection closes the database as well.
+   *
+   * @param db database instance to wrap
+   * @return connection to the database
+   */
+  public static SQLiteConnection wrap(SQLiteDatabase db) {
+    assert null != db;
+    return new AndroidConnection(db);
+  }
+
+  /**
+   * Returns the {@link SQLiteDatabase} behind the specified connection, if it
+   * was opened by this backend.
+   *
+   * @param connection to unwrap
+   * @return database instance, or NULL if opened by another backend
+   */
+  public static SQLiteDatabase unwrap(SQLiteConnection connection) {
+    return connection instanceof AndroidConnection
+      ? ((AndroidConnection)connection).db
+      : null;
+  }
+
+  private static class AndroidConnection implements SQLiteConnection {
+
+    private final SQLiteDatabase db;
+
+    AndroidConnection(SQLiteDatabase db) {
+      this.db = db;
+    }
+
+    @Override
+    public String getFilePath() {
+      return db.getPath();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return db.isOpen();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+      return db.isReadOnly();
+    }
+
+    @Override
+    public int getVersion() {
+      return db.getVersion();
+    }
+
+    @Override
+    public void setVersion(int version) {
+      db.setVersion(version);
+    }
+
+    @Override
+    public long getPageSize() {
+      return db.getPageSize();
+    }
+
+    @Override
+    public void beginTransaction() {
+      db.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+      db.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+      db.endTransaction();
+    }
+
+    @Override
+    public boolean inTransaction() {
+      return db.inTransaction();
+    }
+
+    @Override
+    public void execSQL(String sql) {
+      db.execSQL(sql);
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] args) {
+      if(null == args) {
+        db.execSQL(sql);
+      } else {
+        db.execSQL(sql, args);
+      }
+    }
+
+    @Override
+    public SQLiteBackendStatement compileStatement(String sql) {
+      return new AndroidStatement(db.compileStatement(sql));
+    }
+
+    @Override
+    public SQLiteBackendCursor query(String sql, Object... args) {
+      return new AndroidCursor(Util.rawQuery(db, sql, args));
+    }
+
+    @Override
+    public RuntimeException newException(String message) {
+      return new SQLiteException(message);
+    }
+
+    @Override
+    public void close() {
+      db.close();
+    }
+  }
+
+  private static class AndroidStatement implements SQLiteBackendStatement {
+
+    private final SQLiteStatement statement;
+
+    AndroidStatement(SQLiteStatement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public void bindAll(Object... args) {
+      Util.bindAll(statement, args);
+    }
+
+    @Override
+    public void clearBindings() {
+      statement.clearBindings();
+    }
+
+    @Override
+    public void execute() {
+      statement.execute();
+    }
+
+    @Override
+    public long executeInsert() {
+      return statement.executeInsert();
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+      return statement.executeUpdateDelete();
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+      return statement.simpleQueryForLong();
+    }
+
+    @Override
+    public String simpleQueryForString() {
+      return statement.simpleQueryForString();
+    }
+
+    @Override
+    public void close() {
+      statement.close();
+    }
+  }
+
+  private static class AndroidCursor implements SQLiteBackendCursor {
+
+    private final Cursor cursor;
+
+    AndroidCursor(Cursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean moveToNext() {
+      return cursor.moveToNext();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return cursor.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return cursor.getColumnName(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+      return cursor.isNull(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+      return cursor.getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+      return cursor.getInt(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+      return cursor.getDouble(column);
+    }
+
+    @Override
+    public String getString(int column) {
+      return cursor.getString(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+      return cursor.getBlob(column);
+    }
+
+    @Override
+    public Object getValue(int column) {
+      return Util.getValue(cursor, column);
+    }
+
+    @Override
+    public void close() {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+/**
+ * A storage backend which opens {@link SQLiteConnection} instances to SQLite
+ * databases. {@link SQLiteAndroidBackend} is backed by Android's own SQLite
+ * framework, and {@link SQLiteJdbcBackend} by a JDBC driver so the same plans
+ * run on a plain JVM.
+ *
+ * @since 1.4
+ */
+public interface SQLiteBackend {
+
+  /**
+   * Opens a connection to the database at the specified absolute file path.
+   * Read-write databases are created if they don't exist.
+   *
+   * @param filePath absolute file path of the database
+   * @param readOnly TRUE to open the database in read-only mode
+   * @return new connection
+   */
+  public SQLiteConnection open(String filePath, boolean readOnly);
+}
@@ -0,0 +1,125 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+import java.io.Closeable;
+
+/**
+ * A forward-only cursor over the rows of a query run on a
+ * {@link SQLiteConnection}. Column indices start from 0.
+ *
+ * @since 1.4
+ */
+public interface SQLiteBackendCursor extends Closeable {
+
+  /**
+   * Moves to the next row.
+   *
+   * @return TRUE if moved, FALSE if there are no more rows
+   */
+  public boolean moveToNext();
+
+  /**
+   * Returns the number of columns of the query.
+   *
+   * @return column count
+   */
+  public int getColumnCount();
+
+  /**
+   * Returns the name of the specified column.
+   *
+   * @param column index of the column
+   * @return column name
+   */
+  public String getColumnName(int column);
+
+  /**
+   * Checks whether the specified column of the current row is NULL.
+   *
+   * @param column index of the column
+   * @return TRUE if NULL, FALSE otherwise
+   */
+  public boolean isNull(int column);
+
+  /**
+   * Returns the specified column of the current row as a number.
+   *
+   * @param column index of the column
+   * @return column value
+   */
+  public long getLong(int column);
+
+  /**
+   * Returns the specified column of the current row as an integer.
+   *
+   * @param column index of the column
+   * @return column value
+   */
+  public int getInt(int column);
+
+  /**
+   * Returns the specified column of the current row as a floating-point
+   * number.
+   *
+   * @param column index of the column
+   * @return column value
+   */
+  public double getDouble(int column);
+
+  /**
+   * Returns the specified column of the current row as a string.
+   *
+   * @param column index of the column
+   * @return column value, or NULL
+   */
+  public String getString(int column);
+
+  /**
+   * Returns the specified column of the current row as a byte array.
+   *
+   * @param column index of the column
+   * @return column value, or NULL
+   */
+  public byte[] getBlob(int column);
+
+  /**
+   * Returns the specified column of the current row with its own type: Long,
+   * Double, String, byte[] or NULL.
+   *
+   * @param column index of the column
+   * @return column value
+   */
+  public Object getValue(int column);
+
+  /**
+   * Closes this cursor.
+   */
+  @Override
+  public void close();
+}
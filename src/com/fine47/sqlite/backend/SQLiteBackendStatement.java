@@ -0,0 +1,92 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+import java.io.Closeable;
+
+/**
+ * A compiled SQL statement of a {@link SQLiteConnection}. Bindings are kept
+ * between executions until cleared or replaced.
+ *
+ * @since 1.4
+ */
+public interface SQLiteBackendStatement extends Closeable {
+
+  /**
+   * Binds the specified arguments, starting from the first parameter.
+   *
+   * @param args arguments to bind, may be NULL
+   */
+  public void bindAll(Object... args);
+
+  /**
+   * Clears all bindings of this statement.
+   */
+  public void clearBindings();
+
+  /**
+   * Executes this statement, which must not return data.
+   */
+  public void execute();
+
+  /**
+   * Executes this INSERT statement.
+   *
+   * @return row ID of the inserted row, or -1 if no row was inserted
+   */
+  public long executeInsert();
+
+  /**
+   * Executes this UPDATE or DELETE statement.
+   *
+   * @return number of affected rows
+   */
+  public int executeUpdateDelete();
+
+  /**
+   * Executes this query and returns the first column of its first row as a
+   * number.
+   *
+   * @return value of the first column
+   */
+  public long simpleQueryForLong();
+
+  /**
+   * Executes this query and returns the first column of its first row as a
+   * string.
+   *
+   * @return value of the first column
+   */
+  public String simpleQueryForString();
+
+  /**
+   * Releases this statement.
+   */
+  @Override
+  public void close();
+}
@@ -0,0 +1,159 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+import java.io.Closeable;
+
+/**
+ * A connection to an SQLite database opened by a {@link SQLiteBackend}. The
+ * methods follow the semantics of Android's
+ * {@link android.database.sqlite.SQLiteDatabase} regardless of the backend:
+ * transactions nest, and an outer transaction is only committed if all of its
+ * nested transactions have been marked as successful.
+ *
+ * Arguments of statements and queries may be NULL, numbers, booleans, strings
+ * or byte arrays, and are bound with their own types.
+ *
+ * @since 1.4
+ */
+public interface SQLiteConnection extends Closeable {
+
+  /**
+   * Returns the absolute file path of the database.
+   *
+   * @return file path
+   */
+  public String getFilePath();
+
+  /**
+   * Checks whether this connection is still open.
+   *
+   * @return TRUE if open, FALSE otherwise
+   */
+  public boolean isOpen();
+
+  /**
+   * Checks whether this connection was opened in read-only mode.
+   *
+   * @return TRUE if read-only, FALSE otherwise
+   */
+  public boolean isReadOnly();
+
+  /**
+   * Returns the schema version of the database.
+   *
+   * @return database version
+   */
+  public int getVersion();
+
+  /**
+   * Updates the schema version of the database.
+   *
+   * @param version new database version
+   */
+  public void setVersion(int version);
+
+  /**
+   * Returns the page size of the database, in bytes.
+   *
+   * @return page size
+   */
+  public long getPageSize();
+
+  /**
+   * Begins an exclusive transaction, nested in the current one if any.
+   */
+  public void beginTransaction();
+
+  /**
+   * Marks the current transaction as successful.
+   */
+  public void setTransactionSuccessful();
+
+  /**
+   * Ends the current transaction. The outermost transaction is committed if
+   * it and all of its nested transactions were marked as successful, and
+   * rolled back otherwise.
+   */
+  public void endTransaction();
+
+  /**
+   * Checks whether a transaction is in progress on this connection.
+   *
+   * @return TRUE if in a transaction, FALSE otherwise
+   */
+  public boolean inTransaction();
+
+  /**
+   * Executes a single SQL statement which returns no data.
+   *
+   * @param sql statement to execute
+   */
+  public void execSQL(String sql);
+
+  /**
+   * Executes a single SQL statement which returns no data, binding the
+   * specified arguments.
+   *
+   * @param sql statement to execute
+   * @param args arguments to bind, may be NULL
+   */
+  public void execSQL(String sql, Object[] args);
+
+  /**
+   * Compiles the specified SQL statement for repeated execution.
+   *
+   * @param sql statement to compile
+   * @return compiled statement, to be closed by the caller
+   */
+  public SQLiteBackendStatement compileStatement(String sql);
+
+  /**
+   * Runs the specified query, binding the specified arguments.
+   *
+   * @param sql query to run
+   * @param args arguments to bind, may be NULL
+   * @return cursor positioned before the first row, to be closed by the caller
+   */
+  public SQLiteBackendCursor query(String sql, Object... args);
+
+  /**
+   * Creates the exception this backend uses for database errors, in order to
+   * report errors which weren't raised by the database itself.
+   *
+   * @param message describing the error
+   * @return new exception
+   */
+  public RuntimeException newException(String message);
+
+  /**
+   * Closes this connection.
+   */
+  @Override
+  public void close();
+}
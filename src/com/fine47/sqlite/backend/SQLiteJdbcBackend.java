@@ -0,0 +1,547 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite.backend;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Properties;
+
+/**
+ * A {@link SQLiteBackend} backed by a JDBC driver, such as sqlite-jdbc, which
+ * must be on the class path. Doesn't depend on Android in any way, so plans
+ * and {@link com.fine47.sqlite.SQLitePlanRunner} run on a plain JVM. Errors
+ * are reported as {@link SQLiteBackendException} instances.
+ *
+ * Each connection must be used by one thread at a time.
+ *
+ * @since 1.4
+ */
+public class SQLiteJdbcBackend implements SQLiteBackend {
+
+  /**
+   * Prefix of the JDBC URL of a database, followed by its file path.
+   */
+  public final static String URL_PREFIX = "jdbc:sqlite:";
+
+  // Flags of sqlite3_open_v2(), as understood by sqlite-jdbc.
+  private final static String OPEN_MODE = "open_mode";
+  private final static int OPEN_READONLY = 0x01;
+  private final static int OPEN_READWRITE = 0x02;
+  private final static int OPEN_CREATE = 0x04;
+
+  private final Properties properties;
+
+  /**
+   * Constructs a new backend with the driver's default connection properties.
+   */
+  public SQLiteJdbcBackend() {
+    this(new Properties());
+  }
+
+  /**
+   * Constructs a new backend passing the specified properties to the driver
+   * for each connection, for example "busy_timeout".
+   *
+   * @param properties connection properties
+   */
+  public SQLiteJdbcBackend(Properties properties) {
+    assert null != properties;
+    this.properties = properties;
+  }
+
+  @Override
+  public SQLiteConnection open(String filePath, boolean readOnly) {
+    assert null != filePath;
+
+    final Properties info = new Properties();
+    info.putAll(properties);
+    if(readOnly) {
+      info.setProperty(OPEN_MODE, Integer.toString(OPEN_READONLY));
+    } else {
+      // Make sure that the parent directory exists.
+      final File parent = new File(filePath).getParentFile();
+      if(null != parent) {
+        parent.mkdirs();
+      }
+      info.setProperty(OPEN_MODE, Integer.toString(OPEN_READWRITE | OPEN_CREATE));
+    }
+
+    try {
+      return new JdbcConnection(
+        filePath,
+        readOnly,
+        DriverManager.getConnection(URL_PREFIX + filePath, info)
+      );
+    } catch(SQLException error) {
+      throw new SQLiteBackendException(
+        "Unable to open database: " + filePath,
+        error
+      );
+    }
+  }
+
+  private static SQLiteBackendException wrap(SQLException error) {
+    return new SQLiteBackendException(error.getMessage(), error);
+  }
+
+  private static void bind(PreparedStatement statement, Object... args)
+    throws SQLException
+  {
+    if(null == args) {
+      return;
+    }
+    for(int index = 0; index < args.length; index++) {
+      final Object arg = args[index];
+      if(null == arg) {
+        statement.setNull(1 + index, Types.NULL);
+      } else if(arg instanceof Double || arg instanceof Float) {
+        statement.setDouble(1 + index, ((Number)arg).doubleValue());
+      } else if(arg instanceof Number) {
+        statement.setLong(1 + index, ((Number)arg).longValue());
+      } else if(arg instanceof Boolean) {
+        statement.setLong(1 + index, (Boolean)arg ? 1 : 0);
+      } else if(arg instanceof byte[]) {
+        statement.setBytes(1 + index, (byte[])arg);
+      } else {
+        statement.setString(1 + index, arg.toString());
+      }
+    }
+  }
+
+  private static class JdbcConnection implements SQLiteConnection {
+
+    private final String filePath;
+    private final boolean readOnly;
+    private final Connection connection;
+
+    // Depth of nested transactions, and whether the innermost one was marked
+    // as successful; any unsuccessful one rolls back the outermost.
+    private int depth;
+    private boolean successful;
+    private boolean failed;
+
+    JdbcConnection(String filePath, boolean readOnly, Connection connection) {
+      this.filePath = filePath;
+      this.readOnly = readOnly;
+      this.connection = connection;
+    }
+
+    @Override
+    public String getFilePath() {
+      return filePath;
+    }
+
+    @Override
+    public boolean isOpen() {
+      try {
+        return !connection.isClosed();
+      } catch(SQLException error) {
+        return false;
+      }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+      return readOnly;
+    }
+
+    @Override
+    public int getVersion() {
+      return (int)longForQuery("PRAGMA user_version");
+    }
+
+    @Override
+    public void setVersion(int version) {
+      execSQL("PRAGMA user_version = " + version);
+    }
+
+    @Override
+    public long getPageSize() {
+      return longForQuery("PRAGMA page_size");
+    }
+
+    @Override
+    public void beginTransaction() {
+      if(successful) {
+        throw new IllegalStateException(
+          "Current transaction has already been marked successful.");
+      }
+      if(0 == depth) {
+        execSQL("BEGIN EXCLUSIVE");
+        failed = false;
+      }
+      depth++;
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+      if(0 == depth) {
+        throw new IllegalStateException("No transaction in progress.");
+      }
+      if(successful) {
+        throw new IllegalStateException(
+          "Current transaction has already been marked successful.");
+      }
+      successful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+      if(0 == depth) {
+        throw new IllegalStateException("No transaction in progress.");
+      }
+      failed = failed || !successful;
+      successful = false;
+      if(0 < --depth) {
+        return;
+      }
+
+      if(failed) {
+        execSQL("ROLLBACK");
+      } else {
+        try {
+          execSQL("COMMIT");
+        } catch(SQLiteBackendException error) {
+          // Don't leave the transaction open when it couldn't be committed.
+          try {
+            execSQL("ROLLBACK");
+          } catch(SQLiteBackendException ignored) {
+            // Already rolled back.
+          }
+          throw error;
+        }
+      }
+    }
+
+    @Override
+    public boolean inTransaction() {
+      return 0 < depth;
+    }
+
+    @Override
+    public void execSQL(String sql) {
+      try {
+        final Statement statement = connection.createStatement();
+        try {
+          statement.execute(sql);
+        } finally {
+          statement.close();
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] args) {
+      final SQLiteBackendStatement statement = compileStatement(sql);
+      try {
+        statement.bindAll(args);
+        statement.execute();
+      } finally {
+        statement.close();
+      }
+    }
+
+    @Override
+    public SQLiteBackendStatement compileStatement(String sql) {
+      try {
+        return new JdbcStatement(this, connection.prepareStatement(sql));
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public SQLiteBackendCursor query(String sql, Object... args) {
+      try {
+        final PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+          bind(statement, args);
+          return new JdbcCursor(statement, statement.executeQuery());
+        } catch(SQLException error) {
+          statement.close();
+          throw error;
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public RuntimeException newException(String message) {
+      return new SQLiteBackendException(message);
+    }
+
+    @Override
+    public void close() {
+      try {
+        connection.close();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    long longForQuery(String sql) {
+      final SQLiteBackendCursor cursor = query(sql);
+      try {
+        if(!cursor.moveToNext()) {
+          throw new SQLiteBackendException("Query returned no rows: " + sql);
+        }
+        return cursor.getLong(0);
+      } finally {
+        cursor.close();
+      }
+    }
+  }
+
+  private static class JdbcStatement implements SQLiteBackendStatement {
+
+    private final JdbcConnection connection;
+    private final PreparedStatement statement;
+
+    JdbcStatement(JdbcConnection connection, PreparedStatement statement) {
+      this.connection = connection;
+      this.statement = statement;
+    }
+
+    @Override
+    public void bindAll(Object... args) {
+      try {
+        bind(statement, args);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public void clearBindings() {
+      try {
+        statement.clearParameters();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public void execute() {
+      try {
+        if(statement.execute()) {
+          statement.getResultSet().close();
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public long executeInsert() {
+      return 0 < executeUpdateDelete()
+        ? connection.longForQuery("SELECT last_insert_rowid()")
+        : -1;
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+      try {
+        return statement.executeUpdate();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+      try {
+        final ResultSet rows = firstRow();
+        try {
+          return rows.getLong(1);
+        } finally {
+          rows.close();
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public String simpleQueryForString() {
+      try {
+        final ResultSet rows = firstRow();
+        try {
+          return rows.getString(1);
+        } finally {
+          rows.close();
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        statement.close();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    private ResultSet firstRow() throws SQLException {
+      final ResultSet rows = statement.executeQuery();
+      if(!rows.next()) {
+        rows.close();
+        throw new SQLiteBackendException("Query returned no rows.");
+      }
+      return rows;
+    }
+  }
+
+  private static class JdbcCursor implements SQLiteBackendCursor {
+
+    private final PreparedStatement statement;
+    private final ResultSet rows;
+
+    JdbcCursor(PreparedStatement statement, ResultSet rows) {
+      this.statement = statement;
+      this.rows = rows;
+    }
+
+    @Override
+    public boolean moveToNext() {
+      try {
+        return rows.next();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public int getColumnCount() {
+      try {
+        return rows.getMetaData().getColumnCount();
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      try {
+        return rows.getMetaData().getColumnName(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public boolean isNull(int column) {
+      return null == getValue(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+      try {
+        return rows.getLong(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public int getInt(int column) {
+      try {
+        return rows.getInt(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public double getDouble(int column) {
+      try {
+        return rows.getDouble(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public String getString(int column) {
+      try {
+        return rows.getString(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+      try {
+        return rows.getBytes(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+
+    @Override
+    public Object getValue(int column) {
+      final Object value;
+      try {
+        value = rows.getObject(1 + column);
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+      // Drivers return the narrowest type which fits an integer.
+      return value instanceof Integer || value instanceof Short
+        ? Long.valueOf(((Number)value).longValue())
+        : value instanceof Float
+          ? Double.valueOf(((Number)value).doubleValue())
+          : value;
+    }
+
+    @Override
+    public void close() {
+      try {
+        try {
+          rows.close();
+        } finally {
+          statement.close();
+        }
+      } catch(SQLException error) {
+        throw wrap(error);
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.fine47.sqlite.backend.SQLiteConnection;
+import com.fine47.sqlite.backend.SQLiteJdbcBackend;
+import java.io.File;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the measurements {@link SQLitePlanRunner} reports for each plan, on a
+ * plain JVM through {@link SQLiteJdbcBackend}.
+ *
+ * @since 1.4
+ */
+public class SQLitePlanRunnerTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private SQLiteConnection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    final File file = new File(folder.getRoot(), "runner.db");
+    connection = new SQLiteJdbcBackend().open(file.getPath(), false);
+  }
+
+  @After
+  public void tearDown() {
+    connection.close();
+  }
+
+  @Test
+  public void countsChangesOfAtomicRun() {
+    final SQLitePlanRunner runner = newRunner().setResumable(false);
+    runner.run();
+    assertChanges(runner, 0, 1, 3);
+  }
+
+  @Test
+  public void countsChangesOfResumableRun() {
+    final SQLitePlanRunner runner = newRunner().setResumable(true);
+    runner.run();
+    assertChanges(runner, 0, 1, 3);
+  }
+
+  @Test
+  public void rejectsResumableChunkedBulkPlan() {
+    connection.setVersion(1);
+    final SQLitePlanRunner runner = SQLitePlanRunner.For(connection, 3)
+      .addPlan(1, CreateTable.class)
+      .addPlan(2, ChunkedBulkPlan.class)
+      .setResumable(true);
+    try {
+      runner.run();
+      fail("Resumable runner accepted a chunked bulk plan.");
+    } catch(IllegalArgumentException e) {
+      // Expected.
+    }
+    assertEquals(1, connection.getVersion());
+  }
+
+  private SQLitePlanRunner newRunner() {
+    connection.setVersion(1);
+    return SQLitePlanRunner.For(connection, 4)
+      .addPlan(1, CreateTable.class)
+      .addPlan(2, InsertRow.class)
+      .addPlan(3, UpdateRows.class);
+  }
+
+  private static void assertChanges(
+    SQLitePlanRunner runner,
+    long... changes
+  ) {
+    final List<SQLiteStepReport> steps = runner.getReport().getSteps();
+    assertEquals(changes.length, steps.size());
+
+    long total = 0;
+    for(int index = 0; index < changes.length; index++) {
+      assertEquals(
+        "Changes of step " + index,
+        changes[index],
+        steps.get(index).getChanges()
+      );
+      total += changes[index];
+    }
+    assertEquals(total, runner.getReport().getChanges());
+  }
+
+  /**
+   * Rewrites a table in chunks, without its indexes and triggers.
+   */
+  public static class ChunkedBulkPlan extends SQLiteChunkedPlan
+    implements SQLiteBulkPlan
+  {
+
+    @Override
+    public String getTable() {
+      return "items";
+    }
+
+    @Override
+    public void applyChunk(SQLiteDatabase db, Cursor rows) {
+    }
+
+    @Override
+    public String[] getBulkTables() {
+      return new String[] {"items"};
+    }
+  }
+
+  /**
+   * Changes the schema only.
+   */
+  public static class CreateTable extends SQLiteConnectionPlan {
+
+    @Override
+    public void applyUpgrade(SQLiteConnection connection) {
+      connection.execSQL("CREATE TABLE items (name TEXT, count INTEGER)");
+    }
+  }
+
+  /**
+   * Inserts a single row.
+   */
+  public static class InsertRow extends SQLiteConnectionPlan {
+
+    @Override
+    public void applyUpgrade(SQLiteConnection connection) {
+      connection.execSQL(
+        "INSERT INTO items (name, count) VALUES (?, ?)",
+        new Object[] {"first", 1}
+      );
+    }
+  }
+
+  /**
+   * Inserts two more rows, then updates one.
+   */
+  public static class UpdateRows extends SQLiteConnectionPlan {
+
+    @Override
+    public void applyUpgrade(SQLiteConnection connection) {
+      connection.execSQL(
+        "INSERT INTO items (name, count) VALUES ('second', 2), ('third', 3)");
+      connection.execSQL("UPDATE items SET count = 0 WHERE name = 'first'");
+    }
+  }
+}
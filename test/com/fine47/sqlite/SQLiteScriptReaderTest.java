@@ -0,0 +1,215 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Checks how {@link SQLiteScriptReader} splits scripts into statements and
+ * turns literal values into parameters.
+ *
+ * @since 1.4
+ */
+public class SQLiteScriptReaderTest {
+
+  @Test
+  public void splitsStatementsAndCollapsesWhitespace() throws IOException {
+    assertStatements(
+      "CREATE TABLE t (a INTEGER,\n  b TEXT);;\n\nDROP   TABLE u",
+      "CREATE TABLE t (a INTEGER, b TEXT)",
+      "DROP TABLE u"
+    );
+  }
+
+  @Test
+  public void keepsSemicolonsInStringLiterals() throws IOException {
+    assertStatements(
+      "UPDATE t SET b = 'a;b''c' WHERE a = 1; SELECT 1",
+      "UPDATE t SET b = 'a;b''c' WHERE a = 1",
+      "SELECT 1"
+    );
+  }
+
+  @Test
+  public void keepsQuotedIdentifiers() throws IOException {
+    assertStatements(
+      "CREATE TABLE [a;b] (\"c;\"\"d\" TEXT, `e;``f` TEXT); SELECT [x'y]",
+      "CREATE TABLE [a;b] (\"c;\"\"d\" TEXT, `e;``f` TEXT)",
+      "SELECT [x'y]"
+    );
+  }
+
+  @Test
+  public void dropsComments() throws IOException {
+    assertStatements(
+      "-- Leading comment; not a statement.\n" +
+        "SELECT 1 /* inline; comment */ + 2; -- trailing; comment\n" +
+        "SELECT/**/3",
+      "SELECT 1 + 2",
+      "SELECT 3"
+    );
+  }
+
+  @Test
+  public void keepsTriggerBodyTogether() throws IOException {
+    assertStatements(
+      "CREATE TRIGGER t_update AFTER UPDATE ON t BEGIN\n" +
+        "  UPDATE u SET b = CASE WHEN new.a > 0 THEN 'x;' ELSE 'y' END;\n" +
+        "  DELETE FROM v WHERE a = old.a;\n" +
+        "END;\n" +
+        "CREATE TEMP TRIGGER t_insert AFTER INSERT ON t BEGIN\n" +
+        "  SELECT CASE WHEN new.a IS NULL THEN RAISE(ABORT, 'no') END;\n" +
+        "END;\n" +
+        "SELECT 1",
+      "CREATE TRIGGER t_update AFTER UPDATE ON t BEGIN " +
+        "UPDATE u SET b = CASE WHEN new.a > 0 THEN 'x;' ELSE 'y' END; " +
+        "DELETE FROM v WHERE a = old.a; END",
+      "CREATE TEMP TRIGGER t_insert AFTER INSERT ON t BEGIN " +
+        "SELECT CASE WHEN new.a IS NULL THEN RAISE(ABORT, 'no') END; END",
+      "SELECT 1"
+    );
+  }
+
+  @Test
+  public void turnsInsertedValuesIntoParameters() throws IOException {
+    final SQLiteScriptReader reader = newReader(
+      "INSERT INTO t (a, b, c, d, e, f, g) VALUES " +
+        "(42, -7, 1.5e3, .25, 'it''s', X'CAFE', NULL);\n" +
+        "REPLACE INTO t (a) VALUES (9223372036854775808)"
+    );
+
+    assertTrue(reader.next());
+    assertEquals(
+      "INSERT INTO t (a, b, c, d, e, f, g) VALUES (?, -?, ?, ?, ?, ?, NULL)",
+      reader.getSql()
+    );
+    final Object[] args = reader.getArgs();
+    assertEquals(6, args.length);
+    assertEquals(42L, args[0]);
+    assertEquals(7L, args[1]);
+    assertEquals(1500.0, args[2]);
+    assertEquals(0.25, args[3]);
+    assertEquals("it's", args[4]);
+    assertArrayEquals(new byte[] {(byte)0xca, (byte)0xfe}, (byte[])args[5]);
+
+    // Integers too large for 64 bits become reals.
+    assertTrue(reader.next());
+    assertEquals("REPLACE INTO t (a) VALUES (?)", reader.getSql());
+    assertArrayEquals(new Object[] {9223372036854775808.0}, reader.getArgs());
+
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void keepsLiteralsOutsideOfValues() throws IOException {
+    final SQLiteScriptReader reader = newReader(
+      "UPDATE t SET a = 0x1F, b = X'00ff', c = 2.5E-2, d = 'x' WHERE e = 1e3"
+    );
+
+    assertTrue(reader.next());
+    assertEquals(
+      "UPDATE t SET a = 0x1F, b = X'00ff', c = 2.5E-2, d = 'x' WHERE e = 1e3",
+      reader.getSql()
+    );
+    assertEquals(0, reader.getArgs().length);
+  }
+
+  @Test
+  public void keepsStatementsWithTooManyParameters() throws IOException {
+    final int under = SQLiteScriptReader.MAX_PARAMETERS - 1;
+    SQLiteScriptReader reader = newReader(newInsert(under));
+    assertTrue(reader.next());
+    assertEquals(under, reader.getArgs().length);
+    assertTrue(reader.getSql().endsWith("(?), (?)"));
+
+    final int over = SQLiteScriptReader.MAX_PARAMETERS;
+    reader = newReader(newInsert(over));
+    assertTrue(reader.next());
+    assertEquals(0, reader.getArgs().length);
+    assertEquals(newInsert(over), reader.getSql());
+  }
+
+  @Test
+  public void reportsStatementLines() throws IOException {
+    final SQLiteScriptReader reader = newReader(
+      "-- Header.\nSELECT 1;\n\n/* Multi\nline */\nSELECT\n2;"
+    );
+
+    assertTrue(reader.next());
+    assertEquals(2, reader.getLine());
+    assertTrue(reader.next());
+    assertEquals(6, reader.getLine());
+    assertFalse(reader.next());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsUnterminatedString() throws IOException {
+    newReader("SELECT 'abc").next();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsUnterminatedTrigger() throws IOException {
+    newReader("CREATE TRIGGER t AFTER INSERT ON u BEGIN SELECT 1;").next();
+  }
+
+  private static SQLiteScriptReader newReader(String script) {
+    return new SQLiteScriptReader(new StringReader(script));
+  }
+
+  /**
+   * Returns an INSERT statement of the specified number of single-value rows.
+   */
+  private static String newInsert(int rows) {
+    final StringBuilder sql = new StringBuilder("INSERT INTO t (a) VALUES ");
+    for(int index = 0; index < rows; index++) {
+      sql.append(0 == index ? "(" : ", (").append(index).append(')');
+    }
+    return sql.toString();
+  }
+
+  private static void assertStatements(String script, String... expected)
+    throws IOException
+  {
+    final SQLiteScriptReader reader = newReader(script);
+    final List<String> statements = new ArrayList();
+    while(reader.next()) {
+      statements.add(reader.getSql());
+    }
+    assertEquals(Arrays.asList(expected), statements);
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of SQLite Manager library.
+ * Copyright (C) 2014 Noor Dawod. All rights reserved.
+ * https://github.com/noordawod/sqlite-manager
+ *
+ * Released under the MIT license
+ * http://en.wikipedia.org/wiki/MIT_License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.fine47.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fine47.sqlite.backend.SQLiteConnection;
+import com.fine47.sqlite.backend.SQLiteJdbcBackend;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link SQLiteTableRebuild} on a plain JVM through
+ * {@link SQLiteJdbcBackend}.
+ *
+ * @since 1.4
+ */
+public class SQLiteTableRebuildTest {
+
+  private final static String SCRATCH_TABLE =
+    "_sqlite_manager_rebuild_items";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private SQLiteConnection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    final File file = new File(folder.getRoot(), "rebuild.db");
+    connection = new SQLiteJdbcBackend().open(file.getPath(), false);
+    connection.execSQL("CREATE TABLE items (name TEXT, count INTEGER)");
+    connection.execSQL(
+      "INSERT INTO items (name, count) VALUES ('first', 1), ('second', 2)");
+  }
+
+  @After
+  public void tearDown() {
+    connection.close();
+  }
+
+  @Test
+  public void rebuildsTable() {
+    final SQLiteRebuildReport report = SQLiteTableRebuild
+      .For("items", "name TEXT NOT NULL")
+      .run(connection);
+
+    assertTrue(report.isRebuilt());
+    assertEquals(2, report.getRows());
+    assertFalse(SQLiteSchema.hasTable(connection, SCRATCH_TABLE));
+  }
+
+  @Test
+  public void keepsExistingScratchTable() {
+    connection.execSQL("CREATE TABLE " + SCRATCH_TABLE + " (data BLOB)");
+
+    try {
+      SQLiteTableRebuild.For("items", "name TEXT NOT NULL").run(connection);
+      fail("Rebuild replaced " + SCRATCH_TABLE);
+    } catch(IllegalStateException e) {
+      // Expected.
+    }
+    assertTrue(SQLiteSchema.hasTable(connection, SCRATCH_TABLE));
+    assertEquals(2, SQLiteSchema.getColumns(connection, "items").size());
+  }
+}